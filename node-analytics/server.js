@@ -137,6 +137,46 @@ app.post('/api/collect/login', async (req, res) => {
   }
 });
 
+/**
+ * 批量收集用户登录事件
+ */
+app.post('/api/collect/login/batch', async (req, res) => {
+  try {
+    const { events } = req.body;
+
+    if (!Array.isArray(events)) {
+      return res.status(400).json({ error: '缺少登录事件列表' });
+    }
+
+    const userIds = events
+      .filter(event => event && event.userId)
+      .map(event => event.userId.toString());
+
+    if (userIds.length > 0) {
+      // 添加到在线用户集合
+      await redisClient.sAdd('online_users', userIds);
+      await redisClient.expire('online_users', 3600); // 1小时过期
+
+      // 记录今日登录用户
+      const today = new Date().toISOString().split('T')[0];
+      await redisClient.sAdd(`stats:daily_login_users:${today}`, userIds);
+      await redisClient.expire(`stats:daily_login_users:${today}`, 86400 * 7); // 7天过期
+    }
+
+    console.log(`👤 批量用户登录事件: ${userIds.length}个用户上线`);
+
+    res.json({
+      success: true,
+      message: '用户登录事件记录成功',
+      count: userIds.length,
+      timestamp: new Date().toISOString()
+    });
+  } catch (error) {
+    console.error('批量记录登录事件失败:', error);
+    res.status(500).json({ error: '服务器内部错误' });
+  }
+});
+
 // ==================== 统计查询API ====================
 
 /**
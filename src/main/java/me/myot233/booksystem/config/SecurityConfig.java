@@ -1,8 +1,11 @@
 package me.myot233.booksystem.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import me.myot233.booksystem.security.JwtAuthenticationFilter;
+import me.myot233.booksystem.security.TimedPasswordEncoder;
 import me.myot233.booksystem.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -38,22 +41,28 @@ public class SecurityConfig {
 
     /**
      * 密码编码器
+     * 强度低于配置值的已有哈希在用户登录成功后自动升级
+     * @param strength BCrypt强度
+     * @param meterRegistry 指标注册表
      * @return BCrypt密码编码器
      */
     @Bean
-    public static PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public static PasswordEncoder passwordEncoder(@Value("${security.bcrypt.strength:10}") int strength,
+                                                  MeterRegistry meterRegistry) {
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder(strength), meterRegistry);
     }
 
     /**
      * 认证提供者
+     * @param passwordEncoder 密码编码器
      * @return DAO认证提供者
      */
     @Bean
-    public DaoAuthenticationProvider authenticationProvider() {
+    public DaoAuthenticationProvider authenticationProvider(PasswordEncoder passwordEncoder) {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userService);
-        authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setPasswordEncoder(passwordEncoder);
+        authProvider.setUserDetailsPasswordService(userService);
         return authProvider;
     }
 
@@ -86,9 +95,11 @@ public class SecurityConfig {
                 // 允许WebSocket连接
                 .requestMatchers("/ws/**").permitAll()
                 // 允许图书查询请求
+                .requestMatchers(HttpMethod.GET, "/api/books/export").hasAnyRole("PARTNER", "ADMIN")
                 .requestMatchers(HttpMethod.GET, "/api/books/**").permitAll()
                 // 图书管理操作需要管理员权限
                 .requestMatchers(HttpMethod.POST, "/api/books").hasRole("ADMIN")
+                .requestMatchers(HttpMethod.POST, "/api/books/**").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.PUT, "/api/books/**").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.DELETE, "/api/books/**").hasRole("ADMIN")
                 // 当前用户信息需要认证（必须在/api/users/**之前）
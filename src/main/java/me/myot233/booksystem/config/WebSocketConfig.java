@@ -1,6 +1,9 @@
 package me.myot233.booksystem.config;
 
+import me.myot233.booksystem.security.StompAuthChannelInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
@@ -13,9 +16,13 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Autowired
+    private StompAuthChannelInterceptor stompAuthChannelInterceptor;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // 启用简单的消息代理，并设置消息代理的前缀
+        // 多节点部署时由 MessageBroadcaster 通过Redis在节点之间转发（websocket.relay.mode=redis）
         config.enableSimpleBroker("/topic", "/queue");
         // 设置应用程序的目标前缀
         config.setApplicationDestinationPrefixes("/app");
@@ -30,4 +37,10 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // CONNECT时校验JWT并设置会话用户
+        registration.interceptors(stompAuthChannelInterceptor);
+    }
 }
@@ -2,116 +2,286 @@ package me.myot233.booksystem.controller;
 
 import lombok.Getter;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import me.myot233.booksystem.entity.User;
+import me.myot233.booksystem.security.PasswordHashingExecutor;
 import me.myot233.booksystem.service.UserService;
-import me.myot233.booksystem.service.AnalyticsService;
+import me.myot233.booksystem.service.LoginBookkeepingBuffer;
+import me.myot233.booksystem.service.RefreshTokenService;
+import me.myot233.booksystem.service.TokenRevocationService;
 import me.myot233.booksystem.util.JwtUtil;
+import me.myot233.booksystem.util.VerifiedToken;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 认证控制器
  */
+@Slf4j
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
 
     private final AuthenticationManager authenticationManager;
     private final UserService userService;
-    private final AnalyticsService analyticsService;
+    private final LoginBookkeepingBuffer loginBookkeepingBuffer;
     private final JwtUtil jwtUtil;
+    private final TokenRevocationService tokenRevocationService;
+    private final RefreshTokenService refreshTokenService;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    // 登录后续处理（签发token、写入刷新token）所用的线程池，不占用哈希线程
+    private final Executor taskExecutor;
 
     @Autowired
     public AuthController(AuthenticationManager authenticationManager, UserService userService,
-                         AnalyticsService analyticsService, JwtUtil jwtUtil) {
+                         LoginBookkeepingBuffer loginBookkeepingBuffer, JwtUtil jwtUtil,
+                         TokenRevocationService tokenRevocationService, RefreshTokenService refreshTokenService,
+                         PasswordHashingExecutor passwordHashingExecutor,
+                         @Qualifier("applicationTaskExecutor") Executor taskExecutor) {
         this.authenticationManager = authenticationManager;
         this.userService = userService;
-        this.analyticsService = analyticsService;
+        this.loginBookkeepingBuffer = loginBookkeepingBuffer;
         this.jwtUtil = jwtUtil;
+        this.tokenRevocationService = tokenRevocationService;
+        this.refreshTokenService = refreshTokenService;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.taskExecutor = taskExecutor;
     }
 
     /**
      * 用户登录
+     * 密码校验在哈希线程池中执行，不占用请求线程；线程池繁忙时返回429。
+     * 签发token需要签名和访问Redis，切换到通用任务线程池执行，哈希线程只用于计算哈希
      * @param loginRequest 登录请求
      * @return 登录结果
      */
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody LoginRequest loginRequest) {
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody LoginRequest loginRequest) {
+        CompletableFuture<Authentication> authentication;
         try {
-            Authentication authentication = authenticationManager.authenticate(
+            authentication = passwordHashingExecutor.submit(() -> authenticationManager.authenticate(
                     new UsernamePasswordAuthenticationToken(
                             loginRequest.getUsername(),
                             loginRequest.getPassword()
                     )
-            );
+            ));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(tooManyRequests());
+        }
+
+        return authentication.handleAsync((result, error) -> {
+            if (error != null) {
+                Throwable cause = unwrap(error);
+                // 用户存储等后端故障不是认证失败，不能告诉客户端密码错误
+                if (cause instanceof AuthenticationException && !(cause instanceof AuthenticationServiceException)) {
+                    return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("用户名或密码错误");
+                }
+                log.error("登录失败: {}", loginRequest.getUsername(), cause);
+                return serverError("登录失败，请稍后重试");
+            }
+            try {
+                return loginSucceeded(result);
+            } catch (Exception e) {
+                log.error("签发token失败: {}", loginRequest.getUsername(), e);
+                return serverError("登录失败，请稍后重试");
+            }
+        }, taskExecutor);
+    }
 
-            SecurityContextHolder.getContext().setAuthentication(authentication);
+    /**
+     * 认证通过后签发token
+     * @param authentication 认证结果
+     * @return 登录结果
+     */
+    private ResponseEntity<?> loginSucceeded(Authentication authentication) {
+        // 获取用户详情
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        User user = userDetails instanceof User principal
+                ? principal
+                : userService.getUserByUsername(userDetails.getUsername()).orElseThrow();
 
-            // 获取用户详情
-            UserDetails userDetails = (UserDetails) authentication.getPrincipal();
-            User user = userService.getUserByUsername(userDetails.getUsername()).orElse(null);
+        // 生成JWT token
+        String token = jwtUtil.generateTokenWithRole(userDetails, user.getRole());
+        String refreshToken = refreshTokenService.issue(userDetails.getUsername());
 
-            // 生成JWT token
-            String token = jwtUtil.generateTokenWithRole(userDetails, user.getRole());
-            String refreshToken = jwtUtil.generateRefreshToken(userDetails);
+        // 最后登录时间和登录事件由后台批量写出
+        loginBookkeepingBuffer.record(user.getId(), user.getUsername());
 
-            // 更新最后登录时间
-            userService.updateLastLoginTime(loginRequest.getUsername());
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "登录成功");
+        response.put("username", user.getUsername());
+        response.put("token", token);
+        response.put("refreshToken", refreshToken);
+        response.put("role", user.getRole());
 
-            // 发送登录事件到分析服务
-            analyticsService.sendLoginEvent(user.getId(), user.getUsername());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 刷新token，旧的刷新token同时失效
+     * 不校验密码，用户仍需存在且未被停用
+     * @param refreshRequest 刷新请求
+     * @return 新的访问token和刷新token
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody RefreshRequest refreshRequest) {
+        if (refreshRequest.getRefreshToken() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("缺少刷新token");
+        }
+        try {
+            RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshRequest.getRefreshToken());
+            User user = userService.getUserByUsername(rotation.username())
+                    .filter(User::isEnabled)
+                    .filter(User::isAccountNonLocked)
+                    .orElse(null);
+            if (user == null) {
+                refreshTokenService.revokeFamily(rotation.refreshToken());
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("用户不存在或已停用");
+            }
 
             Map<String, Object> response = new HashMap<>();
-            response.put("message", "登录成功");
-            response.put("username", loginRequest.getUsername());
-            response.put("token", token);
-            response.put("refreshToken", refreshToken);
+            response.put("message", "刷新成功");
+            response.put("username", user.getUsername());
+            response.put("token", jwtUtil.generateTokenWithRole(user, user.getRole()));
+            response.put("refreshToken", rotation.refreshToken());
             response.put("role", user.getRole());
-
             return ResponseEntity.ok(response);
+        } catch (AuthenticationException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
+        }
+    }
+
+    /**
+     * 退出登录，吊销当前token；请求体携带刷新token时同时吊销其令牌族
+     * @param authorization Authorization请求头
+     * @param refreshRequest 刷新请求（可选）
+     * @return 退出结果
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestHeader(value = "Authorization", required = false) String authorization,
+                                    @RequestBody(required = false) RefreshRequest refreshRequest) {
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("未登录");
+        }
+        try {
+            VerifiedToken verified = jwtUtil.verify(authorization.substring(7));
+            tokenRevocationService.revokeToken(verified);
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("用户名或密码错误");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("token无效或已过期");
         }
+        if (refreshRequest != null && refreshRequest.getRefreshToken() != null) {
+            try {
+                refreshTokenService.revokeFamily(refreshRequest.getRefreshToken());
+            } catch (AuthenticationException e) {
+                // 刷新token已失效，无需吊销
+            }
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "退出成功");
+        return ResponseEntity.ok(response);
     }
 
     /**
      * 用户注册
+     * 密码哈希在哈希线程池中计算，线程池繁忙时返回429
      * @param user 用户
      * @return 注册结果
      */
     @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody User user) {
+    public CompletableFuture<ResponseEntity<?>> register(@RequestBody User user) {
         // 检查用户名是否已存在
         if (userService.getUserByUsername(user.getUsername()).isPresent()) {
             Map<String, String> response = new HashMap<>();
             response.put("message", "用户名已存在");
-            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.CONFLICT).body(response));
         }
 
         // 设置默认角色
         user.setRole("ROLE_USER");
 
         // 创建用户
-        User createdUser = userService.createUser(user);
+        CompletableFuture<User> created;
+        try {
+            created = passwordHashingExecutor.submit(() -> userService.createUser(user));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(tooManyRequests());
+        }
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("message", "注册成功");
-        response.put("username", createdUser.getUsername());
+        return created.handle((createdUser, error) -> {
+            if (error != null) {
+                Throwable cause = unwrap(error);
+                // 并发注册同一用户名时，唯一约束在检查之后才冲突
+                if (cause instanceof DataIntegrityViolationException) {
+                    Map<String, String> response = new HashMap<>();
+                    response.put("message", "用户名已存在");
+                    return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+                }
+                log.error("注册失败: {}", user.getUsername(), cause);
+                return serverError("注册失败，请稍后重试");
+            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "注册成功");
+            response.put("username", createdUser.getUsername());
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        });
+    }
 
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    /**
+     * 取出异步任务抛出的原始异常
+     * @param error 异常
+     * @return 原始异常
+     */
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * 服务端故障的响应
+     * @param message 提示信息
+     * @return 500响应
+     */
+    private ResponseEntity<?> serverError(String message) {
+        Map<String, String> response = new HashMap<>();
+        response.put("message", message);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+    }
+
+    /**
+     * 哈希线程池已满时的响应
+     * @return 429响应
+     */
+    private ResponseEntity<?> tooManyRequests() {
+        Map<String, String> response = new HashMap<>();
+        response.put("message", "请求过多，请稍后重试");
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(response);
     }
 
     /**
@@ -124,4 +294,13 @@ public class AuthController {
         private String password;
 
     }
+
+    /**
+     * 刷新请求类
+     */
+    @Setter
+    @Getter
+    public static class RefreshRequest {
+        private String refreshToken;
+    }
 }
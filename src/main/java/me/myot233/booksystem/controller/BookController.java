@@ -1,15 +1,25 @@
 package me.myot233.booksystem.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import me.myot233.booksystem.dto.BookImportReport;
 import me.myot233.booksystem.entity.Book;
+import me.myot233.booksystem.service.BookExportService;
+import me.myot233.booksystem.service.BookImportService;
 import me.myot233.booksystem.service.BookService;
 import me.myot233.booksystem.service.NotificationService;
+import me.myot233.booksystem.util.ImportRecordReader;
 import me.myot233.booksystem.vo.Response;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -21,11 +31,16 @@ public class BookController {
 
     private final BookService bookService;
     private final NotificationService notificationService;
+    private final BookImportService bookImportService;
+    private final BookExportService bookExportService;
 
     @Autowired
-    public BookController(BookService bookService, NotificationService notificationService) {
+    public BookController(BookService bookService, NotificationService notificationService,
+                          BookImportService bookImportService, BookExportService bookExportService) {
         this.bookService = bookService;
         this.notificationService = notificationService;
+        this.bookImportService = bookImportService;
+        this.bookExportService = bookExportService;
     }
 
     /**
@@ -38,6 +53,41 @@ public class BookController {
         return Response.ok(bookService.getAllBooks());
     }
 
+    /**
+     * 导出图书目录
+     * 边查询边写出，不在内存中组装完整列表；同时进行的导出已达上限时返回429
+     *
+     * @param format 格式：ndjson（默认）、csv
+     * @param gzip   是否gzip压缩
+     * @return 导出文件
+     */
+    @GetMapping("/export")
+    public ResponseEntity<ResponseBodyEmitter> exportBooks(@RequestParam(defaultValue = "ndjson") String format,
+                                                             @RequestParam(defaultValue = "false") boolean gzip) {
+        ImportRecordReader.Format resolved;
+        try {
+            resolved = ImportRecordReader.Format.resolve(format, null);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean csv = resolved == ImportRecordReader.Format.CSV;
+        String filename = "books." + (csv ? "csv" : "ndjson") + (gzip ? ".gz" : "");
+        MediaType contentType = gzip ? MediaType.parseMediaType("application/gzip")
+                : csv ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                : MediaType.parseMediaType("application/x-ndjson;charset=UTF-8");
+
+        Optional<ResponseBodyEmitter> emitter = bookExportService.startExport(resolved, gzip);
+        if (emitter.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(emitter.get());
+    }
+
     /**
      * 根据ID获取图书
      *
@@ -108,11 +158,32 @@ public class BookController {
         Book savedBook = bookService.saveBook(book);
 
         // 发送新书到达通知
-        notificationService.sendNewBookNotification(savedBook.getTitle(), savedBook.getId());
+        notificationService.sendNewBookNotification(savedBook.getTitle(), savedBook.getId(), savedBook.getCategory());
 
         return new ResponseEntity<>(savedBook, HttpStatus.CREATED);
     }
 
+    /**
+     * 批量导入图书
+     * 请求体为CSV（首行为表头）或NDJSON，按ISBN新增或更新，单行失败不影响其它行；
+     * 批量导入不逐本发送新书通知
+     *
+     * @param format  格式（csv、ndjson），为空时根据Content-Type判断
+     * @param request 请求
+     * @return 导入报告
+     */
+    @PostMapping("/import")
+    public ResponseEntity<?> importBooks(@RequestParam(required = false) String format,
+                                         HttpServletRequest request) {
+        try {
+            ImportRecordReader.Format resolved = ImportRecordReader.Format.resolve(format, request.getContentType());
+            BookImportReport report = bookImportService.importBooks(request.getInputStream(), resolved);
+            return ResponseEntity.ok(report);
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
     /**
      * 更新图书
      *
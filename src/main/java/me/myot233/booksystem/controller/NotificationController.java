@@ -1,14 +1,21 @@
 package me.myot233.booksystem.controller;
 
+import me.myot233.booksystem.dto.NotificationFeedPage;
 import me.myot233.booksystem.entity.Notification;
 import me.myot233.booksystem.entity.User;
+import me.myot233.booksystem.messaging.SseNotificationHub;
+import me.myot233.booksystem.security.AuthenticatedUser;
+import me.myot233.booksystem.service.CategorySubscriptionService;
 import me.myot233.booksystem.service.NotificationService;
+import me.myot233.booksystem.service.StreamTicketService;
 import me.myot233.booksystem.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -22,12 +29,27 @@ import java.util.Optional;
 @RequestMapping("/api/notifications")
 public class NotificationController {
 
+    // 通知分页每页最大条数
+    private static final int MAX_FEED_PAGE_SIZE = 100;
+
+    // SSE重连时个人通知和广播各自最多补发的条数
+    private static final int MAX_SSE_REPLAY = 100;
+
     @Autowired
     private NotificationService notificationService;
 
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private SseNotificationHub sseNotificationHub;
+
+    @Autowired
+    private CategorySubscriptionService categorySubscriptionService;
+
+    @Autowired
+    private StreamTicketService streamTicketService;
+
     /**
      * 获取当前用户的所有通知
      * @return 通知列表
@@ -51,6 +73,172 @@ public class NotificationController {
         return ResponseEntity.ok(notifications);
     }
 
+    /**
+     * 分页获取当前用户的通知
+     * @param cursor 上一页返回的游标，为空时获取第一页
+     * @param size 每页条数，默认20，最大100
+     * @return 通知分页结果
+     */
+    @GetMapping("/feed")
+    public ResponseEntity<NotificationFeedPage> getNotificationFeed(@RequestParam(required = false) String cursor,
+                                                                    @RequestParam(defaultValue = "20") int size) {
+        // 从SecurityContext中获取当前认证用户
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() ||
+            "anonymousUser".equals(authentication.getName())) {
+            return ResponseEntity.status(401).build();
+        }
+
+        String username = authentication.getName();
+        Optional<User> userOpt = userService.getUserByUsername(username);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        try {
+            int pageSize = Math.max(1, Math.min(size, MAX_FEED_PAGE_SIZE));
+            return ResponseEntity.ok(notificationService.getNotificationFeed(userOpt.get().getId(), cursor, pageSize));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * 增量获取游标之后的新通知
+     * @param cursor 客户端已持有的最新游标
+     * @param size 最多返回条数，默认20，最大100
+     * @return 通知分页结果（按时间正序）
+     */
+    @GetMapping("/feed/since")
+    public ResponseEntity<NotificationFeedPage> getNotificationsSince(@RequestParam String cursor,
+                                                                      @RequestParam(defaultValue = "20") int size) {
+        // 从SecurityContext中获取当前认证用户
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() ||
+            "anonymousUser".equals(authentication.getName())) {
+            return ResponseEntity.status(401).build();
+        }
+
+        String username = authentication.getName();
+        Optional<User> userOpt = userService.getUserByUsername(username);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        try {
+            int pageSize = Math.max(1, Math.min(size, MAX_FEED_PAGE_SIZE));
+            return ResponseEntity.ok(notificationService.getNotificationsSince(userOpt.get().getId(), cursor, pageSize));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * 换取SSE通知流的一次性票据
+     * 只接受Authorization请求头中的访问token，票据短时有效且只能使用一次
+     * @param authorization Authorization请求头
+     * @return 票据及有效期
+     */
+    @PostMapping("/stream/ticket")
+    public ResponseEntity<?> issueStreamTicket(@RequestHeader(value = "Authorization", required = false) String authorization) {
+        if (authorization == null || !authorization.startsWith("Bearer ") || currentUserId().isEmpty()) {
+            return ResponseEntity.status(401).build();
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("ticket", streamTicketService.issue(authorization.substring(7)));
+        response.put("expiresIn", streamTicketService.getTicketTtlSeconds());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 通过SSE接收当前用户的通知与未读数量
+     * 断线重连时根据Last-Event-ID补发期间的个人通知和广播
+     * @param lastEventId 最后收到的事件ID（浏览器自动携带）
+     * @param lastEventIdParam 最后收到的事件ID（不支持自定义请求头的客户端使用）
+     * @return SSE连接
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamNotifications(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        // 从SecurityContext中获取当前认证用户
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() ||
+            "anonymousUser".equals(authentication.getName())) {
+            return ResponseEntity.status(401).build();
+        }
+
+        Long userId;
+        if (authentication.getPrincipal() instanceof AuthenticatedUser principal && principal.id() != null) {
+            userId = principal.id();
+        } else {
+            Optional<User> userOpt = userService.getUserByUsername(authentication.getName());
+            if (userOpt.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            userId = userOpt.get().getId();
+        }
+
+        SseNotificationHub.Position position;
+        try {
+            position = SseNotificationHub.Position.parse(lastEventId != null ? lastEventId : lastEventIdParam);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        // 新连接和旧格式的事件ID不补发广播，从注册连接前的最新广播开始推送
+        long broadcastFrom = position.broadcastId() != null
+                ? position.broadcastId()
+                : notificationService.getLatestBroadcastId();
+
+        // 先注册连接再查询补发内容，期间到达的实时通知和广播按ID去重
+        SseNotificationHub.Connection connection = sseNotificationHub.open(userId.toString());
+        List<Notification> missed = position.notificationId() > 0
+                ? notificationService.getNotificationsAfterId(userId, position.notificationId(), MAX_SSE_REPLAY)
+                : List.of();
+        List<Notification> missedBroadcasts = position.broadcastId() != null
+                ? notificationService.getBroadcastsAfterId(userId, broadcastFrom, MAX_SSE_REPLAY)
+                : List.of();
+        sseNotificationHub.resume(connection, new SseNotificationHub.Position(position.notificationId(), broadcastFrom),
+                missed, missedBroadcasts, notificationService.getUnreadNotificationCount(userId));
+        return ResponseEntity.ok()
+                .header("Cache-Control", "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(connection.getEmitter());
+    }
+
+    /**
+     * 获取当前用户订阅的新书分类
+     * @return 分类名称列表
+     */
+    @GetMapping("/preferences/categories")
+    public ResponseEntity<List<String>> getCategorySubscriptions() {
+        Optional<Long> userId = currentUserId();
+        if (userId.isEmpty()) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(categorySubscriptionService.getSubscriptions(userId.get()));
+    }
+
+    /**
+     * 更新当前用户订阅的新书分类（覆盖原有订阅，空列表表示取消全部订阅）
+     * @param categories 分类名称列表
+     * @return 更新后的分类名称列表
+     */
+    @PutMapping("/preferences/categories")
+    public ResponseEntity<?> updateCategorySubscriptions(@RequestBody List<String> categories) {
+        Optional<Long> userId = currentUserId();
+        if (userId.isEmpty()) {
+            return ResponseEntity.status(401).build();
+        }
+        try {
+            return ResponseEntity.ok(categorySubscriptionService.updateSubscriptions(userId.get(), categories));
+        } catch (IllegalArgumentException e) {
+            Map<String, String> response = new HashMap<>();
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     /**
      * 获取当前用户的未读通知
      * @return 未读通知列表
@@ -87,13 +275,19 @@ public class NotificationController {
             return ResponseEntity.status(401).build();
         }
 
-        String username = authentication.getName();
-        Optional<User> userOpt = userService.getUserByUsername(username);
-        if (userOpt.isEmpty()) {
-            return ResponseEntity.notFound().build();
+        // 认证主体快照带有ID时直接取ID，避免每次轮询都查询用户表
+        Long userId;
+        if (authentication.getPrincipal() instanceof AuthenticatedUser principal && principal.id() != null) {
+            userId = principal.id();
+        } else {
+            Optional<User> userOpt = userService.getUserByUsername(authentication.getName());
+            if (userOpt.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            userId = userOpt.get().getId();
         }
 
-        long count = notificationService.getUnreadNotificationCount(userOpt.get().getId());
+        long count = notificationService.getUnreadNotificationCount(userId);
         Map<String, Long> response = new HashMap<>();
         response.put("count", count);
         return ResponseEntity.ok(response);
@@ -131,6 +325,38 @@ public class NotificationController {
         }
     }
 
+    /**
+     * 标记广播通知为已读
+     * @param broadcastId 广播ID
+     * @return 操作结果
+     */
+    @PutMapping("/broadcasts/{broadcastId}/read")
+    public ResponseEntity<Map<String, String>> markBroadcastAsRead(@PathVariable Long broadcastId) {
+        // 从SecurityContext中获取当前认证用户
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() ||
+            "anonymousUser".equals(authentication.getName())) {
+            return ResponseEntity.status(401).build();
+        }
+
+        String username = authentication.getName();
+        Optional<User> userOpt = userService.getUserByUsername(username);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        boolean success = notificationService.markBroadcastAsRead(broadcastId, userOpt.get().getId());
+        Map<String, String> response = new HashMap<>();
+
+        if (success) {
+            response.put("message", "标记成功");
+            return ResponseEntity.ok(response);
+        } else {
+            response.put("message", "标记失败");
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     /**
      * 标记所有通知为已读
      * @return 操作结果
@@ -183,6 +409,22 @@ public class NotificationController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * 获取当前认证用户的ID，认证主体快照带有ID时不再查询用户表
+     * @return 当前用户ID，未认证时为空
+     */
+    private Optional<Long> currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() ||
+            "anonymousUser".equals(authentication.getName())) {
+            return Optional.empty();
+        }
+        if (authentication.getPrincipal() instanceof AuthenticatedUser principal && principal.id() != null) {
+            return Optional.of(principal.id());
+        }
+        return userService.getUserByUsername(authentication.getName()).map(User::getId);
+    }
+
     /**
      * 广播通知请求类
      */
@@ -64,6 +64,17 @@ public class StatisticsController {
         return ResponseEntity.ok(count);
     }
 
+    /**
+     * 获取各节点的WebSocket会话数量
+     * @return 节点ID -> 会话数
+     */
+    @GetMapping("/online-nodes")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Long>> getNodeSessionCounts() {
+        Map<String, Long> counts = statisticsService.getNodeSessionCounts();
+        return ResponseEntity.ok(counts);
+    }
+
     /**
      * 获取最近7天借阅统计
      * @return 最近7天的借阅数据
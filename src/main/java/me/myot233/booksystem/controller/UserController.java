@@ -1,8 +1,14 @@
 package me.myot233.booksystem.controller;
 
-import me.myot233.booksystem.entity.Book;
+import jakarta.servlet.http.HttpServletRequest;
+import me.myot233.booksystem.dto.BorrowedBookView;
+import me.myot233.booksystem.dto.ImportReport;
+import me.myot233.booksystem.dto.PageResult;
+import me.myot233.booksystem.dto.UserDTO;
 import me.myot233.booksystem.entity.User;
+import me.myot233.booksystem.service.UserImportService;
 import me.myot233.booksystem.service.UserService;
+import me.myot233.booksystem.util.ImportRecordReader;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -10,7 +16,9 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -20,11 +28,16 @@ import java.util.Optional;
 @RequestMapping("/api/users")
 public class UserController {
 
+    // 用户列表每页最大条数
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final UserService userService;
+    private final UserImportService userImportService;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserImportService userImportService) {
         this.userService = userService;
+        this.userImportService = userImportService;
     }
 
     /**
@@ -33,22 +46,40 @@ public class UserController {
      * @return 用户信息
      */
     @GetMapping("/me")
-    public ResponseEntity<User> getCurrentUser(@AuthenticationPrincipal UserDetails userDetails) {
+    public ResponseEntity<UserDTO> getCurrentUser(@AuthenticationPrincipal UserDetails userDetails) {
         if (userDetails != null) {
-            Optional<User> user = userService.getUserByUsername(userDetails.getUsername());
-            return user.map(ResponseEntity::ok)
+            return userService.getUserByUsername(userDetails.getUsername())
+                    .map(UserDTO::fromUser)
+                    .map(ResponseEntity::ok)
                     .orElse(ResponseEntity.notFound().build());
         }
         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
     }
 
     /**
-     * 获取所有用户
-     * @return 用户列表
+     * 分页查询用户
+     * @param keyword 用户名、姓名或邮箱前缀（可选）
+     * @param page 页码（从0开始）
+     * @param size 每页条数，默认20，最大100
+     * @param sort 排序字段：id、username、createTime、lastLoginTime
+     * @param direction 排序方向：asc、desc
+     * @param count 是否统计总数，默认不统计，只返回是否有下一页
+     * @return 用户分页结果
      */
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(userService.getAllUsers());
+    public ResponseEntity<PageResult<UserDTO>> getUsers(@RequestParam(required = false) String keyword,
+                                                        @RequestParam(defaultValue = "0") int page,
+                                                        @RequestParam(defaultValue = "20") int size,
+                                                        @RequestParam(defaultValue = "id") String sort,
+                                                        @RequestParam(defaultValue = "asc") String direction,
+                                                        @RequestParam(defaultValue = "false") boolean count) {
+        try {
+            int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+            return ResponseEntity.ok(userService.getUsers(keyword, Math.max(0, page), pageSize, sort,
+                    "desc".equalsIgnoreCase(direction), count));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
@@ -57,9 +88,10 @@ public class UserController {
      * @return 用户
      */
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUserById(@PathVariable Long id) {
-        Optional<User> user = userService.getUserById(id);
-        return user.map(ResponseEntity::ok)
+    public ResponseEntity<UserDTO> getUserById(@PathVariable Long id) {
+        return userService.getUserById(id)
+                .map(UserDTO::fromUser)
+                .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -77,6 +109,25 @@ public class UserController {
         return new ResponseEntity<>(userService.createUser(user), HttpStatus.CREATED);
     }
 
+    /**
+     * 批量导入用户
+     * 请求体为CSV（首行为表头）或NDJSON，逐行读取并分批写入，单行失败不影响其它行
+     * @param format 格式（csv、ndjson），为空时根据Content-Type判断
+     * @param request 请求
+     * @return 导入报告
+     */
+    @PostMapping("/import")
+    public ResponseEntity<?> importUsers(@RequestParam(required = false) String format,
+                                         HttpServletRequest request) {
+        try {
+            ImportRecordReader.Format resolved = ImportRecordReader.Format.resolve(format, request.getContentType());
+            ImportReport report = userImportService.importUsers(request.getInputStream(), resolved);
+            return ResponseEntity.ok(report);
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
     /**
      * 更新用户
      * @param id 用户ID
@@ -111,7 +162,7 @@ public class UserController {
      * @return 图书列表
      */
     @GetMapping("/{id}/books")
-    public ResponseEntity<List<Book>> getUserBooks(@PathVariable Long id) {
+    public ResponseEntity<List<BorrowedBookView>> getUserBooks(@PathVariable Long id) {
         if (userService.getUserById(id).isPresent()) {
             return ResponseEntity.ok(userService.getBorrowedBooks(id));
         }
@@ -126,7 +177,7 @@ public class UserController {
      */
     @PostMapping("/{userId}/books/{bookId}")
     public ResponseEntity<User> borrowBook(@PathVariable Long userId, @PathVariable Long bookId) {
-        Optional<User> user = userService.borrowBook(userId, bookId);
+        Optional<User> user = userService.borrowBookForUser(userId, bookId);
         return user.map(ResponseEntity::ok)
                 .orElse(ResponseEntity.badRequest().build());
     }
@@ -139,7 +190,7 @@ public class UserController {
      */
     @DeleteMapping("/{userId}/books/{bookId}")
     public ResponseEntity<User> returnBook(@PathVariable Long userId, @PathVariable Long bookId) {
-        Optional<User> user = userService.returnBook(userId, bookId);
+        Optional<User> user = userService.returnBookForUser(userId, bookId);
         return user.map(ResponseEntity::ok)
                 .orElse(ResponseEntity.badRequest().build());
     }
@@ -152,7 +203,7 @@ public class UserController {
      * @return 图书列表
      */
     @GetMapping("/me/books")
-    public ResponseEntity<List<Book>> getMyBorrowedBooks(@AuthenticationPrincipal UserDetails userDetails) {
+    public ResponseEntity<List<BorrowedBookView>> getMyBorrowedBooks(@AuthenticationPrincipal UserDetails userDetails) {
         Optional<User> userOpt = userService.getUserByUsername(userDetails.getUsername());
         if (userOpt.isPresent()) {
             return ResponseEntity.ok(userService.getBorrowedBooks(userOpt.get().getId()));
@@ -171,7 +222,7 @@ public class UserController {
                                                @AuthenticationPrincipal UserDetails userDetails) {
         Optional<User> userOpt = userService.getUserByUsername(userDetails.getUsername());
         if (userOpt.isPresent()) {
-            Optional<User> user = userService.borrowBook(userOpt.get().getId(), bookId);
+            Optional<User> user = userService.borrowBookForUser(userOpt.get().getId(), bookId);
             return user.map(ResponseEntity::ok)
                     .orElse(ResponseEntity.badRequest().build());
         }
@@ -189,7 +240,7 @@ public class UserController {
                                                @AuthenticationPrincipal UserDetails userDetails) {
         Optional<User> userOpt = userService.getUserByUsername(userDetails.getUsername());
         if (userOpt.isPresent()) {
-            Optional<User> user = userService.returnBook(userOpt.get().getId(), bookId);
+            Optional<User> user = userService.returnBookForUser(userOpt.get().getId(), bookId);
             return user.map(ResponseEntity::ok)
                     .orElse(ResponseEntity.badRequest().build());
         }
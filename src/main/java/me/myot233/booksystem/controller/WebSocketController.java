@@ -2,6 +2,7 @@ package me.myot233.booksystem.controller;
 
 import me.myot233.booksystem.entity.Notification;
 import me.myot233.booksystem.service.NotificationService;
+import me.myot233.booksystem.service.PresenceService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
@@ -20,6 +21,9 @@ public class WebSocketController {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private PresenceService presenceService;
+
     /**
      * 处理用户连接
      * @param message 连接消息
@@ -53,9 +57,13 @@ public class WebSocketController {
     /**
      * 处理心跳消息
      * @param message 心跳消息
+     * @param principal 用户主体（名称为用户ID）
      */
     @MessageMapping("/heartbeat")
-    public void handleHeartbeat(@Payload String message) {
-        // 心跳检测，保持连接活跃
+    public void handleHeartbeat(@Payload String message, Principal principal) {
+        // 心跳检测，刷新用户最后活跃时间
+        if (principal != null) {
+            presenceService.touch(principal.getName());
+        }
     }
 }
@@ -0,0 +1,24 @@
+package me.myot233.booksystem.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 图书批量导入报告
+ * 图书按ISBN新增或更新，比通用导入报告多出更新的记录数
+ */
+@Getter
+@Setter
+@JsonPropertyOrder({"received", "inserted", "updated", "rejected"})
+public class BookImportReport extends ImportReport {
+
+    /**
+     * 更新的记录数
+     */
+    private long updated;
+
+    public BookImportReport(int maxErrors) {
+        super(maxErrors);
+    }
+}
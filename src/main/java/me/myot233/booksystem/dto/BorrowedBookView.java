@@ -0,0 +1,34 @@
+package me.myot233.booksystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 已借图书视图
+ * 未归还借阅记录与图书信息的投影，一次联表查询得到用户的借阅列表
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BorrowedBookView {
+
+    /**
+     * 图书ID
+     */
+    private Long id;
+    private String title;
+    private String author;
+    private String category;
+    private String publisher;
+    private String isbn;
+
+    /**
+     * 借阅记录ID
+     */
+    private Long recordId;
+    private Date borrowTime;
+    private Date dueTime;
+}
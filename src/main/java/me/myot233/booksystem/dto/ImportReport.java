@@ -0,0 +1,92 @@
+package me.myot233.booksystem.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量导入报告
+ * 失败行只保留前若干条明细，其余只计数
+ */
+@Data
+public class ImportReport {
+
+    /**
+     * 读取的记录数（不含表头和空行）
+     */
+    private long received;
+
+    /**
+     * 新增的记录数
+     */
+    private long inserted;
+
+    /**
+     * 被拒绝的记录数
+     */
+    private long rejected;
+
+    /**
+     * 失败行明细
+     */
+    private List<RowError> errors = new ArrayList<>();
+
+    /**
+     * 失败行明细是否因数量过多被截断
+     */
+    private boolean errorsTruncated;
+
+    /**
+     * 耗时（毫秒）
+     */
+    private long elapsedMs;
+
+    /**
+     * 每秒处理的记录数
+     */
+    private long rowsPerSecond;
+
+    // 最多保留的失败行明细数
+    @JsonIgnore
+    private final int maxErrors;
+
+    public ImportReport(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * 记录一行失败
+     * @param line 行号
+     * @param key 记录标识（如用户名、ISBN），可为空
+     * @param message 失败原因
+     */
+    public void reject(long line, String key, String message) {
+        rejected++;
+        if (errors.size() < maxErrors) {
+            errors.add(new RowError(line, key, message));
+        } else {
+            errorsTruncated = true;
+        }
+    }
+
+    /**
+     * 结束导入，计算耗时和吞吐量
+     * @param startNanos 开始时间（System.nanoTime）
+     */
+    public void finish(long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        elapsedMs = elapsedNanos / 1_000_000;
+        rowsPerSecond = elapsedNanos > 0 ? received * 1_000_000_000L / elapsedNanos : received;
+    }
+
+    /**
+     * 失败行
+     * @param line 行号
+     * @param key 记录标识
+     * @param message 失败原因
+     */
+    public record RowError(long line, String key, String message) {
+    }
+}
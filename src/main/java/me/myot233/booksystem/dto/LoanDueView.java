@@ -0,0 +1,23 @@
+package me.myot233.booksystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 待提醒借阅视图
+ * 借阅记录与图书标题的投影，用于到期和逾期提醒
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanDueView {
+
+    private Long recordId;
+    private Long userId;
+    private Long bookId;
+    private String bookTitle;
+    private Date dueTime;
+}
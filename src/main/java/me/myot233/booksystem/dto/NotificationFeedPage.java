@@ -0,0 +1,32 @@
+package me.myot233.booksystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import me.myot233.booksystem.entity.Notification;
+
+import java.util.List;
+
+/**
+ * 通知分页结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationFeedPage {
+
+    /**
+     * 本页通知
+     */
+    private List<Notification> items;
+
+    /**
+     * 下一页游标（增量查询时为最新一条的游标）
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有更多数据
+     */
+    private boolean hasMore;
+}
@@ -0,0 +1,54 @@
+package me.myot233.booksystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+/**
+ * 分页结果
+ * 不统计总数时total为null，只通过hasNext判断是否还有下一页
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageResult<T> {
+
+    /**
+     * 本页数据
+     */
+    private List<T> items;
+
+    /**
+     * 页码（从0开始）
+     */
+    private int page;
+
+    /**
+     * 每页条数
+     */
+    private int size;
+
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasNext;
+
+    /**
+     * 总条数，未统计时为null
+     */
+    private Long total;
+
+    /**
+     * 从分页查询结果创建，Page带总数，Slice不带
+     * @param slice 查询结果
+     * @return 分页结果
+     */
+    public static <T> PageResult<T> of(Slice<T> slice) {
+        Long total = slice instanceof Page<T> page ? page.getTotalElements() : null;
+        return new PageResult<>(slice.getContent(), slice.getNumber(), slice.getSize(), slice.hasNext(), total);
+    }
+}
@@ -1,15 +1,20 @@
 package me.myot233.booksystem.dto;
 
 import me.myot233.booksystem.entity.User;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.Date;
 
 /**
  * 用户数据传输对象
- * 避免直接返回User实体导致的懒加载问题
+ * 避免直接返回User实体导致的懒加载问题，也不暴露密码哈希；
+ * 全参构造器供JPQL构造表达式直接投影，字段顺序与查询一致
  */
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class UserDTO {
     
     private Long id;
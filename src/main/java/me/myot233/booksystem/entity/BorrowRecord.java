@@ -0,0 +1,70 @@
+package me.myot233.booksystem.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 借阅记录实体类
+ */
+@Entity
+@Table(name = "borrow_records", indexes = {
+    // 按到期时间范围扫描未归还的借阅
+    @Index(name = "idx_borrow_records_open_due", columnList = "returnTime, dueTime, id"),
+    // 按用户和图书查找借阅
+    @Index(name = "idx_borrow_records_user_book", columnList = "userId, bookId, returnTime"),
+    // 提醒时间轮增量扫描新借阅
+    @Index(name = "idx_borrow_records_borrow_time", columnList = "borrowTime, id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BorrowRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * 借阅用户ID
+     */
+    @Column(nullable = false)
+    private Long userId;
+
+    /**
+     * 借阅图书ID
+     */
+    @Column(nullable = false)
+    private Long bookId;
+
+    /**
+     * 借阅时间
+     */
+    @Column(nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date borrowTime = new Date();
+
+    /**
+     * 到期时间
+     */
+    @Column(nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date dueTime;
+
+    /**
+     * 归还时间（未归还为空）
+     */
+    @Column
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date returnTime;
+
+    /**
+     * 最后一次发送逾期提醒的时间
+     */
+    @Column
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastReminderTime;
+}
@@ -0,0 +1,71 @@
+package me.myot233.booksystem.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 广播通知实体类
+ * 每条广播只存储一行，用户是否已读由 {@link BroadcastReadCursor} 记录
+ */
+@Entity
+@Table(name = "broadcast_notifications", indexes = {
+    @Index(name = "idx_broadcast_notifications_time", columnList = "createTime, id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BroadcastNotification {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * 通知标题
+     */
+    @Column(nullable = false)
+    private String title;
+
+    /**
+     * 通知内容
+     */
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String content;
+
+    /**
+     * 通知类型
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Notification.NotificationType type = Notification.NotificationType.SYSTEM_MESSAGE;
+
+    /**
+     * 创建时间
+     */
+    @Column(nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createTime = new Date();
+
+    /**
+     * 转换为用户视角的通知对象（不持久化）
+     * @param userId 用户ID
+     * @param read 是否已读
+     * @return 通知对象
+     */
+    public Notification toUserNotification(Long userId, boolean read) {
+        Notification notification = new Notification();
+        notification.setId(id);
+        notification.setUserId(userId);
+        notification.setTitle(title);
+        notification.setContent(content);
+        notification.setType(type);
+        notification.setIsRead(read);
+        notification.setCreateTime(createTime);
+        notification.setBroadcast(true);
+        return notification;
+    }
+}
@@ -0,0 +1,45 @@
+package me.myot233.booksystem.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 用户广播阅读游标
+ * 记录用户可见的广播起点以及已读到的最后一条广播
+ */
+@Entity
+@Table(name = "broadcast_read_cursors")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BroadcastReadCursor {
+
+    /**
+     * 用户ID
+     */
+    @Id
+    private Long userId;
+
+    /**
+     * 可见广播起点（不含），注册前的广播对该用户不可见
+     */
+    @Column(nullable = false)
+    private Long baselineBroadcastId = 0L;
+
+    /**
+     * 已读到的最后一条广播ID
+     */
+    @Column(nullable = false)
+    private Long lastReadBroadcastId = 0L;
+
+    /**
+     * 更新时间
+     */
+    @Column(nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updateTime = new Date();
+}
@@ -0,0 +1,28 @@
+package me.myot233.booksystem.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 图书分类字典
+ * 每个分类名称分配一个从1开始的紧凑编号，作为用户兴趣位图中的位序号
+ */
+@Entity
+@Table(name = "categories")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Category {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    /**
+     * 分类名称
+     */
+    @Column(nullable = false, unique = true, length = 100)
+    private String name;
+}
@@ -0,0 +1,31 @@
+package me.myot233.booksystem.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 任务防护令牌
+ * 记录每个集群任务最近一次写入数据库时使用的租约令牌，令牌更小的旧持有者不能再写入
+ */
+@Entity
+@Table(name = "job_fences")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobFence {
+
+    /**
+     * 任务名称
+     */
+    @Id
+    @Column(length = 100)
+    private String jobName;
+
+    /**
+     * 最近一次写入使用的令牌
+     */
+    @Column(nullable = false)
+    private Long token = 0L;
+}
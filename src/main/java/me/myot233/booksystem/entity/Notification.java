@@ -11,7 +11,16 @@ import java.util.Date;
  * 通知实体类
  */
 @Entity
-@Table(name = "notifications")
+@Table(name = "notifications", indexes = {
+    // 通知列表分页：按用户倒序遍历 (createTime, id)
+    @Index(name = "idx_notifications_user_time", columnList = "userId, createTime, id"),
+    // 未读列表与未读计数
+    @Index(name = "idx_notifications_user_read_time", columnList = "userId, isRead, createTime"),
+    // 按类型分批清理过期通知
+    @Index(name = "idx_notifications_type_time", columnList = "type, createTime"),
+    // SSE断线重连时按ID补发
+    @Index(name = "idx_notifications_user_id", columnList = "userId, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -65,6 +74,12 @@ public class Notification {
     @Column
     private Long bookId;
     
+    /**
+     * 是否为广播通知（不持久化，广播存储在broadcast_notifications表中）
+     */
+    @Transient
+    private boolean broadcast;
+    
     /**
      * 通知类型枚举
      */
@@ -74,7 +89,8 @@ public class Notification {
         RETURN_REMINDER("归还提醒"),
         OVERDUE_REMINDER("逾期提醒"),
         SYSTEM_MESSAGE("系统消息"),
-        BOOK_AVAILABLE("图书可借");
+        BOOK_AVAILABLE("图书可借"),
+        REMINDER_DIGEST("提醒汇总");
         
         private final String description;
         
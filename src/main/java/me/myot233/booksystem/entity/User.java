@@ -1,6 +1,5 @@
 package me.myot233.booksystem.entity;
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -9,7 +8,6 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -18,7 +16,14 @@ import java.util.List;
  * 用户实体类
  */
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+    // 用户列表按姓名、邮箱前缀搜索
+    @Index(name = "idx_users_real_name", columnList = "realName"),
+    @Index(name = "idx_users_email", columnList = "email"),
+    // 用户列表按注册时间、最后登录时间排序
+    @Index(name = "idx_users_create_time", columnList = "createTime, id"),
+    @Index(name = "idx_users_last_login_time", columnList = "lastLoginTime, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -102,18 +107,6 @@ public class User implements UserDetails {
     @Temporal(TemporalType.TIMESTAMP)
     private Date lastLoginTime;
 
-    /**
-     * 借阅的图书
-     */
-    @JsonIgnore  // 避免JSON序列化时的懒加载问题
-    @ManyToMany(fetch = FetchType.LAZY)
-    @JoinTable(
-        name = "user_book_borrowings",
-        joinColumns = @JoinColumn(name = "user_id"),
-        inverseJoinColumns = @JoinColumn(name = "book_id")
-    )
-    private List<Book> borrowedBooks = new ArrayList<>();
-
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return List.of(new SimpleGrantedAuthority(role));
@@ -0,0 +1,39 @@
+package me.myot233.booksystem.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 用户分类订阅
+ * 订阅的分类以位图保存：第n位为1表示订阅了编号为n的分类
+ */
+@Entity
+@Table(name = "user_category_preferences")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserCategoryPreference {
+
+    /**
+     * 用户ID
+     */
+    @Id
+    private Long userId;
+
+    /**
+     * 订阅分类位图（BitSet.toByteArray）
+     */
+    @Column(nullable = false, columnDefinition = "VARBINARY(512)")
+    private byte[] interests;
+
+    /**
+     * 更新时间
+     */
+    @Column(nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updateTime = new Date();
+}
@@ -0,0 +1,8 @@
+package me.myot233.booksystem.event;
+
+/**
+ * 借阅归还事件
+ * @param recordId 借阅记录ID
+ */
+public record LoanClosedEvent(Long recordId) {
+}
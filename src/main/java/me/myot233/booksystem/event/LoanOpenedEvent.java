@@ -0,0 +1,11 @@
+package me.myot233.booksystem.event;
+
+import java.util.Date;
+
+/**
+ * 借阅创建事件
+ * @param recordId 借阅记录ID
+ * @param dueTime 到期时间
+ */
+public record LoanOpenedEvent(Long recordId, Date dueTime) {
+}
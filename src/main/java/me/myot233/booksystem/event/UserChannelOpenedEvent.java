@@ -0,0 +1,8 @@
+package me.myot233.booksystem.event;
+
+/**
+ * 用户在本节点打开非STOMP推送通道（如SSE）事件
+ * @param user 用户标识
+ */
+public record UserChannelOpenedEvent(String user) {
+}
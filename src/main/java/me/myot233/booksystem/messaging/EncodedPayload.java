@@ -0,0 +1,76 @@
+package me.myot233.booksystem.messaging;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * 预先编码的消息内容
+ * 消息只序列化一次为JSON字节，之后所有目的地和会话共享同一个字节数组，
+ * 发送时不再经过消息转换器
+ */
+public final class EncodedPayload {
+
+    private final byte[] json;
+
+    private EncodedPayload(byte[] json) {
+        this.json = json;
+    }
+
+    /**
+     * 将消息对象编码为JSON（已编码的直接返回）
+     * @param objectMapper JSON序列化器
+     * @param payload 消息对象
+     * @return 编码后的消息
+     */
+    public static EncodedPayload of(ObjectMapper objectMapper, Object payload) {
+        if (payload instanceof EncodedPayload encoded) {
+            return encoded;
+        }
+        try {
+            return new EncodedPayload(objectMapper.writeValueAsBytes(payload));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("消息序列化失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 包装已编码的JSON字节（调用方保证之后不再修改该数组）
+     * @param json JSON字节
+     * @return 编码后的消息
+     */
+    static EncodedPayload wrap(byte[] json) {
+        return new EncodedPayload(json);
+    }
+
+    /**
+     * 获取编码后的字节数
+     * @return 字节数
+     */
+    public int size() {
+        return json.length;
+    }
+
+    /**
+     * 共享的JSON字节，仅供本包内的发送实现使用，不允许修改
+     * @return JSON字节
+     */
+    byte[] bytes() {
+        return json;
+    }
+
+    /**
+     * 构建可直接交给消息代理的消息（每次发送新建消息头，消息体共享）
+     * @return 消息
+     */
+    Message<byte[]> toMessage() {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(json, accessor.getMessageHeaders());
+    }
+}
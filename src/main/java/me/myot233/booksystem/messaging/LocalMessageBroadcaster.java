@@ -0,0 +1,46 @@
+package me.myot233.booksystem.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 单节点消息发送实现
+ * 直接交给本机的简单消息代理，消息内容只编码一次，由代理分发给所有订阅会话，
+ * 同一份编码结果也推送给本机的SSE连接
+ */
+@Component
+@ConditionalOnProperty(name = "websocket.relay.mode", havingValue = "local", matchIfMissing = true)
+public class LocalMessageBroadcaster implements MessageBroadcaster {
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SseNotificationHub sseNotificationHub;
+
+    @Override
+    public EncodedPayload encode(Object payload) {
+        return EncodedPayload.of(objectMapper, payload);
+    }
+
+    @Override
+    public void sendToTopic(String destination, Object payload) {
+        EncodedPayload encoded = encode(payload);
+        messagingTemplate.send(destination, encoded.toMessage());
+        sseNotificationHub.deliverToAll(destination, SseNotificationHub.eventIdOf(payload), encoded);
+    }
+
+    @Override
+    public void sendToUser(String user, String destination, Object payload) {
+        EncodedPayload encoded = encode(payload);
+        messagingTemplate.send(messagingTemplate.getUserDestinationPrefix() + user + destination,
+                encoded.toMessage());
+        sseNotificationHub.deliver(user, destination, SseNotificationHub.eventIdOf(payload), encoded);
+    }
+}
@@ -0,0 +1,44 @@
+package me.myot233.booksystem.messaging;
+
+import java.util.Collection;
+
+/**
+ * WebSocket消息发送接口
+ * 屏蔽单节点与多节点部署的差异，业务代码只通过该接口推送STOMP消息
+ */
+public interface MessageBroadcaster {
+
+    /**
+     * 预先编码消息内容，用于同一内容发送给多个目的地时只序列化一次
+     * @param payload 消息对象
+     * @return 编码后的消息
+     */
+    EncodedPayload encode(Object payload);
+
+    /**
+     * 发送到公共目的地（所有订阅者）
+     * @param destination 目的地，如 /topic/system-notifications
+     * @param payload 消息内容（对象或 {@link EncodedPayload}）
+     */
+    void sendToTopic(String destination, Object payload);
+
+    /**
+     * 发送到指定用户的目的地
+     * @param user 用户标识（STOMP会话的Principal名称，即用户ID）
+     * @param destination 目的地，如 /queue/notifications
+     * @param payload 消息内容（对象或 {@link EncodedPayload}）
+     */
+    void sendToUser(String user, String destination, Object payload);
+
+    /**
+     * 发送到多个用户的同一目的地，默认逐个调用 {@link #sendToUser}
+     * @param users 用户标识
+     * @param destination 目的地
+     * @param payload 消息内容（对象或 {@link EncodedPayload}）
+     */
+    default void sendToUsers(Collection<String> users, String destination, Object payload) {
+        for (String user : users) {
+            sendToUser(user, destination, payload);
+        }
+    }
+}
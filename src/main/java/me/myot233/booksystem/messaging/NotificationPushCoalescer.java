@@ -0,0 +1,143 @@
+package me.myot233.booksystem.messaging;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.entity.Notification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户通知推送合并器
+ * 按用户暂存待推送的通知与未读数量，每隔几毫秒统一发送：
+ * 多条通知合并为一个批量帧，连续的未读数量更新只发送最新值
+ */
+@Slf4j
+@Component
+public class NotificationPushCoalescer {
+
+    // 单条通知目的地
+    public static final String NOTIFICATION_DESTINATION = "/queue/notifications";
+    // 批量通知目的地
+    public static final String NOTIFICATION_BATCH_DESTINATION = "/queue/notifications/batch";
+    // 未读数量目的地
+    public static final String UNREAD_COUNT_DESTINATION = "/queue/unread-count";
+
+    @Autowired
+    private MessageBroadcaster messageBroadcaster;
+
+    // 是否启用合并，关闭时立即发送
+    @Value("${websocket.coalesce.enabled:true}")
+    private boolean enabled;
+
+    // 合并刷新间隔（毫秒）
+    @Value("${websocket.coalesce.flush-interval-ms:20}")
+    private long flushIntervalMs;
+
+    private final Map<String, PendingPush> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    /**
+     * 启动刷新线程
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "notification-push-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止前发送剩余消息
+     */
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flush();
+        }
+    }
+
+    /**
+     * 加入待推送通知
+     * @param user 用户标识
+     * @param notification 通知
+     */
+    public void enqueueNotification(String user, Notification notification) {
+        if (!enabled) {
+            messageBroadcaster.sendToUser(user, NOTIFICATION_DESTINATION, notification);
+            return;
+        }
+        // 在compute中修改，保证与刷新线程的remove互斥
+        pending.compute(user, (key, push) -> {
+            PendingPush target = push != null ? push : new PendingPush();
+            target.notifications.add(notification);
+            return target;
+        });
+    }
+
+    /**
+     * 更新待推送的未读数量（只保留最新值）
+     * @param user 用户标识
+     * @param unreadCount 未读数量
+     */
+    public void enqueueUnreadCount(String user, long unreadCount) {
+        if (!enabled) {
+            messageBroadcaster.sendToUser(user, UNREAD_COUNT_DESTINATION, unreadCount);
+            return;
+        }
+        pending.compute(user, (key, push) -> {
+            PendingPush target = push != null ? push : new PendingPush();
+            target.unreadCount = unreadCount;
+            return target;
+        });
+    }
+
+    /**
+     * 发送所有用户的待推送消息
+     */
+    void flush() {
+        for (String user : pending.keySet()) {
+            PendingPush push = pending.remove(user);
+            if (push == null) {
+                continue;
+            }
+            try {
+                if (push.notifications.size() == 1) {
+                    messageBroadcaster.sendToUser(user, NOTIFICATION_DESTINATION, push.notifications.get(0));
+                } else if (!push.notifications.isEmpty()) {
+                    messageBroadcaster.sendToUser(user, NOTIFICATION_BATCH_DESTINATION, push.notifications);
+                }
+                if (push.unreadCount != null) {
+                    messageBroadcaster.sendToUser(user, UNREAD_COUNT_DESTINATION, push.unreadCount);
+                }
+            } catch (Exception e) {
+                log.warn("推送用户{}的通知失败: {}", user, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 单个用户的待推送内容
+     */
+    private static class PendingPush {
+        private final List<Notification> notifications = new ArrayList<>();
+        private Long unreadCount;
+    }
+}
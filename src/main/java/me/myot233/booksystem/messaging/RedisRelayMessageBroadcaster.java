@@ -0,0 +1,435 @@
+package me.myot233.booksystem.messaging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.event.UserChannelClosedEvent;
+import me.myot233.booksystem.event.UserChannelOpenedEvent;
+import me.myot233.booksystem.util.NodeIdentity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Redis发布订阅的多节点消息中继
+ * 每个节点仍使用本机的简单消息代理投递，节点之间通过Redis转发：
+ * 公共目的地发布到所有节点共享的频道；用户目的地只发布到持有该用户会话的节点频道。
+ * 中继消息格式为一行JSON头（来源节点、目的地、用户或用户列表、事件ID）加换行后的已编码消息体，
+ * 接收方不再解析或重新序列化消息体。
+ * 同一消息发给多个用户时用管道批量查询会话所在节点，每个节点只发布一条带用户列表的中继消息。
+ * 每个节点定期在Redis中登记心跳，超时未登记的节点视为宕机：移除该节点的节点负责清除它在所有用户会话记录中的条目，
+ * 发送用户消息时遇到已宕机节点的条目也会顺带删除
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "websocket.relay.mode", havingValue = "redis")
+public class RedisRelayMessageBroadcaster implements MessageBroadcaster, MessageListener {
+
+    // 公共目的地频道
+    private static final String TOPIC_CHANNEL = "ws:relay:topic";
+    // 节点频道前缀
+    private static final String NODE_CHANNEL_PREFIX = "ws:relay:node:";
+    // 用户会话所在节点 hash(nodeId -> 会话数)
+    private static final String USER_NODES_PREFIX = "ws:user_nodes:";
+    // 用户会话记录过期时间（秒），兜底清理长期无人连接的用户记录
+    private static final long USER_NODES_TTL = 86400;
+    // 节点心跳 zset(nodeId -> 最近心跳时间)
+    private static final String NODES_KEY = "ws:relay:nodes";
+    // 批量发送时每次管道查询的用户数
+    private static final int USER_BATCH_SIZE = 500;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private NodeIdentity nodeIdentity;
+
+    @Autowired
+    private SseNotificationHub sseNotificationHub;
+
+    // 节点心跳超时（毫秒），超过后视为宕机
+    @Value("${websocket.relay.node-timeout-ms:30000}")
+    private long nodeTimeoutMs;
+
+    private String nodeId;
+
+    // 最近一次心跳时读取的存活节点
+    private volatile Set<String> liveNodes = Set.of();
+
+    /**
+     * 订阅公共频道与本节点频道
+     * 本节点刚启动还没有会话，同一节点ID上次运行（如宕机前）留下的会话记录全部清除
+     */
+    @PostConstruct
+    public void init() {
+        nodeId = nodeIdentity.getNodeId();
+        listenerContainer.addMessageListener(this, new ChannelTopic(TOPIC_CHANNEL));
+        listenerContainer.addMessageListener(this, new ChannelTopic(NODE_CHANNEL_PREFIX + nodeId));
+        sweepNode(nodeId);
+        heartbeat();
+        log.info("WebSocket Redis中继已启用，节点ID: {}", nodeId);
+    }
+
+    /**
+     * 停止时注销节点并清除本节点的会话记录
+     */
+    @PreDestroy
+    public void shutdown() {
+        try {
+            stringRedisTemplate.opsForZSet().remove(NODES_KEY, nodeId);
+            sweepNode(nodeId);
+        } catch (Exception e) {
+            log.warn("注销WebSocket中继节点失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 登记本节点心跳，移除超时的节点并清除其会话记录
+     */
+    @Scheduled(fixedDelayString = "${websocket.relay.node-heartbeat-ms:10000}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        try {
+            stringRedisTemplate.opsForZSet().add(NODES_KEY, nodeId, now);
+            Set<String> expired = stringRedisTemplate.opsForZSet().rangeByScore(NODES_KEY, 0, now - nodeTimeoutMs);
+            if (expired != null) {
+                for (String node : expired) {
+                    // 只有成功移除的节点负责清理，避免多个节点重复扫描
+                    Long removed = stringRedisTemplate.opsForZSet().remove(NODES_KEY, node);
+                    if (removed != null && removed > 0) {
+                        log.info("WebSocket中继节点{}心跳超时，清除其会话记录", node);
+                        sweepNode(node);
+                    }
+                }
+            }
+            Set<String> live = stringRedisTemplate.opsForZSet().range(NODES_KEY, 0, -1);
+            liveNodes = live == null ? Set.of() : Set.copyOf(live);
+        } catch (Exception e) {
+            log.warn("WebSocket中继节点心跳失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public EncodedPayload encode(Object payload) {
+        return EncodedPayload.of(objectMapper, payload);
+    }
+
+    @Override
+    public void sendToTopic(String destination, Object payload) {
+        EncodedPayload encoded = encode(payload);
+        Long eventId = SseNotificationHub.eventIdOf(payload);
+        // 本节点直接投递，其它节点通过公共频道投递
+        deliverLocally(destination, null, eventId, encoded);
+        publish(TOPIC_CHANNEL, destination, null, eventId, encoded);
+    }
+
+    @Override
+    public void sendToUser(String user, String destination, Object payload) {
+        Set<Object> nodes = stringRedisTemplate.opsForHash().keys(USER_NODES_PREFIX + user);
+        if (nodes.isEmpty()) {
+            return;
+        }
+        EncodedPayload encoded = encode(payload);
+        Long eventId = SseNotificationHub.eventIdOf(payload);
+        for (Object node : nodes) {
+            if (nodeId.equals(node)) {
+                deliverLocally(destination, user, eventId, encoded);
+            } else if (isLive(node.toString())) {
+                publish(NODE_CHANNEL_PREFIX + node, destination, user, eventId, encoded);
+            } else {
+                // 节点已宕机，会话不存在了
+                stringRedisTemplate.opsForHash().delete(USER_NODES_PREFIX + user, node);
+            }
+        }
+    }
+
+    @Override
+    public void sendToUsers(Collection<String> users, String destination, Object payload) {
+        if (users.isEmpty()) {
+            return;
+        }
+        EncodedPayload encoded = encode(payload);
+        Long eventId = SseNotificationHub.eventIdOf(payload);
+        List<String> all = List.copyOf(users);
+        for (int from = 0; from < all.size(); from += USER_BATCH_SIZE) {
+            List<String> batch = all.subList(from, Math.min(all.size(), from + USER_BATCH_SIZE));
+            List<Object> nodeSets = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String user : batch) {
+                    connection.hashCommands().hKeys((USER_NODES_PREFIX + user).getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+
+            // 节点ID -> 在该节点上有会话的用户
+            Map<String, List<String>> usersByNode = new HashMap<>();
+            for (int i = 0; i < batch.size(); i++) {
+                if (nodeSets.get(i) instanceof Collection<?> nodes) {
+                    for (Object node : nodes) {
+                        usersByNode.computeIfAbsent(node.toString(), key -> new ArrayList<>()).add(batch.get(i));
+                    }
+                }
+            }
+            for (Map.Entry<String, List<String>> entry : usersByNode.entrySet()) {
+                String node = entry.getKey();
+                if (nodeId.equals(node)) {
+                    for (String user : entry.getValue()) {
+                        deliverLocally(destination, user, eventId, encoded);
+                    }
+                } else if (isLive(node)) {
+                    publishToUsers(NODE_CHANNEL_PREFIX + node, destination, entry.getValue(), eventId, encoded);
+                } else {
+                    // 节点已宕机，会话不存在了
+                    for (String user : entry.getValue()) {
+                        stringRedisTemplate.opsForHash().delete(USER_NODES_PREFIX + user, node);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 接收其它节点转发的消息并在本机投递
+     * @param message Redis消息
+     * @param pattern 订阅模式
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            byte[] body = message.getBody();
+            int headerEnd = indexOf(body, (byte) '\n');
+            if (headerEnd < 0) {
+                return;
+            }
+            JsonNode header = objectMapper.readTree(body, 0, headerEnd);
+            if (nodeId.equals(header.path("origin").asText())) {
+                return;
+            }
+            EncodedPayload payload = EncodedPayload.wrap(Arrays.copyOfRange(body, headerEnd + 1, body.length));
+            String destination = header.path("destination").asText();
+            JsonNode eventIdNode = header.get("eventId");
+            Long eventId = eventIdNode == null || eventIdNode.isNull() ? null : eventIdNode.asLong();
+            JsonNode users = header.get("users");
+            if (users != null && users.isArray()) {
+                for (JsonNode user : users) {
+                    deliverLocally(destination, user.asText(), eventId, payload);
+                }
+                return;
+            }
+            JsonNode user = header.get("user");
+            deliverLocally(destination, user == null || user.isNull() ? null : user.asText(), eventId, payload);
+        } catch (Exception e) {
+            log.warn("处理中继消息失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 记录用户会话所在节点
+     * @param event 会话连接事件
+     */
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        if (user == null) {
+            return;
+        }
+        addUserNode(user.getName());
+    }
+
+    /**
+     * 会话断开时减少节点上的会话数
+     * @param event 会话断开事件
+     */
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        Principal user = event.getUser();
+        if (user == null) {
+            return;
+        }
+        removeUserNode(user.getName());
+    }
+
+    /**
+     * SSE连接同样记录所在节点
+     * @param event 通道打开事件
+     */
+    @EventListener
+    public void onChannelOpened(UserChannelOpenedEvent event) {
+        addUserNode(event.user());
+    }
+
+    /**
+     * SSE连接关闭时减少节点上的会话数
+     * @param event 通道关闭事件
+     */
+    @EventListener
+    public void onChannelClosed(UserChannelClosedEvent event) {
+        removeUserNode(event.user());
+    }
+
+    private void addUserNode(String user) {
+        String key = USER_NODES_PREFIX + user;
+        stringRedisTemplate.opsForHash().increment(key, nodeId, 1);
+        stringRedisTemplate.expire(key, USER_NODES_TTL, TimeUnit.SECONDS);
+    }
+
+    private void removeUserNode(String user) {
+        String key = USER_NODES_PREFIX + user;
+        Long remaining = stringRedisTemplate.opsForHash().increment(key, nodeId, -1);
+        if (remaining != null && remaining <= 0) {
+            stringRedisTemplate.opsForHash().delete(key, nodeId);
+        }
+    }
+
+    /**
+     * 判断节点是否存活
+     * 本地列表来自上次心跳，不在列表中的节点（可能是刚启动的节点）再到Redis确认
+     * @param node 节点ID
+     * @return 是否存活
+     */
+    private boolean isLive(String node) {
+        if (liveNodes.contains(node)) {
+            return true;
+        }
+        Double lastSeen = stringRedisTemplate.opsForZSet().score(NODES_KEY, node);
+        return lastSeen != null && lastSeen >= System.currentTimeMillis() - nodeTimeoutMs;
+    }
+
+    /**
+     * 从所有用户的会话记录中删除节点
+     * @param node 节点ID
+     */
+    private void sweepNode(String node) {
+        ScanOptions options = ScanOptions.scanOptions().match(USER_NODES_PREFIX + "*").count(1000).build();
+        long cleaned = 0;
+        try (Cursor<String> keys = stringRedisTemplate.scan(options)) {
+            while (keys.hasNext()) {
+                Long deleted = stringRedisTemplate.opsForHash().delete(keys.next(), node);
+                cleaned += deleted != null ? deleted : 0;
+            }
+        } catch (Exception e) {
+            log.warn("清除节点{}的会话记录失败: {}", node, e.getMessage());
+            return;
+        }
+        if (cleaned > 0) {
+            log.info("已清除节点{}的{}条会话记录", node, cleaned);
+        }
+    }
+
+    /**
+     * 在本节点投递已编码的消息
+     * @param destination 目的地
+     * @param user 用户（公共目的地为null）
+     * @param eventId SSE事件ID（可为空）
+     * @param payload 已编码的消息
+     */
+    private void deliverLocally(String destination, String user, Long eventId, EncodedPayload payload) {
+        String target = user == null ? destination : messagingTemplate.getUserDestinationPrefix() + user + destination;
+        messagingTemplate.send(target, payload.toMessage());
+        if (user == null) {
+            sseNotificationHub.deliverToAll(destination, eventId, payload);
+        } else {
+            sseNotificationHub.deliver(user, destination, eventId, payload);
+        }
+    }
+
+    /**
+     * 发布中继消息
+     * @param channel 频道
+     * @param destination 目的地
+     * @param user 用户（公共目的地为null）
+     * @param eventId SSE事件ID（可为空）
+     * @param payload 已编码的消息
+     */
+    private void publish(String channel, String destination, String user, Long eventId, EncodedPayload payload) {
+        ObjectNode header = objectMapper.createObjectNode();
+        header.put("user", user);
+        publish(channel, header, destination, eventId, payload);
+    }
+
+    /**
+     * 发布发给多个用户的中继消息
+     * @param channel 频道
+     * @param destination 目的地
+     * @param users 用户
+     * @param eventId SSE事件ID（可为空）
+     * @param payload 已编码的消息
+     */
+    private void publishToUsers(String channel, String destination, List<String> users, Long eventId, EncodedPayload payload) {
+        ObjectNode header = objectMapper.createObjectNode();
+        ArrayNode userArray = header.putArray("users");
+        users.forEach(userArray::add);
+        publish(channel, header, destination, eventId, payload);
+    }
+
+    private void publish(String channel, ObjectNode header, String destination, Long eventId, EncodedPayload payload) {
+        try {
+            header.put("origin", nodeId);
+            header.put("destination", destination);
+            header.put("eventId", eventId);
+            byte[] headerBytes = objectMapper.writeValueAsBytes(header);
+
+            byte[] body = new byte[headerBytes.length + 1 + payload.size()];
+            System.arraycopy(headerBytes, 0, body, 0, headerBytes.length);
+            body[headerBytes.length] = '\n';
+            System.arraycopy(payload.bytes(), 0, body, headerBytes.length + 1, payload.size());
+
+            byte[] channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+            stringRedisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channelBytes, body));
+        } catch (Exception e) {
+            log.warn("发布中继消息失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 查找字节第一次出现的位置
+     * @param bytes 字节数组
+     * @param target 目标字节
+     * @return 位置，不存在时为-1
+     */
+    private static int indexOf(byte[] bytes, byte target) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,400 @@
+package me.myot233.booksystem.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.entity.Notification;
+import me.myot233.booksystem.event.UserChannelClosedEvent;
+import me.myot233.booksystem.event.UserChannelOpenedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SSE通知连接管理
+ * 只需要接收通知的客户端通过SSE连接，不必建立SockJS/STOMP会话。
+ * 消息复用STOMP推送时已编码的JSON字节；每个连接有一个小的发送队列，
+ * 由所有连接共享的虚拟线程执行器按顺序发送，慢客户端不会阻塞推送线程。
+ * 个人通知与广播的ID相互独立，事件ID同时记录两者（见{@link Position}），重连时分别补发。
+ * 并发事务的提交顺序与ID顺序不一致，实时推送可能乱序到达，因此只跳过补发过的消息，不按最大ID过滤。
+ */
+@Slf4j
+@Component
+public class SseNotificationHub {
+
+    /**
+     * 目的地 -> SSE事件名，其它目的地不推送给SSE连接
+     */
+    private static final Map<String, String> EVENT_NAMES = Map.of(
+            NotificationPushCoalescer.NOTIFICATION_DESTINATION, "notification",
+            NotificationPushCoalescer.NOTIFICATION_BATCH_DESTINATION, "notification-batch",
+            NotificationPushCoalescer.UNREAD_COUNT_DESTINATION, "unread-count",
+            "/queue/new-books", "new-book",
+            "/topic/system-notifications", "system-notification");
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 连接超时时间（毫秒），超时后客户端带Last-Event-ID重连
+    @Value("${sse.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    // 单个连接最多排队的事件数，超过时断开慢客户端
+    @Value("${sse.max-queued-events:256}")
+    private int maxQueuedEvents;
+
+    private final Map<String, Set<Connection>> connections = new ConcurrentHashMap<>();
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    // 所有连接共享的发送执行器
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * 注册连接数指标
+     */
+    @PostConstruct
+    public void init() {
+        Gauge.builder("sse.connections", connectionCount, AtomicInteger::get)
+                .description("当前SSE通知连接数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 关闭所有连接
+     */
+    @PreDestroy
+    public void stop() {
+        for (Set<Connection> userConnections : connections.values()) {
+            for (Connection connection : userConnections) {
+                connection.emitter.complete();
+            }
+        }
+        sender.shutdown();
+    }
+
+    /**
+     * 打开连接，在调用resume之前收到的消息先缓存
+     * @param user 用户标识
+     * @return 连接
+     */
+    public Connection open(String user) {
+        Connection connection = new Connection(user, new SseEmitter(timeoutMs));
+        connection.emitter.onCompletion(() -> close(connection));
+        connection.emitter.onTimeout(() -> close(connection));
+        connection.emitter.onError(e -> close(connection));
+        connections.computeIfAbsent(user, key -> ConcurrentHashMap.newKeySet()).add(connection);
+        connectionCount.incrementAndGet();
+        eventPublisher.publishEvent(new UserChannelOpenedEvent(user));
+        return connection;
+    }
+
+    /**
+     * 先发送断线期间的通知、广播和当前未读数量，再开始发送实时消息
+     * @param connection 连接
+     * @param position 客户端已收到的位置
+     * @param missed 断线期间的个人通知（按ID正序）
+     * @param missedBroadcasts 断线期间的广播（按ID正序）
+     * @param unreadCount 未读数量
+     */
+    public void resume(Connection connection, Position position, List<Notification> missed,
+                       List<Notification> missedBroadcasts, long unreadCount) {
+        ArrayDeque<Event> replay = new ArrayDeque<>(missed.size() + missedBroadcasts.size() + 1);
+        for (Notification notification : missed) {
+            replay.add(new Event("notification", notification.getId(), false, true, encode(notification)));
+        }
+        for (Notification broadcast : missedBroadcasts) {
+            replay.add(new Event("system-notification", broadcast.getId(), true, true, encode(broadcast)));
+        }
+        replay.add(new Event("unread-count", null, false, true, encode(unreadCount)));
+        connection.resume(position, replay);
+    }
+
+    /**
+     * 推送给用户的所有SSE连接
+     * @param user 用户标识
+     * @param destination 目的地
+     * @param eventId 事件ID（通知ID，可为空）
+     * @param payload 已编码的消息
+     */
+    public void deliver(String user, String destination, Long eventId, EncodedPayload payload) {
+        String name = EVENT_NAMES.get(destination);
+        Set<Connection> userConnections = connections.get(user);
+        if (name == null || userConnections == null) {
+            return;
+        }
+        Event event = new Event(name, eventId, false, false, payload.bytes());
+        for (Connection connection : userConnections) {
+            connection.enqueue(event);
+        }
+    }
+
+    /**
+     * 推送给本节点的所有SSE连接
+     * @param destination 目的地
+     * @param eventId 事件ID（广播ID，可为空）
+     * @param payload 已编码的消息
+     */
+    public void deliverToAll(String destination, Long eventId, EncodedPayload payload) {
+        String name = EVENT_NAMES.get(destination);
+        if (name == null || connections.isEmpty()) {
+            return;
+        }
+        Event event = new Event(name, eventId, true, false, payload.bytes());
+        for (Set<Connection> userConnections : connections.values()) {
+            for (Connection connection : userConnections) {
+                connection.enqueue(event);
+            }
+        }
+    }
+
+    /**
+     * 定期发送注释行，防止代理断开空闲连接
+     */
+    @Scheduled(fixedDelayString = "${sse.heartbeat-ms:25000}")
+    public void heartbeat() {
+        for (Set<Connection> userConnections : connections.values()) {
+            for (Connection connection : userConnections) {
+                connection.enqueue(Event.HEARTBEAT);
+            }
+        }
+    }
+
+    /**
+     * 获取本节点的SSE连接数
+     * @return 连接数
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * 取出消息中的通知ID作为事件ID，批量消息取最大ID
+     * @param payload 消息对象
+     * @return 事件ID，非通知消息返回null
+     */
+    public static Long eventIdOf(Object payload) {
+        if (payload instanceof Notification notification) {
+            return notification.getId();
+        }
+        if (payload instanceof Collection<?> items) {
+            Long max = null;
+            for (Object item : items) {
+                if (item instanceof Notification notification && notification.getId() != null
+                        && (max == null || notification.getId() > max)) {
+                    max = notification.getId();
+                }
+            }
+            return max;
+        }
+        return null;
+    }
+
+    private byte[] encode(Object payload) {
+        return EncodedPayload.of(objectMapper, payload).bytes();
+    }
+
+    private void close(Connection connection) {
+        if (!connection.markClosed()) {
+            return;
+        }
+        connections.computeIfPresent(connection.user, (key, userConnections) -> {
+            userConnections.remove(connection);
+            return userConnections.isEmpty() ? null : userConnections;
+        });
+        connectionCount.decrementAndGet();
+        eventPublisher.publishEvent(new UserChannelClosedEvent(connection.user));
+    }
+
+    /**
+     * 通知流位置，以“个人通知ID:广播ID”的形式作为SSE事件ID发送
+     * @param notificationId 已收到的最大个人通知ID
+     * @param broadcastId 已收到的最大广播ID，旧格式的事件ID（只有个人通知ID）不携带，为null
+     */
+    public record Position(long notificationId, Long broadcastId) {
+
+        /**
+         * 解析客户端携带的Last-Event-ID
+         * @param lastEventId 事件ID，为空表示新连接
+         * @return 位置
+         * @throws NumberFormatException 格式错误
+         */
+        public static Position parse(String lastEventId) {
+            if (lastEventId == null || lastEventId.isBlank()) {
+                return new Position(0, null);
+            }
+            String value = lastEventId.trim();
+            int separator = value.indexOf(':');
+            if (separator < 0) {
+                return new Position(Long.parseLong(value), null);
+            }
+            return new Position(Long.parseLong(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        }
+
+        @Override
+        public String toString() {
+            return notificationId + ":" + (broadcastId != null ? broadcastId : 0);
+        }
+    }
+
+    /**
+     * SSE事件
+     * @param name 事件名，为空表示心跳注释
+     * @param id 事件ID（个人通知ID或广播ID，批量消息为其中的最大ID）
+     * @param broadcast 是否广播
+     * @param replay 是否重连补发的消息
+     * @param data JSON字节
+     */
+    private record Event(String name, Long id, boolean broadcast, boolean replay, byte[] data) {
+        private static final Event HEARTBEAT = new Event(null, null, false, false, null);
+
+        /**
+         * 单条消息才能按ID判断是否已补发过，批量消息总是发送
+         */
+        private boolean single() {
+            return !"notification-batch".equals(name);
+        }
+    }
+
+    /**
+     * 单个SSE连接
+     */
+    public final class Connection {
+        private final String user;
+        private final SseEmitter emitter;
+        private final ArrayDeque<Event> queue = new ArrayDeque<>();
+        // 调用resume之前只缓存不发送
+        private boolean paused = true;
+        private boolean draining;
+        private boolean closed;
+        // 已发送的最大个人通知ID和广播ID，作为事件ID供客户端重连
+        private long lastSentId;
+        private long lastBroadcastId;
+        // 补发过的个人通知ID和广播ID，实时推送再次到达时跳过（只由发送线程访问）
+        private final Set<Long> replayedNotifications = new HashSet<>();
+        private final Set<Long> replayedBroadcasts = new HashSet<>();
+
+        private Connection(String user, SseEmitter emitter) {
+            this.user = user;
+            this.emitter = emitter;
+        }
+
+        public SseEmitter getEmitter() {
+            return emitter;
+        }
+
+        private synchronized void resume(Position position, ArrayDeque<Event> replay) {
+            lastSentId = position.notificationId();
+            lastBroadcastId = position.broadcastId() != null ? position.broadcastId() : 0;
+            for (Event event : replay) {
+                if (event.id() != null) {
+                    (event.broadcast() ? replayedBroadcasts : replayedNotifications).add(event.id());
+                }
+            }
+            while (!replay.isEmpty()) {
+                queue.addFirst(replay.pollLast());
+            }
+            paused = false;
+            startDraining();
+        }
+
+        private synchronized void enqueue(Event event) {
+            if (closed) {
+                return;
+            }
+            if (queue.size() >= maxQueuedEvents) {
+                // 慢客户端：断开后由客户端带Last-Event-ID重连补发
+                log.warn("SSE连接发送队列已满，断开用户{}的连接", user);
+                queue.clear();
+                emitter.complete();
+                return;
+            }
+            queue.add(event);
+            startDraining();
+        }
+
+        private void startDraining() {
+            if (!paused && !draining && !queue.isEmpty()) {
+                draining = true;
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                Event event;
+                synchronized (this) {
+                    event = queue.poll();
+                    if (event == null || closed) {
+                        draining = false;
+                        return;
+                    }
+                }
+                if (event.id() != null) {
+                    Set<Long> replayed = event.broadcast() ? replayedBroadcasts : replayedNotifications;
+                    if (!event.replay() && event.single() && replayed.remove(event.id())) {
+                        continue;
+                    }
+                    if (event.broadcast()) {
+                        lastBroadcastId = Math.max(lastBroadcastId, event.id());
+                    } else {
+                        lastSentId = Math.max(lastSentId, event.id());
+                    }
+                }
+                try {
+                    if (event.name() == null) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        SseEmitter.SseEventBuilder builder = SseEmitter.event().name(event.name());
+                        if (event.id() != null) {
+                            builder.id(new Position(lastSentId, lastBroadcastId).toString());
+                        }
+                        emitter.send(builder.data(event.data(), MediaType.APPLICATION_JSON));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    emitter.completeWithError(e);
+                    synchronized (this) {
+                        queue.clear();
+                        draining = false;
+                    }
+                    return;
+                }
+            }
+        }
+
+        private synchronized boolean markClosed() {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            queue.clear();
+            return true;
+        }
+    }
+}
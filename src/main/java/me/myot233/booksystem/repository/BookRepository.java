@@ -2,8 +2,11 @@ package me.myot233.booksystem.repository;
 
 import me.myot233.booksystem.entity.Book;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -33,6 +36,13 @@ public interface BookRepository extends JpaRepository<Book, Long> {
      * @return 图书列表
      */
     List<Book> findByCategory(String category);
+
+    /**
+     * 查询图书使用的所有分类名称
+     * @return 分类名称列表
+     */
+    @Query("SELECT DISTINCT b.category FROM Book b WHERE b.category IS NOT NULL")
+    List<String> findDistinctCategories();
     
     /**
      * 根据ISBN查找图书
@@ -48,4 +58,21 @@ public interface BookRepository extends JpaRepository<Book, Long> {
      * @return 图书列表
      */
     List<Book> findByTitleContainingAndAuthorContaining(String title, String author);
+
+    /**
+     * 批量查询已存在ISBN的库存信息（不加载实体）
+     * @param isbns ISBN号集合
+     * @return 每行为[isbn, id, stock, borrowed]
+     */
+    @Query("SELECT b.isbn, b.id, b.stock, b.borrowed FROM Book b WHERE b.isbn IN :isbns")
+    List<Object[]> findStockByIsbnIn(@Param("isbns") Collection<String> isbns);
+
+    /**
+     * 批量查询导入写入的各列，用于写入后核对
+     * @param isbns ISBN号集合
+     * @return 每行为[isbn, title, author, category, publisher, stock, borrowed]
+     */
+    @Query("SELECT b.isbn, b.title, b.author, b.category, b.publisher, b.stock, b.borrowed " +
+           "FROM Book b WHERE b.isbn IN :isbns")
+    List<Object[]> findImportedColumnsByIsbnIn(@Param("isbns") Collection<String> isbns);
 }
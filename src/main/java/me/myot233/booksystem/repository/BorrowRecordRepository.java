@@ -0,0 +1,130 @@
+package me.myot233.booksystem.repository;
+
+import me.myot233.booksystem.dto.BorrowedBookView;
+import me.myot233.booksystem.dto.LoanDueView;
+import me.myot233.booksystem.entity.BorrowRecord;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 借阅记录数据访问接口
+ */
+@Repository
+public interface BorrowRecordRepository extends JpaRepository<BorrowRecord, Long> {
+
+    /**
+     * 查找用户对某本图书的未归还借阅，最早的在前
+     * @param userId 用户ID
+     * @param bookId 图书ID
+     * @return 借阅记录ID
+     */
+    @Query("SELECT r.id FROM BorrowRecord r WHERE r.userId = :userId AND r.bookId = :bookId " +
+           "AND r.returnTime IS NULL ORDER BY r.borrowTime, r.id")
+    List<Long> findOpenIds(@Param("userId") Long userId, @Param("bookId") Long bookId);
+
+    /**
+     * 按 (dueTime, id) 游标分页扫描在指定时间之前到期的未归还借阅
+     * @param until 到期时间上限（含）
+     * @param afterDue 游标到期时间
+     * @param afterId 游标记录ID
+     * @param pageable 分页（只使用条数）
+     * @return 待提醒借阅列表
+     */
+    @Query("SELECT new me.myot233.booksystem.dto.LoanDueView(r.id, r.userId, r.bookId, b.title, r.dueTime) " +
+           "FROM BorrowRecord r JOIN Book b ON b.id = r.bookId " +
+           "WHERE r.returnTime IS NULL AND r.dueTime <= :until " +
+           "AND (r.dueTime > :afterDue OR (r.dueTime = :afterDue AND r.id > :afterId)) " +
+           "ORDER BY r.dueTime, r.id")
+    List<LoanDueView> findOpenDueBefore(@Param("until") Date until, @Param("afterDue") Date afterDue,
+                                        @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 按 (dueTime, id) 游标分页扫描已逾期且需要再次提醒的未归还借阅
+     * @param now 当前时间
+     * @param remindBefore 上次提醒早于该时间才再次提醒
+     * @param afterDue 游标到期时间
+     * @param afterId 游标记录ID
+     * @param pageable 分页（只使用条数）
+     * @return 待提醒借阅列表
+     */
+    @Query("SELECT new me.myot233.booksystem.dto.LoanDueView(r.id, r.userId, r.bookId, b.title, r.dueTime) " +
+           "FROM BorrowRecord r JOIN Book b ON b.id = r.bookId " +
+           "WHERE r.returnTime IS NULL AND r.dueTime <= :now " +
+           "AND (r.lastReminderTime IS NULL OR r.lastReminderTime < :remindBefore) " +
+           "AND (r.dueTime > :afterDue OR (r.dueTime = :afterDue AND r.id > :afterId)) " +
+           "ORDER BY r.dueTime, r.id")
+    List<LoanDueView> findOverdueToRemind(@Param("now") Date now, @Param("remindBefore") Date remindBefore,
+                                          @Param("afterDue") Date afterDue, @Param("afterId") Long afterId,
+                                          Pageable pageable);
+
+    /**
+     * 按ID游标分页扫描所有未归还的借阅
+     * @param afterId 游标记录ID
+     * @param pageable 分页（只使用条数）
+     * @return 借阅记录列表
+     */
+    List<BorrowRecord> findByReturnTimeIsNullAndIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    /**
+     * 按ID游标分页扫描指定时间之后借出、仍未归还的借阅
+     * @param since 借阅时间下限（含）
+     * @param afterId 游标记录ID
+     * @param pageable 分页（只使用条数）
+     * @return 借阅记录列表
+     */
+    List<BorrowRecord> findByBorrowTimeGreaterThanEqualAndReturnTimeIsNullAndIdGreaterThanOrderByIdAsc(
+            Date since, Long afterId, Pageable pageable);
+
+    /**
+     * 按ID批量查询仍未归还的借阅及图书标题
+     * @param ids 借阅记录ID
+     * @return 待提醒借阅列表
+     */
+    @Query("SELECT new me.myot233.booksystem.dto.LoanDueView(r.id, r.userId, r.bookId, b.title, r.dueTime) " +
+           "FROM BorrowRecord r JOIN Book b ON b.id = r.bookId " +
+           "WHERE r.id IN :ids AND r.returnTime IS NULL")
+    List<LoanDueView> findOpenViewsByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 查询用户未归还的借阅及图书信息
+     * @param userId 用户ID
+     * @return 已借图书列表（按借阅时间正序）
+     */
+    @Query("SELECT new me.myot233.booksystem.dto.BorrowedBookView(b.id, b.title, b.author, b.category, " +
+           "b.publisher, b.isbn, r.id, r.borrowTime, r.dueTime) " +
+           "FROM BorrowRecord r JOIN Book b ON b.id = r.bookId " +
+           "WHERE r.userId = :userId AND r.returnTime IS NULL " +
+           "ORDER BY r.borrowTime, r.id")
+    List<BorrowedBookView> findOpenBooksByUserId(@Param("userId") Long userId);
+
+    /**
+     * 记录逾期提醒时间
+     * @param ids 借阅记录ID
+     * @param time 提醒时间
+     * @return 更新行数
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE BorrowRecord r SET r.lastReminderTime = :time WHERE r.id IN :ids")
+    int markReminded(@Param("ids") Collection<Long> ids, @Param("time") Date time);
+
+    /**
+     * 结束未归还的借阅记录，记录已归还时不更新
+     * @param id 借阅记录ID
+     * @param time 归还时间
+     * @return 更新行数，并发归还时只有一个请求返回1
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE BorrowRecord r SET r.returnTime = :time WHERE r.id = :id AND r.returnTime IS NULL")
+    int closeIfOpen(@Param("id") Long id, @Param("time") Date time);
+}
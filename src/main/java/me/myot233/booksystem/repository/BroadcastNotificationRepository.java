@@ -0,0 +1,101 @@
+package me.myot233.booksystem.repository;
+
+import me.myot233.booksystem.entity.BroadcastNotification;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 广播通知数据访问接口
+ */
+@Repository
+public interface BroadcastNotificationRepository extends JpaRepository<BroadcastNotification, Long> {
+
+    /**
+     * 查找指定ID之后的广播
+     * @param id 起始广播ID（不含）
+     * @return 广播列表
+     */
+    List<BroadcastNotification> findByIdGreaterThanOrderByIdDesc(Long id);
+
+    /**
+     * 按ID正序查找指定ID之后的广播
+     * @param id 起始广播ID（不含）
+     * @param pageable 分页（只使用条数）
+     * @return 广播列表
+     */
+    List<BroadcastNotification> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * 分页查询可见广播的第一页
+     * @param baseline 可见广播起点（不含）
+     * @param pageable 分页（只使用条数）
+     * @return 广播列表
+     */
+    @Query("SELECT b FROM BroadcastNotification b WHERE b.id > :baseline ORDER BY b.createTime DESC, b.id DESC")
+    List<BroadcastNotification> findFeedFirst(@Param("baseline") Long baseline, Pageable pageable);
+
+    /**
+     * 分页查询游标之前（更早）的可见广播
+     * @param baseline 可见广播起点（不含）
+     * @param time 游标创建时间
+     * @param id 游标ID
+     * @param pageable 分页（只使用条数）
+     * @return 广播列表
+     */
+    @Query("SELECT b FROM BroadcastNotification b WHERE b.id > :baseline " +
+           "AND (b.createTime < :time OR (b.createTime = :time AND b.id < :id)) " +
+           "ORDER BY b.createTime DESC, b.id DESC")
+    List<BroadcastNotification> findFeedBefore(@Param("baseline") Long baseline, @Param("time") Date time,
+                                               @Param("id") Long id, Pageable pageable);
+
+    /**
+     * 查询游标之后（更新）的可见广播
+     * @param baseline 可见广播起点（不含）
+     * @param time 游标创建时间
+     * @param id 游标ID
+     * @param pageable 分页（只使用条数）
+     * @return 广播列表（按时间正序）
+     */
+    @Query("SELECT b FROM BroadcastNotification b WHERE b.id > :baseline " +
+           "AND (b.createTime > :time OR (b.createTime = :time AND b.id > :id)) " +
+           "ORDER BY b.createTime ASC, b.id ASC")
+    List<BroadcastNotification> findFeedAfter(@Param("baseline") Long baseline, @Param("time") Date time,
+                                              @Param("id") Long id, Pageable pageable);
+
+    /**
+     * 查找指定时间之前的最后一条广播
+     * @param time 时间
+     * @return 广播
+     */
+    Optional<BroadcastNotification> findTopByCreateTimeBeforeOrderByIdDesc(Date time);
+
+    /**
+     * 获取最新广播ID
+     * @return 最新广播ID，没有广播时为0
+     */
+    @Query("SELECT COALESCE(MAX(b.id), 0) FROM BroadcastNotification b")
+    Long findMaxId();
+
+    /**
+     * 获取所有广播ID
+     * @return 广播ID列表
+     */
+    @Query("SELECT b.id FROM BroadcastNotification b ORDER BY b.id")
+    List<Long> findAllIds();
+
+    /**
+     * 按索引顺序查找早于截止时间的广播ID（用于分批清理）
+     * @param cutoff 截止时间
+     * @param pageable 分页（只使用条数）
+     * @return 广播ID列表
+     */
+    @Query("SELECT b.id FROM BroadcastNotification b WHERE b.createTime < :cutoff ORDER BY b.createTime, b.id")
+    List<Long> findIdsForPurge(@Param("cutoff") Date cutoff, Pageable pageable);
+}
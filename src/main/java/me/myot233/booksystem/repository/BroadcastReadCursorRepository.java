@@ -0,0 +1,38 @@
+package me.myot233.booksystem.repository;
+
+import me.myot233.booksystem.entity.BroadcastReadCursor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 广播阅读游标数据访问接口
+ */
+@Repository
+public interface BroadcastReadCursorRepository extends JpaRepository<BroadcastReadCursor, Long> {
+
+    /**
+     * 游标不存在时创建，已存在（包括并发创建）时忽略
+     * @param userId 用户ID
+     * @param baseline 可见广播起点，同时作为已读位置
+     * @return 插入行数
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO broadcast_read_cursors " +
+                   "(user_id, baseline_broadcast_id, last_read_broadcast_id, update_time) " +
+                   "VALUES (:userId, :baseline, :baseline, CURRENT_TIMESTAMP)", nativeQuery = true)
+    int insertIfAbsent(@Param("userId") Long userId, @Param("baseline") Long baseline);
+
+    /**
+     * 推进用户的广播阅读游标（只前进不后退）
+     * @param userId 用户ID
+     * @param broadcastId 已读到的广播ID
+     * @return 更新行数
+     */
+    @Modifying
+    @Query("UPDATE BroadcastReadCursor c SET c.lastReadBroadcastId = :broadcastId, c.updateTime = CURRENT_TIMESTAMP " +
+           "WHERE c.userId = :userId AND c.lastReadBroadcastId < :broadcastId")
+    int advance(@Param("userId") Long userId, @Param("broadcastId") Long broadcastId);
+}
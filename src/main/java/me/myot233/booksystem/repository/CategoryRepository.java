@@ -0,0 +1,21 @@
+package me.myot233.booksystem.repository;
+
+import me.myot233.booksystem.entity.Category;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * 图书分类字典数据访问接口
+ */
+@Repository
+public interface CategoryRepository extends JpaRepository<Category, Integer> {
+
+    /**
+     * 根据名称查找分类
+     * @param name 分类名称
+     * @return 分类
+     */
+    Optional<Category> findByName(String name);
+}
@@ -0,0 +1,35 @@
+package me.myot233.booksystem.repository;
+
+import me.myot233.booksystem.entity.JobFence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 任务防护令牌数据访问接口
+ */
+@Repository
+public interface JobFenceRepository extends JpaRepository<JobFence, String> {
+
+    /**
+     * 任务第一次写入时创建令牌记录
+     * @param jobName 任务名称
+     * @return 插入行数
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO job_fences (job_name, token) VALUES (:jobName, 0)", nativeQuery = true)
+    int insertIfAbsent(@Param("jobName") String jobName);
+
+    /**
+     * 令牌不小于已记录的令牌时更新记录并锁定该行直到事务结束
+     * MySQL驱动默认返回匹配行数，令牌相同时也返回1
+     * @param jobName 任务名称
+     * @param token 当前租约的令牌
+     * @return 匹配行数，0表示已有更新的租约写入过
+     */
+    @Modifying
+    @Query("UPDATE JobFence f SET f.token = :token WHERE f.jobName = :jobName AND f.token <= :token")
+    int advance(@Param("jobName") String jobName, @Param("token") long token);
+}
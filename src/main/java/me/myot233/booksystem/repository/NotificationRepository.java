@@ -1,12 +1,15 @@
 package me.myot233.booksystem.repository;
 
 import me.myot233.booksystem.entity.Notification;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -22,6 +25,51 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
      */
     List<Notification> findByUserIdOrderByCreateTimeDesc(Long userId);
     
+    /**
+     * 分页查询用户通知的第一页
+     * @param userId 用户ID
+     * @param pageable 分页（只使用条数）
+     * @return 通知列表
+     */
+    List<Notification> findByUserIdOrderByCreateTimeDescIdDesc(Long userId, Pageable pageable);
+    
+    /**
+     * 查询指定ID之后的用户通知（按ID正序）
+     * @param userId 用户ID
+     * @param id 起始ID（不含）
+     * @param pageable 分页（只使用条数）
+     * @return 通知列表
+     */
+    List<Notification> findByUserIdAndIdGreaterThanOrderByIdAsc(Long userId, Long id, Pageable pageable);
+    
+    /**
+     * 分页查询游标之前（更早）的用户通知
+     * @param userId 用户ID
+     * @param time 游标创建时间
+     * @param id 游标通知ID
+     * @param pageable 分页（只使用条数）
+     * @return 通知列表
+     */
+    @Query("SELECT n FROM Notification n WHERE n.userId = :userId " +
+           "AND (n.createTime < :time OR (n.createTime = :time AND n.id < :id)) " +
+           "ORDER BY n.createTime DESC, n.id DESC")
+    List<Notification> findFeedBefore(@Param("userId") Long userId, @Param("time") Date time,
+                                      @Param("id") Long id, Pageable pageable);
+    
+    /**
+     * 查询游标之后（更新）的用户通知
+     * @param userId 用户ID
+     * @param time 游标创建时间
+     * @param id 游标通知ID
+     * @param pageable 分页（只使用条数）
+     * @return 通知列表（按时间正序）
+     */
+    @Query("SELECT n FROM Notification n WHERE n.userId = :userId " +
+           "AND (n.createTime > :time OR (n.createTime = :time AND n.id > :id)) " +
+           "ORDER BY n.createTime ASC, n.id ASC")
+    List<Notification> findFeedAfter(@Param("userId") Long userId, @Param("time") Date time,
+                                     @Param("id") Long id, Pageable pageable);
+    
     /**
      * 根据用户ID查找未读通知
      * @param userId 用户ID
@@ -36,6 +84,21 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
      */
     long countByUserIdAndIsReadFalse(Long userId);
     
+    /**
+     * 按用户分组统计未读通知数量
+     * @return [userId, count] 列表
+     */
+    @Query("SELECT n.userId, COUNT(n) FROM Notification n WHERE n.isRead = false GROUP BY n.userId")
+    List<Object[]> countUnreadGroupByUserId();
+
+    /**
+     * 统计指定通知中每个用户的未读数量（清理前调用）
+     * @param ids 通知ID集合
+     * @return 每行为[userId, count]
+     */
+    @Query("SELECT n.userId, COUNT(n) FROM Notification n WHERE n.id IN :ids AND n.isRead = false GROUP BY n.userId")
+    List<Object[]> countUnreadByIdInGroupByUserId(@Param("ids") Collection<Long> ids);
+    
     /**
      * 标记用户所有通知为已读
      * @param userId 用户ID
@@ -58,4 +121,15 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
      * @return 通知列表
      */
     List<Notification> findByUserIdAndType(Long userId, Notification.NotificationType type);
+    
+    /**
+     * 按索引顺序查找指定类型中早于截止时间的通知ID（用于分批清理）
+     * @param type 通知类型
+     * @param cutoff 截止时间
+     * @param pageable 分页（只使用条数）
+     * @return 通知ID列表
+     */
+    @Query("SELECT n.id FROM Notification n WHERE n.type = :type AND n.createTime < :cutoff ORDER BY n.createTime, n.id")
+    List<Long> findIdsForPurge(@Param("type") Notification.NotificationType type, @Param("cutoff") Date cutoff,
+                               Pageable pageable);
 }
@@ -0,0 +1,12 @@
+package me.myot233.booksystem.repository;
+
+import me.myot233.booksystem.entity.UserCategoryPreference;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 用户分类订阅数据访问接口
+ */
+@Repository
+public interface UserCategoryPreferenceRepository extends JpaRepository<UserCategoryPreference, Long> {
+}
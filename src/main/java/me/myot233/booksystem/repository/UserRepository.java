@@ -1,10 +1,20 @@
 package me.myot233.booksystem.repository;
 
+import me.myot233.booksystem.dto.UserDTO;
 import me.myot233.booksystem.entity.User;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * 用户数据访问接口
@@ -12,6 +22,19 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
+    /**
+     * 用户列表投影，不加载实体
+     */
+    String USER_DTO_SELECT = "SELECT new me.myot233.booksystem.dto.UserDTO(u.id, u.username, u.realName, u.email, " +
+            "u.phone, u.role, u.accountNonExpired, u.accountNonLocked, u.credentialsNonExpired, u.enabled, " +
+            "u.createTime, u.lastLoginTime) FROM User u";
+
+    /**
+     * 用户名、姓名或邮箱前缀匹配，前缀匹配可以使用索引
+     */
+    String KEYWORD_FILTER = " WHERE u.username LIKE CONCAT(:keyword, '%') " +
+            "OR u.realName LIKE CONCAT(:keyword, '%') OR u.email LIKE CONCAT(:keyword, '%')";
+
     /**
      * 根据用户名查找用户
      * @param username 用户名
@@ -53,4 +76,57 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return 是否存在
      */
     boolean existsByPhone(String phone);
+
+    /**
+     * 更新用户密码哈希
+     * @param username 用户名
+     * @param password 新的密码哈希
+     * @return 更新行数
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.password = :password WHERE u.username = :username")
+    int updatePassword(@Param("username") String username, @Param("password") String password);
+
+    /**
+     * 分页查询用户（统计总数）
+     * @param pageable 分页与排序
+     * @return 用户分页
+     */
+    @Query(value = USER_DTO_SELECT, countQuery = "SELECT COUNT(u) FROM User u")
+    Page<UserDTO> findUserPage(Pageable pageable);
+
+    /**
+     * 分页查询用户（不统计总数，多取一条判断是否有下一页）
+     * @param pageable 分页与排序
+     * @return 用户切片
+     */
+    @Query(USER_DTO_SELECT)
+    Slice<UserDTO> findUserSlice(Pageable pageable);
+
+    /**
+     * 按关键字分页搜索用户（统计总数）
+     * @param keyword 关键字
+     * @param pageable 分页与排序
+     * @return 用户分页
+     */
+    @Query(value = USER_DTO_SELECT + KEYWORD_FILTER, countQuery = "SELECT COUNT(u) FROM User u" + KEYWORD_FILTER)
+    Page<UserDTO> searchUserPage(@Param("keyword") String keyword, Pageable pageable);
+
+    /**
+     * 按关键字分页搜索用户（不统计总数）
+     * @param keyword 关键字
+     * @param pageable 分页与排序
+     * @return 用户切片
+     */
+    @Query(USER_DTO_SELECT + KEYWORD_FILTER)
+    Slice<UserDTO> searchUserSlice(@Param("keyword") String keyword, Pageable pageable);
+
+    /**
+     * 查询已存在的用户名
+     * @param usernames 用户名
+     * @return 其中已存在的用户名
+     */
+    @Query("SELECT u.username FROM User u WHERE u.username IN :usernames")
+    Set<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
 }
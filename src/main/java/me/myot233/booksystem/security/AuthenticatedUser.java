@@ -0,0 +1,74 @@
+package me.myot233.booksystem.security;
+
+import me.myot233.booksystem.entity.User;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 已认证用户的不可变快照
+ * 认证主体缓存在多个请求之间共享，不能直接缓存可变的用户实体；快照不含密码哈希
+ * @param id 用户ID，由非实体的用户详情构建时为null
+ * @param username 用户名
+ * @param authorities 权限
+ * @param accountNonExpired 账户是否未过期
+ * @param accountNonLocked 账户是否未锁定
+ * @param credentialsNonExpired 凭据是否未过期
+ * @param enabled 账户是否启用
+ */
+public record AuthenticatedUser(Long id, String username, List<GrantedAuthority> authorities,
+                                boolean accountNonExpired, boolean accountNonLocked,
+                                boolean credentialsNonExpired, boolean enabled) implements UserDetails {
+
+    /**
+     * 从加载的用户详情复制
+     * @param userDetails 用户详情
+     * @return 快照
+     */
+    public static AuthenticatedUser of(UserDetails userDetails) {
+        if (userDetails instanceof AuthenticatedUser snapshot) {
+            return snapshot;
+        }
+        Long id = userDetails instanceof User entity ? entity.getId() : null;
+        return new AuthenticatedUser(id, userDetails.getUsername(), List.copyOf(userDetails.getAuthorities()),
+                userDetails.isAccountNonExpired(), userDetails.isAccountNonLocked(),
+                userDetails.isCredentialsNonExpired(), userDetails.isEnabled());
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return "";
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return accountNonExpired;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return accountNonLocked;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return credentialsNonExpired;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+}
@@ -4,30 +4,55 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import me.myot233.booksystem.service.StreamTicketService;
+import me.myot233.booksystem.service.TokenRevocationService;
 import me.myot233.booksystem.service.UserService;
 import me.myot233.booksystem.util.JwtUtil;
+import me.myot233.booksystem.util.VerifiedToken;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * JWT认证过滤器
+ * 默认按token中的用户名加载用户详情；开启无状态模式后，携带角色声明的token直接由声明构建认证信息，
+ * 不访问数据库。两种模式下被吊销的token都会被拒绝
  */
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    // SSE通知流路径
+    private static final String SSE_STREAM_PATH = "/api/notifications/stream";
+
     @Autowired
     private JwtUtil jwtUtil;
 
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private StreamTicketService streamTicketService;
+
+    // 无状态模式：由token声明构建认证信息
+    @Value("${security.auth.stateless:false}")
+    private boolean stateless;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
                                   FilterChain filterChain) throws ServletException, IOException {
@@ -36,46 +61,62 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         // 跳过不需要JWT认证的路径
         if (shouldSkipFilter(requestPath)) {
-            logger.info("跳过JWT过滤器，路径: " + requestPath);
+            logger.debug("跳过JWT过滤器，路径: " + requestPath);
             filterChain.doFilter(request, response);
             return;
         }
 
-        final String requestTokenHeader = request.getHeader("Authorization");
+        String requestTokenHeader = request.getHeader("Authorization");
+        // 浏览器的EventSource不能设置请求头，SSE通知流允许通过查询参数传递一次性票据，按换取票据的token认证
+        if (requestTokenHeader == null && SSE_STREAM_PATH.equals(requestPath)
+                && request.getParameter("ticket") != null) {
+            try {
+                String accessToken = streamTicketService.consume(request.getParameter("ticket"));
+                if (accessToken != null) {
+                    requestTokenHeader = "Bearer " + accessToken;
+                } else {
+                    logger.debug("SSE票据无效、已过期或已使用");
+                }
+            } catch (Exception e) {
+                logger.warn("SSE票据校验失败: " + e.getMessage());
+            }
+        }
 
         String username = null;
-        String jwtToken = null;
+        VerifiedToken verified = null;
 
         // JWT Token格式为 "Bearer token"
         if (requestTokenHeader != null && requestTokenHeader.startsWith("Bearer ")) {
-            jwtToken = requestTokenHeader.substring(7);
+            String jwtToken = requestTokenHeader.substring(7);
             try {
-                username = jwtUtil.getUsernameFromToken(jwtToken);
-                logger.info("从JWT Token中获取到用户名: " + username);
+                // 校验签名与过期时间，近期校验过的token直接取缓存的声明
+                verified = jwtUtil.verify(jwtToken);
+                if (verified.isRefreshToken()) {
+                    // 刷新token只能用于换取新token
+                    logger.debug("刷新token不能用于访问接口，用户: " + verified.subject());
+                } else if (tokenRevocationService.isRevoked(verified)) {
+                    logger.debug("JWT Token已被吊销，用户: " + verified.subject());
+                } else {
+                    username = verified.subject();
+                }
             } catch (Exception e) {
-                logger.warn("无法获取JWT Token中的用户名: " + e.getMessage());
+                logger.warn("JWT Token解析失败: " + e.getMessage());
             }
         } else {
-            logger.warn("请求头中没有有效的Authorization Bearer token: " + requestTokenHeader);
+            logger.debug("请求头中没有有效的Authorization Bearer token");
         }
 
-        // 验证token
+        // 设置认证信息，用户详情优先从缓存获取
         if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             try {
-                UserDetails userDetails = userService.loadUserByUsername(username);
-                logger.info("加载用户详情成功: " + username + ", 角色: " + userDetails.getAuthorities());
-
-                // 如果token有效，设置Spring Security的认证
-                if (jwtUtil.validateToken(jwtToken, userDetails)) {
-                    UsernamePasswordAuthenticationToken authToken =
-                        new UsernamePasswordAuthenticationToken(
-                            userDetails, null, userDetails.getAuthorities());
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                    logger.info("认证成功，用户: " + username);
-                } else {
-                    logger.warn("JWT Token验证失败: " + username);
-                }
+                UserDetails userDetails = loadUserDetails(verified);
+
+                UsernamePasswordAuthenticationToken authToken =
+                    new UsernamePasswordAuthenticationToken(
+                        userDetails, null, userDetails.getAuthorities());
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authToken);
+                logger.debug("认证成功，用户: " + username);
             } catch (Exception e) {
                 logger.error("加载用户详情失败: " + username + ", 错误: " + e.getMessage());
             }
@@ -84,6 +125,23 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * 获取token对应的用户详情
+     * 无状态模式下由声明构建，未携带角色的token仍从缓存或数据库加载
+     * @param verified 已校验的token
+     * @return 用户详情
+     */
+    private UserDetails loadUserDetails(VerifiedToken verified) {
+        String subject = verified.subject();
+        if (stateless && verified.role() != null) {
+            return User.withUsername(subject)
+                    .password("")
+                    .authorities(List.of(new SimpleGrantedAuthority(verified.role())))
+                    .build();
+        }
+        return principalCache.get(subject, verified.issuedAt(), () -> userService.loadUserByUsername(subject));
+    }
+
     /**
      * 判断是否应该跳过JWT过滤器
      * @param requestPath 请求路径
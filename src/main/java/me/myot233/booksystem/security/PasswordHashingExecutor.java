@@ -0,0 +1,98 @@
+package me.myot233.booksystem.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 密码哈希执行器
+ * 登录、注册等需要计算BCrypt的操作在固定大小的线程池中执行，不占用Web请求线程；
+ * 等待队列有上限，队列已满时立即拒绝，由调用方返回429，避免登录高峰拖垮其它接口
+ */
+@Component
+public class PasswordHashingExecutor {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 哈希线程数，0表示使用CPU核数
+    @Value("${security.bcrypt.threads:0}")
+    private int threads;
+
+    // 最多排队等待的任务数
+    @Value("${security.bcrypt.queue-capacity:64}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    private int poolSize;
+
+    private Counter rejected;
+
+    /**
+     * 创建线程池并注册指标
+     */
+    @PostConstruct
+    public void start() {
+        poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger sequence = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "password-hashing-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("auth.password.queue", executor, e -> e.getQueue().size())
+                .description("等待计算密码哈希的任务数")
+                .register(meterRegistry);
+        rejected = Counter.builder("auth.password.rejected")
+                .description("因队列已满被拒绝的密码哈希任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 停止线程池
+     */
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * 提交需要计算密码哈希的任务
+     * @param task 任务
+     * @return 任务结果
+     * @throws RejectedExecutionException 队列已满
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * 获取哈希线程数
+     * @return 线程数
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+}
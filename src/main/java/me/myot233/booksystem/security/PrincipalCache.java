@@ -0,0 +1,98 @@
+package me.myot233.booksystem.security;
+
+import jakarta.annotation.PostConstruct;
+import me.myot233.booksystem.util.ExpiringCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 认证主体缓存
+ * 按用户名缓存加载好的用户详情的不可变快照，容量有上限并按近似最近使用淘汰，条目超过有效期后重新加载，读写不持有全局锁。
+ * 晚于快照加载时间签发的token（如修改密码后重新登录）会重新加载一次，不会读到签发前的旧数据。
+ * 用户信息变更时按用户名失效（其它节点通过token吊销频道收到通知）；失效时递增全局版本号，加载期间发生过任何失效的结果都不写入缓存。
+ * 失效很少发生，全局版本号偶尔多丢弃一次加载结果，但不需要为每个用户名保存版本
+ */
+@Component
+public class PrincipalCache {
+
+    // 最大条目数
+    @Value("${security.principal-cache.max-size:10000}")
+    private int maxSize;
+
+    // 条目有效期（秒）
+    @Value("${security.principal-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    // 用户名 -> 快照，到有效期后失效，超出容量时淘汰近似最久未使用的条目
+    private ExpiringCache<String, Entry> entries;
+
+    // 失效版本号
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * 创建缓存
+     */
+    @PostConstruct
+    public void init() {
+        entries = new ExpiringCache<>(maxSize);
+    }
+
+    /**
+     * 获取缓存的用户详情，不存在、已过期或早于token签发时加载
+     * @param username 用户名
+     * @param issuedAt token签发时间（毫秒）
+     * @param loader 加载用户详情
+     * @return 用户详情快照
+     */
+    public AuthenticatedUser get(String username, long issuedAt, Supplier<UserDetails> loader) {
+        Entry cached = entries.get(username);
+        if (cached != null && cached.loadedAt() >= issuedAt) {
+            return cached.userDetails();
+        }
+
+        long loadVersion = version.get();
+        long loadedAt = System.currentTimeMillis();
+        AuthenticatedUser userDetails = AuthenticatedUser.of(loader.get());
+        // 加载期间发生过失效，不缓存可能过时的数据；写入后再检查一次，写入时并发发生的失效也不会留下旧数据
+        if (version.get() == loadVersion) {
+            entries.put(username, new Entry(userDetails, loadedAt), loadedAt + TimeUnit.SECONDS.toMillis(ttlSeconds));
+            if (version.get() != loadVersion) {
+                entries.remove(username);
+            }
+        }
+        return userDetails;
+    }
+
+    /**
+     * 失效用户的缓存条目（仅本节点）
+     * @param username 用户名
+     */
+    public void invalidate(String username) {
+        if (username == null) {
+            return;
+        }
+        version.incrementAndGet();
+        entries.remove(username);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        version.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * 用户详情快照
+     * @param userDetails 用户详情
+     * @param loadedAt 开始加载的时间（毫秒）
+     */
+    private record Entry(AuthenticatedUser userDetails, long loadedAt) {
+    }
+}
@@ -0,0 +1,67 @@
+package me.myot233.booksystem.security;
+
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.entity.User;
+import me.myot233.booksystem.service.TokenRevocationService;
+import me.myot233.booksystem.service.UserService;
+import me.myot233.booksystem.util.JwtUtil;
+import me.myot233.booksystem.util.VerifiedToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * STOMP连接认证拦截器
+ * 在CONNECT帧中读取Authorization头，校验JWT后将会话的Principal设置为用户ID，
+ * 使 convertAndSendToUser(userId, ...) 能够路由到该用户的会话
+ */
+@Slf4j
+@Component
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !StompCommand.CONNECT.equals(accessor.getCommand())) {
+            return message;
+        }
+
+        String header = accessor.getFirstNativeHeader("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            // 未携带token的连接只能接收公共消息
+            return message;
+        }
+
+        String token = header.substring(7);
+        try {
+            VerifiedToken verified = jwtUtil.verify(token);
+            if (verified.isRefreshToken() || tokenRevocationService.isRevoked(verified)) {
+                log.debug("STOMP连接使用的token已被吊销或不是访问token: {}", verified.subject());
+                return message;
+            }
+            Optional<User> userOpt = userService.getUserByUsername(verified.subject());
+            userOpt.ifPresent(user -> accessor.setUser(new UsernamePasswordAuthenticationToken(
+                    user.getId().toString(), null, user.getAuthorities())));
+        } catch (Exception e) {
+            log.warn("STOMP连接认证失败: {}", e.getMessage());
+        }
+        return message;
+    }
+}
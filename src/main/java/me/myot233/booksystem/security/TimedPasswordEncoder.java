@@ -0,0 +1,46 @@
+package me.myot233.booksystem.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * 记录耗时的密码编码器
+ * 编码和校验的耗时分别记录到auth.password.hash直方图，用于调整BCrypt强度和哈希线程数
+ */
+public class TimedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+
+    public TimedPasswordEncoder(PasswordEncoder delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.encodeTimer = hashTimer("encode", meterRegistry);
+        this.matchesTimer = hashTimer("matches", meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return encodeTimer.record(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        Boolean matched = matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword));
+        return Boolean.TRUE.equals(matched);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private static Timer hashTimer(String operation, MeterRegistry meterRegistry) {
+        return Timer.builder("auth.password.hash")
+                .description("密码哈希耗时")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
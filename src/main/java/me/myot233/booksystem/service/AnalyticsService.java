@@ -7,6 +7,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -67,23 +68,23 @@ public class AnalyticsService {
     }
 
     /**
-     * 发送用户登录事件到分析服务
-     * @param userId 用户ID
-     * @param username 用户名
+     * 批量发送用户登录事件到分析服务
+     * @param events 登录事件（userId、username、timestamp）
      */
-    public void sendLoginEvent(Long userId, String username) {
+    public void sendLoginEvents(List<Map<String, Object>> events) {
+        if (events.isEmpty()) {
+            return;
+        }
         try {
             Map<String, Object> data = new HashMap<>();
-            data.put("userId", userId);
-            data.put("username", username);
-            data.put("timestamp", System.currentTimeMillis());
+            data.put("events", events);
 
-            String url = analyticsServiceUrl + "/api/collect/login";
+            String url = analyticsServiceUrl + "/api/collect/login/batch";
             restTemplate.postForObject(url, data, String.class);
-            
-            log.info("登录事件发送成功: 用户{}({})", userId, username);
+
+            log.debug("登录事件批量发送成功: {}条", events.size());
         } catch (Exception e) {
-            log.warn("发送登录事件失败: {}", e.getMessage());
+            log.warn("批量发送登录事件失败: {}", e.getMessage());
         }
     }
 
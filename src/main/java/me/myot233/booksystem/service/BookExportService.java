@@ -0,0 +1,243 @@
+package me.myot233.booksystem.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.entity.Book;
+import me.myot233.booksystem.util.CsvUtil;
+import me.myot233.booksystem.util.ImportRecordReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 图书目录导出服务
+ * 用只进游标逐行读取books表，读一行写一行，内存占用与目录大小无关。
+ * MySQL驱动只有在fetchSize为Integer.MIN_VALUE时才按行流式返回结果，否则会把整个结果集读入内存。
+ * 导出期间一直占用一个数据库连接，读取慢的客户端会长时间持有连接，
+ * 因此导出在固定大小的专用线程池中执行，线程都在忙时直接拒绝新的导出
+ */
+@Slf4j
+@Service
+public class BookExportService {
+
+    private static final String SELECT_SQL = "SELECT id, isbn, title, author, category, publisher, stock, borrowed " +
+            "FROM books ORDER BY id";
+
+    // CSV表头，前几列与批量导入的字段一致，导出文件可以直接再导入
+    private static final String CSV_HEADER = CsvUtil.formatLine(
+            "isbn", "title", "author", "category", "publisher", "stock", "id", "borrowed", "available");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 同时进行的导出数上限（每个导出占用一个线程和一个数据库连接）
+    @Value("${export.max-concurrent:2}")
+    private int maxConcurrent;
+
+    // 单次导出的最长时间（毫秒），只作用于导出响应
+    @Value("${export.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    private ThreadPoolExecutor exportExecutor;
+
+    /**
+     * 创建导出线程池，不排队，线程都在忙时拒绝
+     */
+    @PostConstruct
+    public void start() {
+        AtomicInteger sequence = new AtomicInteger();
+        exportExecutor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread thread = new Thread(r, "book-export-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 中断进行中的导出
+     */
+    @PreDestroy
+    public void stop() {
+        exportExecutor.shutdownNow();
+    }
+
+    /**
+     * 在导出线程池中开始导出，结果通过响应发射器写出
+     * @param format 导出格式
+     * @param gzip 是否gzip压缩
+     * @return 响应发射器，同时进行的导出已达上限时为空
+     */
+    public Optional<ResponseBodyEmitter> startExport(ImportRecordReader.Format format, boolean gzip) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutMs);
+        try {
+            exportExecutor.execute(() -> runExport(emitter, format, gzip));
+        } catch (RejectedExecutionException e) {
+            return Optional.empty();
+        }
+        return Optional.of(emitter);
+    }
+
+    private void runExport(ResponseBodyEmitter emitter, ImportRecordReader.Format format, boolean gzip) {
+        try (OutputStream out = new EmitterOutputStream(emitter)) {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, 8192);
+                exportBooks(compressed, format);
+                compressed.finish();
+            } else {
+                exportBooks(out, format);
+            }
+        } catch (Exception e) {
+            // 客户端断开或超时，释放游标和连接
+            log.warn("图书目录导出中断: {}", e.getMessage());
+            emitter.completeWithError(e);
+            return;
+        }
+        emitter.complete();
+    }
+
+    /**
+     * 导出全部图书
+     * @param out 输出流，调用方负责关闭
+     * @param format 导出格式
+     * @return 导出的图书数量
+     * @throws IOException 写出失败（如客户端断开）
+     */
+    public long exportBooks(OutputStream out, ImportRecordReader.Format format) throws IOException {
+        long start = System.currentTimeMillis();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        ObjectWriter jsonWriter = objectMapper.writerFor(Book.class);
+        long[] count = new long[1];
+
+        if (format == ImportRecordReader.Format.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        try {
+            jdbcTemplate.query(con -> {
+                PreparedStatement statement = con.prepareStatement(SELECT_SQL,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(Integer.MIN_VALUE);
+                return statement;
+            }, rs -> {
+                Book book = mapRow(rs);
+                try {
+                    if (format == ImportRecordReader.Format.CSV) {
+                        writer.write(CsvUtil.formatLine(book.getIsbn(), book.getTitle(), book.getAuthor(),
+                                book.getCategory(), book.getPublisher(), book.getStock(), book.getId(),
+                                book.getBorrowed(), book.getAvailable()));
+                    } else {
+                        writer.write(jsonWriter.writeValueAsString(book));
+                    }
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+
+        log.info("图书目录导出完成: 格式{} 数量{} 耗时{}ms", format, count[0], System.currentTimeMillis() - start);
+        return count[0];
+    }
+
+    /**
+     * 把写出的字节攒成块后通过发射器发送，发送在写出到客户端之前阻塞，读取慢时导出随之放慢
+     */
+    private static final class EmitterOutputStream extends OutputStream {
+
+        private final ResponseBodyEmitter emitter;
+        private final byte[] buffer = new byte[32 * 1024];
+        private int count;
+
+        EmitterOutputStream(ResponseBodyEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            try {
+                // 发射器初始化前发送的数据会暂存，必须复制
+                emitter.send(Arrays.copyOf(buffer, count), MediaType.APPLICATION_OCTET_STREAM);
+            } catch (IllegalStateException e) {
+                // 响应已超时结束
+                throw new IOException(e.getMessage(), e);
+            }
+            count = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static Book mapRow(ResultSet rs) throws SQLException {
+        Book book = new Book();
+        book.setId(rs.getLong("id"));
+        book.setIsbn(rs.getString("isbn"));
+        book.setTitle(rs.getString("title"));
+        book.setAuthor(rs.getString("author"));
+        book.setCategory(rs.getString("category"));
+        book.setPublisher(rs.getString("publisher"));
+        book.setStock(rs.getObject("stock", Integer.class));
+        book.setBorrowed(rs.getObject("borrowed", Integer.class));
+        return book;
+    }
+}
@@ -0,0 +1,259 @@
+package me.myot233.booksystem.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.dto.BookImportReport;
+import me.myot233.booksystem.repository.BookRepository;
+import me.myot233.booksystem.util.ImportRecordReader;
+import me.myot233.booksystem.util.ImportRecordReader.ImportRecord;
+import me.myot233.booksystem.util.JdbcBatchUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 图书批量导入服务
+ * 逐行读取CSV或NDJSON，按ISBN分批写入：已存在的图书更新书目信息和库存，不存在的新增。
+ * 每批先用一次查询取出已有图书的库存，再用一条批量语句写入，写完后统一清除一次图书缓存和搜索缓存。
+ * 预查询与写入之间可能有新的借阅，库存不少于已借出数量的条件在写入语句中再判断一次，
+ * 不满足时整行保持不变，写入后回查所有写入的列找出这些行。
+ * 写入语句使用MySQL 8.0.19起支持的行别名（AS new）引用待写入的值，不再使用已弃用的VALUES()函数
+ */
+@Slf4j
+@Service
+public class BookImportService {
+
+    // 更新时按顺序赋值，stock必须最后赋值，前面的条件判断才能用到原库存
+    private static final String UPSERT_SQL = "INSERT INTO books (isbn, title, author, category, publisher, stock, borrowed) " +
+            "VALUES (?, ?, ?, ?, ?, ?, 0) AS new " +
+            "ON DUPLICATE KEY UPDATE " +
+            "title = IF(new.stock >= borrowed, new.title, title), " +
+            "author = IF(new.stock >= borrowed, new.author, author), " +
+            "category = IF(new.stock >= borrowed, COALESCE(new.category, category), category), " +
+            "publisher = IF(new.stock >= borrowed, COALESCE(new.publisher, publisher), publisher), " +
+            "stock = IF(new.stock >= borrowed, new.stock, stock)";
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private CategorySubscriptionService categorySubscriptionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 每批处理的行数
+    @Value("${import.batch-size:500}")
+    private int batchSize;
+
+    // 报告中最多列出的失败行数
+    @Value("${import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    /**
+     * 导入图书
+     * @param in 请求体
+     * @param format 导入格式
+     * @return 导入报告
+     * @throws IOException 读取请求体失败
+     */
+    public BookImportReport importBooks(InputStream in, ImportRecordReader.Format format) throws IOException {
+        long start = System.nanoTime();
+        BookImportReport report = new BookImportReport(maxReportedErrors);
+        // 本次导入中已出现的ISBN
+        Set<String> seen = new HashSet<>();
+        List<PendingBook> batch = new ArrayList<>(batchSize);
+
+        try (ImportRecordReader reader = new ImportRecordReader(in, format, objectMapper)) {
+            ImportRecord record;
+            while ((record = reader.next()) != null) {
+                report.setReceived(report.getReceived() + 1);
+                PendingBook book = validate(record, seen, report);
+                if (book == null) {
+                    continue;
+                }
+                batch.add(book);
+                if (batch.size() >= batchSize) {
+                    writeBatch(batch, report);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch, report);
+        }
+
+        report.finish(start);
+        log.info("图书批量导入完成: 读取{} 新增{} 更新{} 拒绝{} 耗时{}ms", report.getReceived(),
+                report.getInserted(), report.getUpdated(), report.getRejected(), report.getElapsedMs());
+        return report;
+    }
+
+    /**
+     * 校验一行记录
+     * @return 待导入图书，校验失败返回null
+     */
+    private PendingBook validate(ImportRecord record, Set<String> seen, BookImportReport report) {
+        if (record.error() != null) {
+            report.reject(record.line(), null, record.error());
+            return null;
+        }
+        String isbn = record.get("isbn");
+        if (isbn == null) {
+            report.reject(record.line(), null, "ISBN不能为空");
+            return null;
+        }
+        String title = record.get("title");
+        String author = record.get("author");
+        if (title == null || author == null) {
+            report.reject(record.line(), isbn, "书名和作者不能为空");
+            return null;
+        }
+        Integer stock = null;
+        String stockValue = record.get("stock");
+        if (stockValue != null) {
+            try {
+                stock = Integer.parseInt(stockValue);
+            } catch (NumberFormatException e) {
+                stock = -1;
+            }
+            if (stock < 0) {
+                report.reject(record.line(), isbn, "库存必须是非负整数");
+                return null;
+            }
+        }
+        if (!seen.add(isbn)) {
+            report.reject(record.line(), isbn, "ISBN在导入数据中重复");
+            return null;
+        }
+        return new PendingBook(record.line(), isbn, title, author, record.get("category"),
+                record.get("publisher"), stock);
+    }
+
+    /**
+     * 处理一批图书：查询已有库存、批量写入、清除一次缓存
+     */
+    private void writeBatch(List<PendingBook> batch, BookImportReport report) {
+        Map<String, Object[]> existing = new HashMap<>();
+        for (Object[] row : bookRepository.findStockByIsbnIn(batch.stream().map(PendingBook::isbn).toList())) {
+            existing.put((String) row[0], row);
+        }
+
+        List<PendingBook> rows = new ArrayList<>(batch.size());
+        List<Integer> stocks = new ArrayList<>(batch.size());
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (PendingBook book : batch) {
+            Object[] current = existing.get(book.isbn());
+            int stock;
+            if (current == null) {
+                stock = book.stock() != null ? book.stock() : 0;
+            } else {
+                int currentStock = current[2] != null ? (Integer) current[2] : 0;
+                int borrowed = current[3] != null ? (Integer) current[3] : 0;
+                stock = book.stock() != null ? book.stock() : currentStock;
+                if (stock < borrowed) {
+                    report.reject(book.line(), book.isbn(), "库存不能少于已借出数量" + borrowed);
+                    continue;
+                }
+            }
+            rows.add(book);
+            stocks.add(stock);
+            args.add(new Object[]{book.isbn(), book.title(), book.author(), book.category(), book.publisher(), stock});
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        Set<Integer> failed = new HashSet<>(JdbcBatchUtil.batchUpdate(jdbcTemplate, UPSERT_SQL, args));
+        Map<String, Object[]> written = readBackUpdated(rows, failed, existing);
+        List<Long> updatedIds = new ArrayList<>();
+        Set<String> categories = new HashSet<>();
+        for (int i = 0; i < rows.size(); i++) {
+            PendingBook book = rows.get(i);
+            Object[] current = existing.get(book.isbn());
+            if (failed.contains(i)) {
+                report.reject(book.line(), book.isbn(), "写入失败（数据无效）");
+                continue;
+            }
+            Object[] after = written.get(book.isbn());
+            if (after != null && !matches(book, stocks.get(i), after)) {
+                // 写入时已借出数量超过了新库存，整行未更新
+                report.reject(book.line(), book.isbn(), "库存不能少于已借出数量" + after[6]);
+                continue;
+            }
+            if (book.category() != null) {
+                categories.add(book.category());
+            }
+            if (current == null) {
+                report.setInserted(report.getInserted() + 1);
+            } else {
+                report.setUpdated(report.getUpdated() + 1);
+                updatedIds.add((Long) current[1]);
+            }
+        }
+        categories.forEach(categorySubscriptionService::registerBookCategory);
+        if (failed.size() < rows.size()) {
+            bookService.evictBookCaches(updatedIds);
+        }
+    }
+
+    /**
+     * 回查的行是否与写入的值一致，只比较库存会漏掉库存未变但整行未更新的情况
+     * @param book 待导入的图书
+     * @param stock 写入的库存
+     * @param after 回查的行[isbn, title, author, category, publisher, stock, borrowed]
+     * @return 是否一致
+     */
+    private static boolean matches(PendingBook book, int stock, Object[] after) {
+        return book.title().equals(after[1])
+                && book.author().equals(after[2])
+                // 分类和出版社为空时保留原值
+                && (book.category() == null || book.category().equals(after[3]))
+                && (book.publisher() == null || book.publisher().equals(after[4]))
+                && Integer.valueOf(stock).equals(after[5]);
+    }
+
+    /**
+     * 回查已写入的已有图书的各列
+     * @return ISBN -> [isbn, title, author, category, publisher, stock, borrowed]
+     */
+    private Map<String, Object[]> readBackUpdated(List<PendingBook> rows, Set<Integer> failed,
+                                                  Map<String, Object[]> existing) {
+        List<String> isbns = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (!failed.contains(i) && existing.containsKey(rows.get(i).isbn())) {
+                isbns.add(rows.get(i).isbn());
+            }
+        }
+        Map<String, Object[]> written = new HashMap<>();
+        if (!isbns.isEmpty()) {
+            for (Object[] row : bookRepository.findImportedColumnsByIsbnIn(isbns)) {
+                written.put((String) row[0], row);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 待导入的图书
+     */
+    private record PendingBook(long line, String isbn, String title, String author, String category,
+                               String publisher, Integer stock) {
+    }
+}
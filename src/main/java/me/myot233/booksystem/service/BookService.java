@@ -12,6 +12,7 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -34,6 +35,12 @@ public class BookService {
     @Autowired
     private StatisticsService statisticsService;
 
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private CategorySubscriptionService categorySubscriptionService;
+
     // Redis键前缀
     private static final String BOOK_CACHE_PREFIX = "book:";
     private static final String BOOK_LIST_CACHE_PREFIX = "book_list:";
@@ -115,6 +122,8 @@ public class BookService {
     @CacheEvict(value = {"books", "book_search"}, allEntries = true)
     public Book saveBook(Book book) {
         Book savedBook = bookRepository.save(book);
+        // 登记分类，用户才能订阅该分类的新书
+        categorySubscriptionService.registerBookCategory(savedBook.getCategory());
         // 清除相关缓存
         clearBookCaches();
         return savedBook;
@@ -133,6 +142,19 @@ public class BookService {
         redisUtil.del(BOOK_CACHE_PREFIX + id);
     }
 
+    /**
+     * 批量写入图书后清除缓存
+     * 批量导入每批只调用一次，而不是每本书清除一次
+     * @param ids 被更新的已有图书ID
+     */
+    @CacheEvict(value = {"books", "book_search"}, allEntries = true)
+    public void evictBookCaches(Collection<Long> ids) {
+        clearBookCaches();
+        if (!ids.isEmpty()) {
+            redisUtil.del(ids.stream().map(id -> BOOK_CACHE_PREFIX + id).toArray(String[]::new));
+        }
+    }
+
     /**
      * 借阅图书（带分布式锁和缓存更新）
      * @param id 图书ID
@@ -263,9 +285,8 @@ public class BookService {
      * @param userId 用户ID
      */
     public void addOnlineUser(Long userId) {
-        String onlineUsersKey = "online_users";
-        redisUtil.sSet(onlineUsersKey, userId.toString());
-        redisUtil.expire(onlineUsersKey, 1800); // 30分钟过期
+        // 在线状态按用户记录最后活跃时间，不再整体续期
+        presenceService.touch(userId.toString());
     }
 
     /**
@@ -273,7 +294,6 @@ public class BookService {
      * @param userId 用户ID
      */
     public void removeOnlineUser(Long userId) {
-        String onlineUsersKey = "online_users";
-        redisUtil.setRemove(onlineUsersKey, userId.toString());
+        presenceService.remove(userId.toString());
     }
 }
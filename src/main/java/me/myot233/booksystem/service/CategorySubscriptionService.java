@@ -0,0 +1,327 @@
+package me.myot233.booksystem.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.entity.Category;
+import me.myot233.booksystem.entity.UserCategoryPreference;
+import me.myot233.booksystem.repository.BookRepository;
+import me.myot233.booksystem.repository.CategoryRepository;
+import me.myot233.booksystem.repository.UserCategoryPreferenceRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 分类订阅服务
+ * 分类字典只登记图书（由管理员维护）使用的分类名称，每个分类获得紧凑编号，用户只能订阅已登记的分类；
+ * 每个用户的订阅保存为分类位图；
+ * 内存中另维护“分类 -> 用户ID位图”的倒排索引，新书到达时对相关分类的位图做按位或即可得到目标用户。
+ * 订阅变更通过Redis频道通知其它节点重新加载该用户
+ */
+@Slf4j
+@Service
+public class CategorySubscriptionService implements MessageListener {
+
+    // 订阅变更频道，消息内容为用户ID
+    private static final String CHANGED_CHANNEL = "category_prefs:changed";
+    // 位图列最多可保存的分类数（VARBINARY(512)）
+    private static final int MAX_CATEGORY_ID = 512 * 8 - 1;
+    // 单个用户最多订阅的分类数
+    public static final int MAX_SUBSCRIPTIONS = 100;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserCategoryPreferenceRepository preferenceRepository;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // 登记分类使用的独立事务
+    private TransactionTemplate requiresNew;
+
+    // 分类名称 -> 编号
+    private final Map<String, Integer> categoryIds = new ConcurrentHashMap<>();
+    // 编号 -> 分类名称
+    private final Map<Integer, String> categoryNames = new ConcurrentHashMap<>();
+
+    // 以下两个索引由读写锁保护
+    // 分类编号 -> 订阅用户ID位图
+    private final Map<Integer, BitSet> subscribers = new HashMap<>();
+    // 用户ID -> 订阅分类位图
+    private final Map<Long, BitSet> interests = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 订阅变更频道
+     */
+    @PostConstruct
+    public void init() {
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANGED_CHANNEL));
+    }
+
+    /**
+     * 启动时加载分类字典（补登记已有图书的分类）和所有用户的订阅
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        for (Category category : categoryRepository.findAll()) {
+            remember(category);
+        }
+        for (String name : bookRepository.findDistinctCategories()) {
+            registerBookCategory(name);
+        }
+        int users = 0;
+        Page<UserCategoryPreference> page;
+        int pageNumber = 0;
+        do {
+            page = preferenceRepository.findAll(PageRequest.of(pageNumber++, 1000, Sort.by("userId")));
+            for (UserCategoryPreference preference : page) {
+                apply(preference.getUserId(), BitSet.valueOf(preference.getInterests()));
+                users++;
+            }
+        } while (page.hasNext());
+        log.info("分类订阅索引加载完成: 分类{} 用户{}", categoryIds.size(), users);
+    }
+
+    /**
+     * 登记图书使用的分类，新增或导入图书时调用
+     * 登记失败（字典已满）只影响该分类的订阅，不影响图书写入
+     * @param name 分类名称，为空时忽略
+     */
+    public void registerBookCategory(String name) {
+        if (normalize(name).isEmpty()) {
+            return;
+        }
+        try {
+            intern(name);
+        } catch (IllegalArgumentException e) {
+            log.warn("登记图书分类失败: {} {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * 获取分类编号，不存在时登记到字典
+     * @param name 分类名称
+     * @return 分类编号
+     * @throws IllegalArgumentException 分类名称为空或字典已满
+     */
+    private int intern(String name) {
+        String normalized = normalize(name);
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("分类名称不能为空");
+        }
+        Integer id = categoryIds.get(normalized);
+        if (id != null) {
+            return id;
+        }
+        Category category = categoryRepository.findByName(normalized).orElseGet(() -> {
+            // 在独立事务中登记：调用方（如保存图书）的事务不会因唯一键冲突被标记为只回滚
+            try {
+                return requiresNew.execute(status -> categoryRepository.save(new Category(null, normalized)));
+            } catch (DataIntegrityViolationException e) {
+                // 其它请求或节点已登记，在新事务中查询才能读到刚提交的记录
+                return requiresNew.execute(status -> categoryRepository.findByName(normalized)).orElseThrow(() -> e);
+            }
+        });
+        if (category.getId() > MAX_CATEGORY_ID) {
+            throw new IllegalArgumentException("分类数量已达上限");
+        }
+        remember(category);
+        return category.getId();
+    }
+
+    /**
+     * 获取用户订阅的分类
+     * @param userId 用户ID
+     * @return 分类名称列表
+     */
+    public List<String> getSubscriptions(Long userId) {
+        BitSet bits;
+        lock.readLock().lock();
+        try {
+            BitSet current = interests.get(userId);
+            bits = current == null ? new BitSet() : (BitSet) current.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<String> names = new ArrayList<>(bits.cardinality());
+        bits.stream().forEach(id -> {
+            String name = categoryNames.get(id);
+            if (name != null) {
+                names.add(name);
+            }
+        });
+        return names;
+    }
+
+    /**
+     * 更新用户订阅的分类（覆盖原有订阅）
+     * @param userId 用户ID
+     * @param names 分类名称
+     * @return 更新后的分类名称列表
+     * @throws IllegalArgumentException 分类数量超限或分类不存在
+     */
+    public List<String> updateSubscriptions(Long userId, Collection<String> names) {
+        if (names.size() > MAX_SUBSCRIPTIONS) {
+            throw new IllegalArgumentException("最多订阅" + MAX_SUBSCRIPTIONS + "个分类");
+        }
+        BitSet bits = new BitSet();
+        for (String name : names) {
+            bits.set(resolve(name));
+        }
+        if (bits.isEmpty()) {
+            preferenceRepository.deleteById(userId);
+        } else {
+            preferenceRepository.save(new UserCategoryPreference(userId, bits.toByteArray(), new Date()));
+        }
+        apply(userId, bits);
+        try {
+            stringRedisTemplate.convertAndSend(CHANGED_CHANNEL, userId.toString());
+        } catch (Exception e) {
+            log.warn("发布分类订阅变更失败: {}", e.getMessage());
+        }
+        return getSubscriptions(userId);
+    }
+
+    /**
+     * 查找订阅了指定分类的用户
+     * @param category 分类名称
+     * @return 用户ID位图（副本）
+     */
+    public BitSet findSubscribers(String category) {
+        Integer id = category == null ? null : categoryIds.get(normalize(category));
+        if (id == null) {
+            return new BitSet();
+        }
+        lock.readLock().lock();
+        try {
+            BitSet users = subscribers.get(id);
+            return users == null ? new BitSet() : (BitSet) users.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 其它节点变更了用户订阅，从数据库重新加载
+     * @param message 消息（用户ID）
+     * @param pattern 订阅模式
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            Long userId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+            BitSet bits = preferenceRepository.findById(userId)
+                    .map(preference -> BitSet.valueOf(preference.getInterests()))
+                    .orElseGet(BitSet::new);
+            // 新登记的分类可能尚未在本节点字典中
+            bits.stream().filter(id -> !categoryNames.containsKey(id)).forEach(id ->
+                    categoryRepository.findById(id).ifPresent(this::remember));
+            apply(userId, bits);
+        } catch (Exception e) {
+            log.warn("处理分类订阅变更失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 用新的订阅位图替换用户原有订阅，只修改有变化的分类
+     */
+    private void apply(Long userId, BitSet bits) {
+        if (userId > Integer.MAX_VALUE) {
+            log.warn("用户ID超出位图范围，忽略分类订阅: {}", userId);
+            return;
+        }
+        int userBit = userId.intValue();
+        lock.writeLock().lock();
+        try {
+            BitSet previous = bits.isEmpty() ? interests.remove(userId) : interests.put(userId, bits);
+            if (previous != null) {
+                BitSet removed = (BitSet) previous.clone();
+                removed.andNot(bits);
+                removed.stream().forEach(id -> {
+                    BitSet users = subscribers.get(id);
+                    if (users != null) {
+                        users.clear(userBit);
+                    }
+                });
+            }
+            BitSet added = (BitSet) bits.clone();
+            if (previous != null) {
+                added.andNot(previous);
+            }
+            added.stream().forEach(id -> subscribers.computeIfAbsent(id, key -> new BitSet()).set(userBit));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查找已登记的分类编号，用户输入不会登记新分类
+     * 本节点字典中没有时查询数据库（可能刚由其它节点登记）
+     * @param name 分类名称
+     * @return 分类编号
+     * @throws IllegalArgumentException 分类不存在
+     */
+    private int resolve(String name) {
+        String normalized = normalize(name);
+        Integer id = categoryIds.get(normalized);
+        if (id != null) {
+            return id;
+        }
+        Category category = normalized.isEmpty() ? null : categoryRepository.findByName(normalized)
+                .filter(found -> found.getId() <= MAX_CATEGORY_ID)
+                .orElse(null);
+        if (category == null) {
+            throw new IllegalArgumentException("分类不存在: " + normalized);
+        }
+        remember(category);
+        return category.getId();
+    }
+
+    private void remember(Category category) {
+        categoryIds.put(category.getName(), category.getId());
+        categoryNames.put(category.getId(), category.getName());
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.trim();
+    }
+}
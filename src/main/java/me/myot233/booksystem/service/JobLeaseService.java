@@ -0,0 +1,448 @@
+package me.myot233.booksystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.repository.JobFenceRepository;
+import me.myot233.booksystem.util.NodeIdentity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 集群任务租约服务
+ * 多节点部署时每个定时任务通过Redis租约保证同一时刻只在一个节点上运行。
+ * 每次获取租约都会分配递增的防护令牌（fencing token），租约值为“节点ID:令牌”，
+ * 续期和释放只在值仍匹配时生效，被其他节点接管的旧租约续期失败后即失效。
+ * 续期失败之前旧持有者可能仍在运行（如长时间GC停顿），因此任务的写入要经过令牌校验：
+ * 数据库写入在同一事务中先推进job_fences表中的令牌，Redis写入在脚本中比较最新签发的令牌，
+ * 令牌更小的写入被拒绝。
+ */
+@Slf4j
+@Service
+public class JobLeaseService {
+
+    // Redis键前缀：租约 string(nodeId:token)
+    private static final String LEASE_PREFIX = "job_lease:";
+    // Redis键前缀：防护令牌计数器
+    private static final String FENCE_PREFIX = "job_lease_fence:";
+
+    /**
+     * 租约不存在时占用并分配新的防护令牌，返回令牌；已被占用返回0
+     */
+    private static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+            "local token = redis.call('INCR', KEYS[2]) " +
+            "redis.call('SET', KEYS[1], ARGV[1] .. ':' .. token, 'PX', ARGV[2]) " +
+            "return token", Long.class);
+
+    /**
+     * 租约仍属于自己时续期
+     */
+    private static final RedisScript<Long> RENEW = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "end " +
+            "return 0", Long.class);
+
+    /**
+     * 租约仍属于自己时释放；ARGV[2]大于0时保留到最短持有时间，避免时钟略有偏差的节点在同一周期重复执行
+     */
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  if tonumber(ARGV[2]) > 0 then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+            "  return redis.call('DEL', KEYS[1]) " +
+            "end " +
+            "return 0", Long.class);
+
+    /**
+     * 令牌仍是最新签发的令牌时写入哈希表字段，ARGV[2]起为字段、值交替
+     */
+    private static final RedisScript<Long> FENCED_HSET = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+            "for i = 2, #ARGV, 2 do redis.call('HSET', KEYS[2], ARGV[i], ARGV[i + 1]) end " +
+            "return 1", Long.class);
+
+    /**
+     * 令牌仍是最新签发的令牌时更新有序集合：ARGV[2]为删除的成员数，随后是删除的成员，再往后为分数、成员交替
+     */
+    private static final RedisScript<Long> FENCED_ZSET = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+            "local n = tonumber(ARGV[2]) " +
+            "for i = 3, 2 + n do redis.call('ZREM', KEYS[2], ARGV[i]) end " +
+            "for i = 3 + n, #ARGV, 2 do redis.call('ZADD', KEYS[2], ARGV[i], ARGV[i + 1]) end " +
+            "return 1", Long.class);
+
+    // 每次脚本调用写入的最多字段（成员）数
+    private static final int FENCED_HSET_CHUNK = 1000;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private JobFenceRepository jobFenceRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private NodeIdentity nodeIdentity;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 是否启用租约，单节点部署可关闭
+    @Value("${cluster.job-lease.enabled:true}")
+    private boolean enabled;
+
+    // 租约有效期（毫秒）
+    @Value("${cluster.job-lease.ttl-ms:60000}")
+    private long ttlMs;
+
+    // 续期间隔（毫秒）
+    @Value("${cluster.job-lease.renew-interval-ms:20000}")
+    private long renewIntervalMs;
+
+    // 任务结束后租约的最短持有时间（毫秒）
+    @Value("${cluster.job-lease.min-hold-ms:10000}")
+    private long minHoldMs;
+
+    // 当前节点持有的租约，由续期线程定期续期
+    private final Set<JobLease> activeLeases = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService renewer;
+
+    /**
+     * 启动续期线程
+     */
+    @PostConstruct
+    public void start() {
+        renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "job-lease-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renewer.scheduleWithFixedDelay(this::renewAll, renewIntervalMs, renewIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止续期并释放持有的租约
+     */
+    @PreDestroy
+    public void stop() {
+        renewer.shutdown();
+        for (JobLease lease : activeLeases) {
+            release(lease, 0);
+        }
+    }
+
+    /**
+     * 获得租约后执行任务，租约被其他节点持有时跳过
+     * @param jobName 任务名称
+     * @param task 任务，可通过租约判断是否仍然有效
+     * @return 是否在本节点执行
+     */
+    public boolean runExclusive(String jobName, Consumer<JobLease> task) {
+        JobLease lease = tryAcquire(jobName);
+        if (lease == null) {
+            Counter.builder("scheduled.job.skipped")
+                    .tag("job", jobName)
+                    .register(meterRegistry)
+                    .increment();
+            return false;
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            task.accept(lease);
+            if (!lease.isValid()) {
+                outcome = "lease_lost";
+            }
+        } catch (RuntimeException e) {
+            outcome = "failure";
+            log.error("定时任务{}执行失败: {}", jobName, e.getMessage(), e);
+        } finally {
+            long elapsed = sample.stop(Timer.builder("scheduled.job.duration")
+                    .tag("job", jobName)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+            release(lease, Math.max(0, minHoldMs - TimeUnit.NANOSECONDS.toMillis(elapsed)));
+        }
+        return true;
+    }
+
+    /**
+     * 尝试获取租约，获取后由续期线程持续续期直到释放
+     * @param jobName 任务名称
+     * @return 租约，已被其他节点持有时返回null
+     */
+    public JobLease tryAcquire(String jobName) {
+        String owner = nodeIdentity.getNodeId();
+        if (!enabled) {
+            return new JobLease(jobName, owner, 0);
+        }
+        try {
+            Long token = stringRedisTemplate.execute(ACQUIRE,
+                    List.of(LEASE_PREFIX + jobName, FENCE_PREFIX + jobName),
+                    owner, Long.toString(ttlMs));
+            if (token == null || token == 0) {
+                return null;
+            }
+            JobLease lease = new JobLease(jobName, owner, token);
+            activeLeases.add(lease);
+            log.debug("获得任务{}的租约, 令牌{}", jobName, token);
+            return lease;
+        } catch (Exception e) {
+            // Redis不可用时无法确认其他节点状态，本轮跳过
+            log.warn("获取任务{}的租约失败: {}", jobName, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 在事务中校验令牌后执行数据库写入
+     * 令牌记录行在事务结束前保持锁定，新旧持有者的写入按令牌顺序串行执行
+     * @param lease 租约
+     * @param write 写入操作，与令牌校验在同一事务中执行
+     * @return 是否已写入，false表示已有令牌更大的租约写入过，本租约随即失效
+     */
+    public boolean runFenced(JobLease lease, Runnable write) {
+        if (lease.fencingToken == 0) {
+            // 未启用租约
+            transactionTemplate.executeWithoutResult(status -> write.run());
+            return true;
+        }
+        Boolean applied = transactionTemplate.execute(status -> {
+            jobFenceRepository.insertIfAbsent(lease.jobName);
+            if (jobFenceRepository.advance(lease.jobName, lease.fencingToken) == 0) {
+                return false;
+            }
+            write.run();
+            return true;
+        });
+        if (!Boolean.TRUE.equals(applied)) {
+            log.warn("任务{}的写入被拒绝，令牌{}已过期", lease.jobName, lease.fencingToken);
+            markLost(lease);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 校验令牌后写入Redis哈希表的多个字段
+     * @param lease 租约
+     * @param key 哈希表键
+     * @param values 字段 -> 值
+     * @return 是否已写入，false表示已有更新的租约，本租约随即失效
+     */
+    public boolean fencedHashPut(JobLease lease, String key, Map<String, String> values) {
+        if (lease.fencingToken == 0) {
+            stringRedisTemplate.opsForHash().putAll(key, values);
+            return true;
+        }
+        List<String> args = new ArrayList<>();
+        args.add(Long.toString(lease.fencingToken));
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            args.add(entry.getKey());
+            args.add(entry.getValue());
+            if (args.size() > FENCED_HSET_CHUNK * 2) {
+                if (!fencedHashPutChunk(lease, key, args)) {
+                    return false;
+                }
+                args.subList(1, args.size()).clear();
+            }
+        }
+        return args.size() == 1 || fencedHashPutChunk(lease, key, args);
+    }
+
+    private boolean fencedHashPutChunk(JobLease lease, String key, List<String> args) {
+        Long applied = stringRedisTemplate.execute(FENCED_HSET, List.of(FENCE_PREFIX + lease.jobName, key),
+                args.toArray());
+        return checkApplied(lease, applied);
+    }
+
+    /**
+     * 校验令牌后从Redis有序集合中删除、添加成员，不涉及的成员保持不变
+     * @param lease 租约
+     * @param key 有序集合键
+     * @param removed 删除的成员
+     * @param added 添加的成员 -> 分数
+     * @return 是否已写入，false表示已有更新的租约，本租约随即失效
+     */
+    public boolean fencedZSetUpdate(JobLease lease, String key, Collection<String> removed, Map<String, Double> added) {
+        if (lease.fencingToken == 0) {
+            if (!removed.isEmpty()) {
+                stringRedisTemplate.opsForZSet().remove(key, removed.toArray());
+            }
+            for (Map.Entry<String, Double> entry : added.entrySet()) {
+                stringRedisTemplate.opsForZSet().add(key, entry.getKey(), entry.getValue());
+            }
+            return true;
+        }
+        List<String> members = new ArrayList<>(removed);
+        for (int from = 0; from < members.size(); from += FENCED_HSET_CHUNK) {
+            List<String> chunk = members.subList(from, Math.min(members.size(), from + FENCED_HSET_CHUNK));
+            List<String> args = new ArrayList<>(chunk.size() + 2);
+            args.add(Long.toString(lease.fencingToken));
+            args.add(Integer.toString(chunk.size()));
+            args.addAll(chunk);
+            if (!fencedZSetChunk(lease, key, args)) {
+                return false;
+            }
+        }
+        List<String> args = new ArrayList<>();
+        args.add(Long.toString(lease.fencingToken));
+        args.add("0");
+        for (Map.Entry<String, Double> entry : added.entrySet()) {
+            args.add(Double.toString(entry.getValue()));
+            args.add(entry.getKey());
+            if (args.size() >= FENCED_HSET_CHUNK * 2 + 2) {
+                if (!fencedZSetChunk(lease, key, args)) {
+                    return false;
+                }
+                args.subList(2, args.size()).clear();
+            }
+        }
+        return args.size() == 2 || fencedZSetChunk(lease, key, args);
+    }
+
+    private boolean fencedZSetChunk(JobLease lease, String key, List<String> args) {
+        Long applied = stringRedisTemplate.execute(FENCED_ZSET, List.of(FENCE_PREFIX + lease.jobName, key),
+                args.toArray());
+        return checkApplied(lease, applied);
+    }
+
+    private boolean checkApplied(JobLease lease, Long applied) {
+        if (applied != null && applied == 1) {
+            return true;
+        }
+        log.warn("任务{}的写入被拒绝，令牌{}已过期", lease.jobName, lease.fencingToken);
+        markLost(lease);
+        return false;
+    }
+
+    /**
+     * 立即释放租约
+     * @param lease 租约
+     */
+    public void release(JobLease lease) {
+        release(lease, 0);
+    }
+
+    /**
+     * 释放租约
+     * @param lease 租约
+     * @param holdMs 保留时间（毫秒），0表示立即删除
+     */
+    private void release(JobLease lease, long holdMs) {
+        if (lease.released) {
+            return;
+        }
+        lease.released = true;
+        if (!activeLeases.remove(lease)) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE, List.of(LEASE_PREFIX + lease.jobName),
+                    lease.value(), Long.toString(holdMs));
+        } catch (Exception e) {
+            log.warn("释放任务{}的租约失败: {}", lease.jobName, e.getMessage());
+        }
+    }
+
+    /**
+     * 续期所有持有的租约，续期失败的租约标记为失效
+     */
+    private void renewAll() {
+        for (JobLease lease : activeLeases) {
+            try {
+                Long renewed = stringRedisTemplate.execute(RENEW, List.of(LEASE_PREFIX + lease.jobName),
+                        lease.value(), Long.toString(ttlMs));
+                if (renewed == null || renewed == 0) {
+                    markLost(lease);
+                    continue;
+                }
+            } catch (Exception e) {
+                log.warn("续期任务{}的租约失败: {}", lease.jobName, e.getMessage());
+                // 超过有效期仍未续期成功，其他节点可能已经接管
+                if (System.currentTimeMillis() - lease.renewedAt >= ttlMs) {
+                    markLost(lease);
+                }
+                continue;
+            }
+            lease.renewedAt = System.currentTimeMillis();
+        }
+    }
+
+    private void markLost(JobLease lease) {
+        lease.lost = true;
+        if (activeLeases.remove(lease)) {
+            Counter.builder("scheduled.job.lease.lost")
+                    .tag("job", lease.jobName)
+                    .register(meterRegistry)
+                    .increment();
+            log.warn("任务{}的租约已失效, 令牌{}", lease.jobName, lease.fencingToken);
+        }
+    }
+
+    /**
+     * 任务租约
+     */
+    public static final class JobLease {
+        private final String jobName;
+        private final String owner;
+        private final long fencingToken;
+        private volatile long renewedAt = System.currentTimeMillis();
+        private volatile boolean lost;
+        private volatile boolean released;
+
+        private JobLease(String jobName, String owner, long fencingToken) {
+            this.jobName = jobName;
+            this.owner = owner;
+            this.fencingToken = fencingToken;
+        }
+
+        /**
+         * 租约是否仍然有效，长时间运行的任务应在每批处理之间检查
+         * @return 是否有效
+         */
+        public boolean isValid() {
+            return !lost && !released;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        /**
+         * 防护令牌，每次获取租约单调递增
+         * @return 令牌
+         */
+        public long getFencingToken() {
+            return fencingToken;
+        }
+
+        private String value() {
+            return owner + ":" + fencingToken;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package me.myot233.booksystem.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.dto.LoanDueView;
+import me.myot233.booksystem.entity.BorrowRecord;
+import me.myot233.booksystem.event.LoanClosedEvent;
+import me.myot233.booksystem.event.LoanOpenedEvent;
+import me.myot233.booksystem.repository.BorrowRecordRepository;
+import me.myot233.booksystem.service.JobLeaseService.JobLease;
+import me.myot233.booksystem.util.HierarchicalTimingWheel;
+import me.myot233.booksystem.util.HierarchicalTimingWheel.Timeout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 借阅提醒调度器
+ * 启动时从未归还的借阅记录重建分层时间轮，每笔借阅只保留下一个待触发的提醒：
+ * 到期前提醒触发后改挂到期时间的逾期提醒，逾期提醒触发后按间隔重新挂上。
+ * 借阅和归还通过事件添加、取消定时器，到期的提醒按速率限制分批发送。
+ * 多节点部署时只有持有租约的节点运行时间轮：获得租约时扫描全部未归还借阅，
+ * 之后其他节点创建的借阅按借阅时间增量扫描补上（回看一段时间，覆盖晚提交的事务和节点间的时钟偏差；
+ * 自增ID的提交顺序与分配顺序不一致，只扫描新ID会漏掉晚提交的借阅），
+ * 其他节点的归还在发送前按数据库状态过滤。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "library.reminder.engine", havingValue = "wheel", matchIfMissing = true)
+public class LoanReminderScheduler {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    // 每层槽数的位数与层数，1秒刻度下可覆盖约136年
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_LEVELS = 4;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private BorrowRecordRepository borrowRecordRepository;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    // 到期前多少天开始提醒
+    @Value("${library.reminder.days-before-due:3}")
+    private int daysBeforeDue;
+
+    // 同一笔逾期借阅两次提醒之间的最小间隔（小时）
+    @Value("${library.reminder.overdue-interval-hours:24}")
+    private int overdueIntervalHours;
+
+    // 重建时每页读取的借阅记录数
+    @Value("${library.reminder.page-size:500}")
+    private int pageSize;
+
+    // 时间轮刻度（毫秒）
+    @Value("${library.reminder.tick-ms:1000}")
+    private long tickMs;
+
+    // 每秒最多发送的提醒数
+    @Value("${library.reminder.dispatch-rate:200}")
+    private int dispatchRate;
+
+    // 增量扫描新借阅的间隔（毫秒）
+    @Value("${library.reminder.resync-interval-ms:300000}")
+    private long resyncIntervalMs;
+
+    // 增量扫描的回看时间（毫秒），需大于借阅事务的最长提交耗时与节点间的时钟偏差
+    @Value("${library.reminder.resync-lookback-ms:60000}")
+    private long resyncLookbackMs;
+
+    // 发送失败后首次重试的延迟（毫秒），之后每次翻倍，不超过逾期提醒间隔
+    @Value("${library.reminder.retry-delay-ms:60000}")
+    private long retryDelayMs;
+
+    // 每笔借阅当前挂在时间轮上的定时器
+    private final Map<Long, Timeout<LoanTimer>> timers = new ConcurrentHashMap<>();
+
+    // 已到期、等待发送的提醒
+    private final Queue<Timeout<LoanTimer>> ready = new ConcurrentLinkedQueue<>();
+
+    // 只在持有租约时存在
+    private volatile HierarchicalTimingWheel<LoanTimer> wheel;
+
+    // 以下字段只由推进线程访问
+    private JobLease lease;
+    private long lastResyncTime;
+
+    private ScheduledExecutorService ticker;
+
+    /**
+     * 应用启动后开始推进，获得租约时重建时间轮
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "loan-reminder-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止推进
+     */
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdown();
+        }
+        if (lease != null) {
+            jobLeaseService.release(lease);
+        }
+    }
+
+    /**
+     * 新借阅：挂上到期前提醒
+     * @param event 借阅创建事件
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanOpened(LoanOpenedEvent event) {
+        long dueTime = event.dueTime().getTime();
+        schedule(new LoanTimer(event.recordId(), dueTime, ReminderKind.DUE_SOON, 0), dueTime - daysBeforeDue * DAY_MILLIS);
+    }
+
+    /**
+     * 归还：取消该借阅的待触发提醒
+     * @param event 借阅归还事件
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanClosed(LoanClosedEvent event) {
+        Timeout<LoanTimer> timeout = timers.remove(event.recordId());
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * 当前挂在时间轮上的提醒数量
+     * @return 提醒数量
+     */
+    public int getPendingCount() {
+        return wheel != null ? wheel.size() : 0;
+    }
+
+    /**
+     * 确认本节点仍持有租约，刚获得租约时重建时间轮
+     * @return 是否持有租约
+     */
+    private boolean ensureLeader() {
+        if (lease != null && lease.isValid()) {
+            return true;
+        }
+        if (lease != null) {
+            // 租约已被其他节点接管
+            log.warn("借阅提醒时间轮租约失效，停止本节点的提醒");
+            lease = null;
+            wheel = null;
+            timers.clear();
+            ready.clear();
+        }
+        lease = jobLeaseService.tryAcquire("loan-reminder-wheel");
+        if (lease == null) {
+            return false;
+        }
+        long scanStart = System.currentTimeMillis();
+        wheel = new HierarchicalTimingWheel<>(tickMs, WHEEL_BITS, WHEEL_LEVELS, scanStart);
+        int count = scanOpenLoans(null);
+        lastResyncTime = scanStart;
+        log.info("借阅提醒时间轮重建完成，共{}笔未归还借阅, 令牌{}", count, lease.getFencingToken());
+        return true;
+    }
+
+    /**
+     * 按ID分页扫描未归还借阅，为还没有定时器的借阅挂上定时器
+     * 已进入到期提醒窗口的借阅不再补发到期前提醒，避免每次重启重复发送
+     * @param since 只扫描该时间之后借出的借阅，为空时扫描全部
+     * @return 新挂上的借阅数量
+     */
+    private int scanOpenLoans(Date since) {
+        long now = System.currentTimeMillis();
+        long overdueIntervalMs = TimeUnit.HOURS.toMillis(overdueIntervalHours);
+        int count = 0;
+        long lastSeenId = 0L;
+        List<BorrowRecord> page;
+        do {
+            page = since == null
+                    ? borrowRecordRepository.findByReturnTimeIsNullAndIdGreaterThanOrderByIdAsc(lastSeenId,
+                            PageRequest.of(0, pageSize))
+                    : borrowRecordRepository.findByBorrowTimeGreaterThanEqualAndReturnTimeIsNullAndIdGreaterThanOrderByIdAsc(
+                            since, lastSeenId, PageRequest.of(0, pageSize));
+            for (BorrowRecord record : page) {
+                if (timers.containsKey(record.getId())) {
+                    continue;
+                }
+                long dueTime = record.getDueTime().getTime();
+                long dueSoonAt = dueTime - daysBeforeDue * DAY_MILLIS;
+                if (record.getLastReminderTime() == null && now < dueSoonAt) {
+                    schedule(new LoanTimer(record.getId(), dueTime, ReminderKind.DUE_SOON, 0), dueSoonAt);
+                } else if (now < dueTime) {
+                    schedule(new LoanTimer(record.getId(), dueTime, ReminderKind.OVERDUE, 0), dueTime);
+                } else {
+                    long nextAt = record.getLastReminderTime() == null
+                            ? now : record.getLastReminderTime().getTime() + overdueIntervalMs;
+                    schedule(new LoanTimer(record.getId(), dueTime, ReminderKind.OVERDUE, 0), nextAt);
+                }
+                count++;
+            }
+            if (!page.isEmpty()) {
+                lastSeenId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == pageSize && lease.isValid());
+        return count;
+    }
+
+    /**
+     * 挂上定时器，替换该借阅原有的定时器
+     */
+    private void schedule(LoanTimer timer, long deadlineMs) {
+        HierarchicalTimingWheel<LoanTimer> current = wheel;
+        if (current == null) {
+            // 本节点未持有租约，由持有租约的节点扫描补上
+            return;
+        }
+        Timeout<LoanTimer> previous = timers.put(timer.recordId(), current.schedule(deadlineMs, timer));
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * 推进时间轮，并按速率限制发送到期的提醒
+     */
+    void tick() {
+        try {
+            if (!ensureLeader()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastResyncTime >= resyncIntervalMs) {
+                // 只补上次扫描以来其他节点创建的借阅，全量扫描只在获得租约时进行
+                scanOpenLoans(new Date(lastResyncTime - resyncLookbackMs));
+                lastResyncTime = now;
+            }
+            wheel.advance(now, ready::add);
+            dispatch(Math.max(1, (int) (dispatchRate * tickMs / 1000)));
+        } catch (Exception e) {
+            log.error("借阅提醒调度失败", e);
+        }
+    }
+
+    /**
+     * 发送一批到期的提醒，超出本轮额度的留到下一刻度
+     * @param budget 本轮最多发送的数量
+     */
+    private void dispatch(int budget) {
+        Map<Long, LoanTimer> batch = new HashMap<>();
+        Timeout<LoanTimer> timeout;
+        while (batch.size() < budget && (timeout = ready.poll()) != null) {
+            LoanTimer timer = timeout.getPayload();
+            // 已归还或已被新的定时器替换时跳过
+            if (timers.remove(timer.recordId(), timeout)) {
+                batch.put(timer.recordId(), timer);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<LoanDueView> loans;
+        try {
+            loans = borrowRecordRepository.findOpenViewsByIds(batch.keySet());
+        } catch (Exception e) {
+            // 定时器已从timers中摘下，必须重新挂上，否则这些借阅不会再收到提醒
+            log.warn("查询待提醒借阅失败，{}笔提醒稍后重试: {}", batch.size(), e.getMessage());
+            batch.values().forEach(timer -> retry(timer, now));
+            return;
+        }
+        List<Long> reminded = new ArrayList<>();
+        for (LoanDueView loan : loans) {
+            LoanTimer timer = batch.get(loan.getRecordId());
+            boolean sent;
+            try {
+                if (timer.kind() == ReminderKind.DUE_SOON) {
+                    int daysLeft = (int) Math.max(1, Math.ceilDiv(timer.dueTime() - now, DAY_MILLIS));
+                    sent = notificationService.sendReturnReminder(loan.getUserId(), loan.getBookTitle(), loan.getBookId(), daysLeft);
+                } else {
+                    int overdueDays = (int) Math.max(1, Math.ceilDiv(now - timer.dueTime(), DAY_MILLIS));
+                    sent = notificationService.sendOverdueReminder(loan.getUserId(), loan.getBookTitle(), loan.getBookId(), overdueDays);
+                }
+            } catch (Exception e) {
+                log.warn("发送借阅{}的提醒失败: {}", timer.recordId(), e.getMessage());
+                sent = false;
+            }
+            if (!sent) {
+                // 发送成功之前不挂下一个提醒，按退避重试同一个提醒
+                retry(timer, now);
+                continue;
+            }
+            if (timer.kind() == ReminderKind.DUE_SOON) {
+                schedule(new LoanTimer(timer.recordId(), timer.dueTime(), ReminderKind.OVERDUE, 0), timer.dueTime());
+            } else {
+                reminded.add(timer.recordId());
+                schedule(new LoanTimer(timer.recordId(), timer.dueTime(), ReminderKind.OVERDUE, 0),
+                        now + TimeUnit.HOURS.toMillis(overdueIntervalHours));
+            }
+        }
+        if (!reminded.isEmpty()) {
+            // 租约被接管后旧节点的写入会被拒绝，下一刻度发现租约失效后停止本节点的时间轮
+            jobLeaseService.runFenced(lease, () -> borrowRecordRepository.markReminded(reminded, new Date(now)));
+        }
+    }
+
+    /**
+     * 发送失败后按指数退避重新挂上同一个提醒
+     * 同一借阅已被新的定时器替换（如归还后又被扫描到）时不再重试
+     * @param timer 发送失败的提醒
+     * @param now 当前时间
+     */
+    private void retry(LoanTimer timer, long now) {
+        if (timers.containsKey(timer.recordId())) {
+            return;
+        }
+        long maxDelayMs = TimeUnit.HOURS.toMillis(overdueIntervalHours);
+        long delayMs = Math.min(maxDelayMs, retryDelayMs << Math.min(timer.attempts(), 20));
+        schedule(new LoanTimer(timer.recordId(), timer.dueTime(), timer.kind(), timer.attempts() + 1), now + delayMs);
+    }
+
+    /**
+     * 提醒类型
+     */
+    private enum ReminderKind {
+        DUE_SOON,
+        OVERDUE
+    }
+
+    /**
+     * 时间轮上的借阅提醒
+     * @param attempts 连续发送失败的次数
+     */
+    private record LoanTimer(Long recordId, long dueTime, ReminderKind kind, int attempts) {
+    }
+}
@@ -0,0 +1,160 @@
+package me.myot233.booksystem.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 登录记录缓冲
+ * 登录成功时只在内存中记下用户的最后登录时间（同一用户多次登录只保留最新一次）和登录事件（每次登录一条）；
+ * 后台线程定期把最后登录时间批量写入数据库，并把登录事件一次性发送到分析服务，
+ * 登录请求不再等待数据库写入和分析服务调用。写库失败的记录放回缓冲重试，登录事件只发送一次。
+ * 应用关闭时写出剩余记录
+ */
+@Slf4j
+@Service
+public class LoginBookkeepingBuffer {
+
+    private static final String UPDATE_SQL =
+            "UPDATE users SET last_login_time = ? WHERE id = ? AND (last_login_time IS NULL OR last_login_time < ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AnalyticsService analyticsService;
+
+    // 写入间隔（毫秒）
+    @Value("${login.bookkeeping.flush-interval-ms:5000}")
+    private long flushIntervalMs;
+
+    // 每批写入的最大记录数
+    @Value("${login.bookkeeping.batch-size:500}")
+    private int batchSize;
+
+    // 用户ID -> 最近一次登录
+    private final Map<Long, Login> pending = new ConcurrentHashMap<>();
+
+    // 尚未发送的登录事件，不按用户合并
+    private final Queue<Map<String, Object>> events = new ConcurrentLinkedQueue<>();
+
+    private ScheduledExecutorService flusher;
+
+    /**
+     * 启动写入线程
+     */
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "login-bookkeeping");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止写入线程并写出剩余记录
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+        flushQuietly();
+    }
+
+    /**
+     * 记录一次登录
+     * @param userId 用户ID
+     * @param username 用户名
+     */
+    public void record(Long userId, String username) {
+        long now = System.currentTimeMillis();
+        pending.merge(userId, new Login(now),
+                (current, login) -> current.time() >= login.time() ? current : login);
+        events.add(Map.of("userId", userId, "username", username, "timestamp", now));
+    }
+
+    /**
+     * 写出缓冲的登录记录
+     * @return 写出的记录数
+     */
+    public synchronized int flush() {
+        sendEvents();
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        List<Map.Entry<Long, Login>> drained = new ArrayList<>(pending.size());
+        Iterator<Map.Entry<Long, Login>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Login> entry = iterator.next();
+            drained.add(Map.entry(entry.getKey(), entry.getValue()));
+            iterator.remove();
+        }
+
+        int written = 0;
+        for (int from = 0; from < drained.size(); from += batchSize) {
+            List<Map.Entry<Long, Login>> batch = drained.subList(from, Math.min(drained.size(), from + batchSize));
+            try {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batch.size(), (ps, entry) -> {
+                    Timestamp time = new Timestamp(entry.getValue().time());
+                    ps.setTimestamp(1, time);
+                    ps.setLong(2, entry.getKey());
+                    ps.setTimestamp(3, time);
+                });
+                written += batch.size();
+            } catch (Exception e) {
+                log.warn("写入最后登录时间失败，下次重试: {}", e.getMessage());
+                // 放回缓冲，期间又有新登录的保留较新的记录
+                batch.forEach(entry -> pending.merge(entry.getKey(), entry.getValue(),
+                        (current, failed) -> current.time() >= failed.time() ? current : failed));
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 发送缓冲的登录事件，取出后不再放回，每个事件只发送一次
+     */
+    private void sendEvents() {
+        List<Map<String, Object>> drained = new ArrayList<>();
+        Map<String, Object> event;
+        while ((event = events.poll()) != null) {
+            drained.add(event);
+        }
+        for (int from = 0; from < drained.size(); from += batchSize) {
+            analyticsService.sendLoginEvents(drained.subList(from, Math.min(drained.size(), from + batchSize)));
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("写出登录记录失败", e);
+        }
+    }
+
+    /**
+     * 一次登录
+     * @param time 登录时间（毫秒）
+     */
+    private record Login(long time) {
+    }
+}
@@ -0,0 +1,293 @@
+package me.myot233.booksystem.service;
+
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.entity.BroadcastReadCursor;
+import me.myot233.booksystem.repository.BroadcastNotificationRepository;
+import me.myot233.booksystem.repository.BroadcastReadCursorRepository;
+import me.myot233.booksystem.repository.NotificationRepository;
+import me.myot233.booksystem.service.JobLeaseService.JobLease;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * 未读通知计数服务
+ * 在Redis中增量维护每个用户的未读数量，读取未读数量时不再访问数据库，
+ * 并定期与数据库对账以修正可能出现的偏差
+ */
+@Slf4j
+@Service
+public class NotificationCounterService {
+
+    // Redis键：个人未读数量 hash(userId -> count)
+    private static final String UNREAD_KEY = "notification_unread";
+    // Redis键：广播阅读游标 hash(userId -> lastReadBroadcastId)
+    private static final String CURSOR_KEY = "notification_broadcast_cursor";
+    // Redis键：广播ID有序集合 zset(id, score=id)
+    private static final String BROADCAST_IDS_KEY = "notification_broadcast_ids";
+
+    /**
+     * 字段存在时才递增，结果不小于0；字段不存在时返回nil，由读取方懒加载
+     */
+    private static final RedisScript<Long> INCR_IF_PRESENT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then " +
+            "  local v = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2]) " +
+            "  if v < 0 then redis.call('HSET', KEYS[1], ARGV[1], 0) v = 0 end " +
+            "  return v " +
+            "end " +
+            "return nil", Long.class);
+
+    /**
+     * 字段存在且小于新值时才更新，保证游标只前进
+     */
+    private static final RedisScript<Long> ADVANCE_IF_PRESENT = new DefaultRedisScript<>(
+            "local c = redis.call('HGET', KEYS[1], ARGV[1]) " +
+            "if c and tonumber(c) < tonumber(ARGV[2]) then " +
+            "  redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) return 1 " +
+            "end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private BroadcastNotificationRepository broadcastNotificationRepository;
+
+    @Autowired
+    private BroadcastReadCursorRepository broadcastReadCursorRepository;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    /**
+     * 获取用户未读数量（个人未读 + 游标之后的广播数量）
+     * @param userId 用户ID
+     * @param cursorLoader Redis中没有游标时从数据库加载游标
+     * @return 未读数量
+     */
+    public long getUnreadCount(Long userId, LongSupplier cursorLoader) {
+        String field = userId.toString();
+
+        Object personal = stringRedisTemplate.opsForHash().get(UNREAD_KEY, field);
+        long personalCount;
+        if (personal != null) {
+            personalCount = Long.parseLong(personal.toString());
+        } else {
+            personalCount = notificationRepository.countByUserIdAndIsReadFalse(userId);
+            // 并发懒加载时以先写入者为准
+            stringRedisTemplate.opsForHash().putIfAbsent(UNREAD_KEY, field, Long.toString(personalCount));
+        }
+
+        Object cursor = stringRedisTemplate.opsForHash().get(CURSOR_KEY, field);
+        long lastRead;
+        if (cursor != null) {
+            lastRead = Long.parseLong(cursor.toString());
+        } else {
+            lastRead = cursorLoader.getAsLong();
+            stringRedisTemplate.opsForHash().putIfAbsent(CURSOR_KEY, field, Long.toString(lastRead));
+        }
+
+        Long broadcastCount = stringRedisTemplate.opsForZSet()
+                .count(BROADCAST_IDS_KEY, lastRead + 1, Double.POSITIVE_INFINITY);
+        return personalCount + (broadcastCount != null ? broadcastCount : 0L);
+    }
+
+    /**
+     * 新建个人通知
+     * @param userId 用户ID
+     */
+    public void onNotificationCreated(Long userId) {
+        stringRedisTemplate.execute(INCR_IF_PRESENT, List.of(UNREAD_KEY), userId.toString(), "1");
+    }
+
+    /**
+     * 个人通知由未读变为已读
+     * @param userId 用户ID
+     */
+    public void onNotificationRead(Long userId) {
+        stringRedisTemplate.execute(INCR_IF_PRESENT, List.of(UNREAD_KEY), userId.toString(), "-1");
+    }
+
+    /**
+     * 未读的个人通知被清理
+     * @param unreadByUser 用户ID -> 被清理的未读通知数
+     */
+    public void onNotificationsPurged(Map<Long, Long> unreadByUser) {
+        unreadByUser.forEach((userId, count) -> stringRedisTemplate.execute(INCR_IF_PRESENT,
+                List.of(UNREAD_KEY), userId.toString(), Long.toString(-count)));
+    }
+
+    /**
+     * 用户全部已读
+     * @param userId 用户ID
+     * @param lastBroadcastId 最新广播ID
+     */
+    public void onAllRead(Long userId, long lastBroadcastId) {
+        String field = userId.toString();
+        stringRedisTemplate.opsForHash().put(UNREAD_KEY, field, "0");
+        stringRedisTemplate.execute(ADVANCE_IF_PRESENT, List.of(CURSOR_KEY), field, Long.toString(lastBroadcastId));
+    }
+
+    /**
+     * 新建广播，事务提交后才加入广播ID集合
+     * 集合中的ID因此都已在数据库中可见，对账时不在数据库中的ID可以确定已被清理
+     * @param broadcastId 广播ID
+     */
+    public void onBroadcastCreated(Long broadcastId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            stringRedisTemplate.opsForZSet().add(BROADCAST_IDS_KEY, broadcastId.toString(), broadcastId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                stringRedisTemplate.opsForZSet().add(BROADCAST_IDS_KEY, broadcastId.toString(), broadcastId);
+            }
+        });
+    }
+
+    /**
+     * 广播被清理
+     * @param broadcastIds 广播ID列表
+     */
+    public void onBroadcastsPurged(List<Long> broadcastIds) {
+        if (broadcastIds.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.opsForZSet().remove(BROADCAST_IDS_KEY,
+                broadcastIds.stream().map(String::valueOf).toArray());
+    }
+
+    /**
+     * 广播阅读游标前进
+     * @param userId 用户ID
+     * @param broadcastId 已读到的广播ID
+     */
+    public void onCursorAdvanced(Long userId, long broadcastId) {
+        stringRedisTemplate.execute(ADVANCE_IF_PRESENT, List.of(CURSOR_KEY), userId.toString(), Long.toString(broadcastId));
+    }
+
+    /**
+     * 启动时同步广播ID集合，与定期对账共用租约，其他节点正在对账时跳过
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        try {
+            jobLeaseService.runExclusive("notification-counter-reconcile", this::syncBroadcastIds);
+        } catch (Exception e) {
+            log.warn("同步广播ID集合失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定期与数据库对账，修正计数偏差（默认每10分钟）
+     */
+    @Scheduled(fixedDelayString = "${notification.counter.reconcile-interval-ms:600000}",
+               initialDelayString = "${notification.counter.reconcile-interval-ms:600000}")
+    public void reconcile() {
+        jobLeaseService.runExclusive("notification-counter-reconcile", this::reconcileNow);
+    }
+
+    /**
+     * 与数据库对账，写入Redis前校验租约令牌
+     * @param lease 任务租约
+     */
+    private void reconcileNow(JobLease lease) {
+        long start = System.currentTimeMillis();
+        if (!syncBroadcastIds(lease)) {
+            return;
+        }
+        int users = reconcileUnreadCounts(lease);
+        int cursors = reconcileCursors(lease);
+        log.info("未读计数对账完成: 用户{} 游标{} 耗时{}ms", users, cursors, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 把数据库中的广播ID合并到有序集合，不替换整个集合
+     * 先读取集合中的已有ID再查询数据库：广播提交后才加入集合，已有ID不在数据库中说明已被清理，予以删除；
+     * 查询期间新建的广播不在已有ID中，不会被删除
+     * @param lease 任务租约
+     * @return 是否已写入，令牌过期时返回false
+     */
+    private boolean syncBroadcastIds(JobLease lease) {
+        Set<String> cached = stringRedisTemplate.opsForZSet().range(BROADCAST_IDS_KEY, 0, -1);
+        List<Long> ids = broadcastNotificationRepository.findAllIds();
+        Map<String, Double> added = new LinkedHashMap<>();
+        for (Long id : ids) {
+            added.put(id.toString(), id.doubleValue());
+        }
+        List<String> removed = new ArrayList<>();
+        if (cached != null) {
+            for (String member : cached) {
+                if (!added.containsKey(member)) {
+                    removed.add(member);
+                }
+            }
+        }
+        return jobLeaseService.fencedZSetUpdate(lease, BROADCAST_IDS_KEY, removed, added);
+    }
+
+    /**
+     * 对账Redis中已缓存用户的个人未读数量
+     * @param lease 任务租约
+     * @return 对账的用户数
+     */
+    private int reconcileUnreadCounts(JobLease lease) {
+        Set<Object> fields = stringRedisTemplate.opsForHash().keys(UNREAD_KEY);
+        if (fields.isEmpty()) {
+            return 0;
+        }
+        Map<Long, Long> actual = new HashMap<>();
+        for (Object[] row : notificationRepository.countUnreadGroupByUserId()) {
+            actual.put((Long) row[0], (Long) row[1]);
+        }
+        Map<String, String> values = new HashMap<>();
+        for (Object field : fields) {
+            Long userId = Long.valueOf(field.toString());
+            values.put(field.toString(), Long.toString(actual.getOrDefault(userId, 0L)));
+        }
+        return jobLeaseService.fencedHashPut(lease, UNREAD_KEY, values) ? values.size() : 0;
+    }
+
+    /**
+     * 对账Redis中已缓存用户的广播阅读游标
+     * @param lease 任务租约
+     * @return 对账的游标数
+     */
+    private int reconcileCursors(JobLease lease) {
+        Set<Object> fields = stringRedisTemplate.opsForHash().keys(CURSOR_KEY);
+        if (fields.isEmpty()) {
+            return 0;
+        }
+        List<Long> userIds = new ArrayList<>(fields.size());
+        for (Object field : fields) {
+            userIds.add(Long.valueOf(field.toString()));
+        }
+        Map<String, String> values = new HashMap<>();
+        for (BroadcastReadCursor cursor : broadcastReadCursorRepository.findAllById(userIds)) {
+            values.put(cursor.getUserId().toString(), cursor.getLastReadBroadcastId().toString());
+        }
+        if (values.isEmpty() || !lease.isValid()) {
+            return 0;
+        }
+        return jobLeaseService.fencedHashPut(lease, CURSOR_KEY, values) ? values.size() : 0;
+    }
+}
@@ -0,0 +1,287 @@
+package me.myot233.booksystem.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.entity.Notification;
+import me.myot233.booksystem.repository.BroadcastNotificationRepository;
+import me.myot233.booksystem.repository.NotificationRepository;
+import me.myot233.booksystem.service.JobLeaseService.JobLease;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 通知保留策略服务
+ * 按通知类型配置保留天数，定期以小批量、按索引顺序删除过期通知，
+ * 每批使用独立的短事务并在批次之间暂停，避免长时间持锁或与请求争用数据库
+ */
+@Slf4j
+@Service
+public class NotificationRetentionService {
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private BroadcastNotificationRepository broadcastNotificationRepository;
+
+    @Autowired
+    private NotificationCounterService notificationCounterService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    // 是否启用清理
+    @Value("${notification.retention.enabled:true}")
+    private boolean enabled;
+
+    // 各类型保留天数，格式：TYPE:天数,TYPE:天数
+    @Value("${notification.retention.ttl-days:NEW_BOOK:30,BORROW_REMINDER:30,RETURN_REMINDER:30,OVERDUE_REMINDER:30,SYSTEM_MESSAGE:90,BOOK_AVAILABLE:30,REMINDER_DIGEST:30}")
+    private String ttlDaysSpec;
+
+    // 未配置类型的默认保留天数
+    @Value("${notification.retention.default-ttl-days:90}")
+    private int defaultTtlDays;
+
+    // 每批删除条数
+    @Value("${notification.retention.chunk-size:500}")
+    private int chunkSize;
+
+    // 批次之间的暂停时间（毫秒）
+    @Value("${notification.retention.chunk-pause-ms:200}")
+    private long chunkPauseMs;
+
+    // 单次运行最多处理的批次数
+    @Value("${notification.retention.max-chunks-per-run:200}")
+    private int maxChunksPerRun;
+
+    // 删除前是否归档
+    @Value("${notification.retention.archive-enabled:false}")
+    private boolean archiveEnabled;
+
+    // 归档目录
+    @Value("${notification.retention.archive-dir:archive/notifications}")
+    private String archiveDir;
+
+    private final Map<Notification.NotificationType, Integer> ttlDays = new EnumMap<>(Notification.NotificationType.class);
+
+    /**
+     * 解析各类型保留天数
+     */
+    @PostConstruct
+    public void init() {
+        for (Notification.NotificationType type : Notification.NotificationType.values()) {
+            ttlDays.put(type, defaultTtlDays);
+        }
+        for (String entry : ttlDaysSpec.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                ttlDays.put(Notification.NotificationType.valueOf(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+            } catch (IllegalArgumentException e) {
+                log.warn("忽略无效的通知保留配置: {}", entry);
+            }
+        }
+    }
+
+    /**
+     * 获取各类型保留天数
+     * @return 类型 -> 保留天数
+     */
+    public Map<Notification.NotificationType, Integer> getTtlDays() {
+        return new EnumMap<>(ttlDays);
+    }
+
+    /**
+     * 每天凌晨3点30分清理过期通知
+     */
+    @Scheduled(cron = "${notification.retention.cron:0 30 3 * * ?}")
+    public void purgeExpiredNotifications() {
+        if (!enabled) {
+            return;
+        }
+        jobLeaseService.runExclusive("notification-retention", lease -> {
+            Map<String, Long> purged = purge(lease);
+            log.info("通知清理完成: {}", purged);
+        });
+    }
+
+    /**
+     * 按保留策略清理过期通知
+     * @param lease 任务租约，每批删除都校验令牌，租约被接管后停止
+     * @return 类型 -> 删除条数
+     */
+    public Map<String, Long> purge(JobLease lease) {
+        Map<String, Long> purged = new LinkedHashMap<>();
+        int[] budget = {maxChunksPerRun};
+
+        for (Map.Entry<Notification.NotificationType, Integer> entry : ttlDays.entrySet()) {
+            Notification.NotificationType type = entry.getKey();
+            Date cutoff = cutoff(entry.getValue());
+            long deleted = purgeInChunks(lease, type.name(), budget,
+                    () -> notificationRepository.findIdsForPurge(type, cutoff, PageRequest.of(0, chunkSize)),
+                    notificationRepository::findAllById,
+                    this::deleteNotifications);
+            purged.put(type.name(), deleted);
+        }
+
+        // 广播通知按系统消息的保留天数清理
+        Date broadcastCutoff = cutoff(ttlDays.get(Notification.NotificationType.SYSTEM_MESSAGE));
+        long deleted = purgeInChunks(lease, "BROADCAST", budget,
+                () -> broadcastNotificationRepository.findIdsForPurge(broadcastCutoff, PageRequest.of(0, chunkSize)),
+                broadcastNotificationRepository::findAllById,
+                ids -> {
+                    broadcastNotificationRepository.deleteAllByIdInBatch(ids);
+                    notificationCounterService.onBroadcastsPurged(ids);
+                });
+        purged.put("BROADCAST", deleted);
+        return purged;
+    }
+
+    /**
+     * 删除一批个人通知，提交后按用户减少被删除的未读通知数
+     * 统计与删除之间并发标记已读造成的少量偏差由定期对账修正
+     * @param ids 通知ID列表
+     */
+    private void deleteNotifications(List<Long> ids) {
+        Map<Long, Long> unreadByUser = new HashMap<>();
+        for (Object[] row : notificationRepository.countUnreadByIdInGroupByUserId(ids)) {
+            unreadByUser.put((Long) row[0], (Long) row[1]);
+        }
+        notificationRepository.deleteAllByIdInBatch(ids);
+        if (unreadByUser.isEmpty()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                notificationCounterService.onNotificationsPurged(unreadByUser);
+            }
+        });
+    }
+
+    /**
+     * 分批清理
+     * @param lease 任务租约
+     * @param name 归档名称
+     * @param budget 剩余批次预算（跨类型共享）
+     * @param nextChunk 查询下一批ID
+     * @param loader 归档时加载整行数据
+     * @param deleter 删除一批数据
+     * @return 删除条数
+     */
+    private <T> long purgeInChunks(JobLease lease, String name, int[] budget,
+                                   Supplier<List<Long>> nextChunk,
+                                   Function<List<Long>, List<T>> loader,
+                                   Consumer<List<Long>> deleter) {
+        long deleted = 0;
+        while (budget[0] > 0 && lease.isValid()) {
+            List<Long> ids = nextChunk.get();
+            if (ids.isEmpty()) {
+                break;
+            }
+            if (archiveEnabled && !archive(name, loader.apply(ids))) {
+                // 归档失败时不删除，等待下次运行
+                break;
+            }
+            // 每批一个短事务，令牌已过期时不删除
+            if (!jobLeaseService.runFenced(lease, () -> deleter.accept(ids))) {
+                break;
+            }
+            deleted += ids.size();
+            budget[0]--;
+
+            if (ids.size() < chunkSize) {
+                break;
+            }
+            if (!pause()) {
+                break;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 将一批记录追加写入当天的gzip压缩NDJSON归档文件
+     * @param name 归档名称
+     * @param rows 记录
+     * @return 是否成功
+     */
+    private boolean archive(String name, List<?> rows) {
+        String day = new SimpleDateFormat("yyyyMMdd").format(new Date());
+        // 每批写入一个独立的gzip成员，多个成员拼接仍是合法的gzip文件
+        Path file = Paths.get(archiveDir, name.toLowerCase() + "-" + day + ".ndjson.gz");
+        try {
+            Files.createDirectories(file.getParent());
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)),
+                    StandardCharsets.UTF_8))) {
+                for (Object row : rows) {
+                    writer.write(objectMapper.writeValueAsString(row));
+                    writer.newLine();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("通知归档失败: {}, 错误: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 批次之间暂停，降低对线上请求的影响
+     * @return 线程未被中断
+     */
+    private boolean pause() {
+        if (chunkPauseMs <= 0) {
+            return true;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(chunkPauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 计算截止时间
+     * @param days 保留天数
+     * @return 截止时间
+     */
+    private static Date cutoff(int days) {
+        return new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+    }
+}
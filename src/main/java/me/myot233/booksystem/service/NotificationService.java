@@ -1,32 +1,154 @@
 package me.myot233.booksystem.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.dto.NotificationFeedPage;
+import me.myot233.booksystem.entity.BroadcastNotification;
+import me.myot233.booksystem.entity.BroadcastReadCursor;
 import me.myot233.booksystem.entity.Notification;
+import me.myot233.booksystem.entity.User;
+import me.myot233.booksystem.messaging.EncodedPayload;
+import me.myot233.booksystem.messaging.MessageBroadcaster;
+import me.myot233.booksystem.messaging.NotificationPushCoalescer;
+import me.myot233.booksystem.repository.BroadcastNotificationRepository;
+import me.myot233.booksystem.repository.BroadcastReadCursorRepository;
 import me.myot233.booksystem.repository.NotificationRepository;
 import me.myot233.booksystem.service.UserService;
+import me.myot233.booksystem.util.FeedCursor;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 通知服务
  */
+@Slf4j
 @Service
 @Transactional
 public class NotificationService {
 
+    /**
+     * 通知列表顺序：创建时间倒序，时间相同时按ID倒序
+     */
+    private static final Comparator<Notification> FEED_ORDER = Comparator
+            .comparing(Notification::getCreateTime)
+            .thenComparing(Notification::getId)
+            .reversed();
+
+    // Redis键前缀：提醒去重 string，按去重窗口过期
+    private static final String REMINDER_DEDUP_PREFIX = "notification_dedup:";
+
+    // 去重键在提醒写入数据库之前的过期时间比汇总窗口多出的余量（毫秒），节点崩溃时过期后可以重新发送
+    private static final long DEDUP_PENDING_GRACE_MS = 300_000;
+
     @Autowired
     private NotificationRepository notificationRepository;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private BroadcastNotificationRepository broadcastNotificationRepository;
+
+    @Autowired
+    private BroadcastReadCursorRepository broadcastReadCursorRepository;
+
+    @Autowired
+    private MessageBroadcaster messageBroadcaster;
+
+    @Autowired
+    private NotificationPushCoalescer pushCoalescer;
 
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private NotificationCounterService notificationCounterService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private CategorySubscriptionService categorySubscriptionService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 是否将提醒合并为汇总通知
+    @Value("${notification.digest.enabled:true}")
+    private boolean digestEnabled;
+
+    // 汇总窗口（毫秒），窗口内同一用户的提醒合并为一条通知
+    @Value("${notification.digest.window-ms:60000}")
+    private long digestWindowMs;
+
+    // 相同提醒的去重时间（小时）
+    @Value("${notification.digest.dedup-ttl-hours:20}")
+    private long dedupTtlHours;
+
+    // 汇总发送失败后最多重新暂存的次数，超过后放弃并释放去重键
+    @Value("${notification.digest.max-attempts:10}")
+    private int digestMaxAttempts;
+
+    // 是否仍向公共目的地/topic/new-books推送全部新书（兼容未改用分类订阅的旧客户端）
+    @Value("${notification.new-books.legacy-topic:false}")
+    private boolean newBookLegacyTopic;
+
+    // 按用户暂存的待汇总提醒
+    private final Map<Long, List<Reminder>> pendingReminders = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService digestFlusher;
+
+    /**
+     * 启动汇总线程
+     */
+    @PostConstruct
+    public void startDigest() {
+        if (!digestEnabled) {
+            return;
+        }
+        digestFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "notification-digest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        digestFlusher.scheduleWithFixedDelay(this::flushDigests, digestWindowMs, digestWindowMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止前发送剩余的提醒，仍未发送成功的释放去重键，由重启后的扫描重新发送
+     */
+    @PreDestroy
+    public void stopDigest() {
+        if (digestFlusher != null) {
+            digestFlusher.shutdown();
+            flushDigests();
+            for (Long userId : pendingReminders.keySet()) {
+                List<Reminder> reminders = pendingReminders.remove(userId);
+                if (reminders != null) {
+                    releaseDedupKeys(reminders);
+                }
+            }
+        }
+    }
+
     /**
      * 创建并发送通知
      * @param userId 用户ID
@@ -48,6 +170,7 @@ public class NotificationService {
 
         // 保存到数据库
         notification = notificationRepository.save(notification);
+        notificationCounterService.onNotificationCreated(userId);
 
         // 通过WebSocket发送实时通知
         sendRealTimeNotification(userId, notification);
@@ -61,71 +184,157 @@ public class NotificationService {
      * @param notification 通知对象
      */
     public void sendRealTimeNotification(Long userId, Notification notification) {
-        // 发送给特定用户
-        messagingTemplate.convertAndSendToUser(
-            userId.toString(),
-            "/queue/notifications",
-            notification
-        );
-
-        // 同时发送未读通知数量
-        long unreadCount = getUnreadNotificationCount(userId);
-        messagingTemplate.convertAndSendToUser(
-            userId.toString(),
-            "/queue/unread-count",
-            unreadCount
-        );
+        // 发送给特定用户（短时间内的多条通知会合并为一个批量帧）
+        pushCoalescer.enqueueNotification(userId.toString(), notification);
+
+        // 同时发送未读通知数量（只推送最新值）
+        pushCoalescer.enqueueUnreadCount(userId.toString(), getUnreadNotificationCount(userId));
     }
 
     /**
      * 广播系统通知给所有用户
+     * 广播只写入一行记录，用户读取时再与个人通知合并
      * @param title 标题
      * @param content 内容
      */
     public void broadcastSystemNotification(String title, String content) {
-        // 获取所有用户
-        List<me.myot233.booksystem.entity.User> allUsers = userService.getAllUsers();
+        BroadcastNotification broadcast = new BroadcastNotification();
+        broadcast.setTitle(title);
+        broadcast.setContent(content);
+        broadcast.setType(Notification.NotificationType.SYSTEM_MESSAGE);
+        broadcast = broadcastNotificationRepository.save(broadcast);
+        notificationCounterService.onBroadcastCreated(broadcast.getId());
 
-        // 为每个用户创建通知记录
-        for (me.myot233.booksystem.entity.User user : allUsers) {
-            createAndSendNotification(user.getId(), title, content,
-                Notification.NotificationType.SYSTEM_MESSAGE, null);
-        }
-
-        // 同时发送WebSocket广播（用于实时通知）
-        Notification broadcastNotification = new Notification();
-        broadcastNotification.setTitle(title);
-        broadcastNotification.setContent(content);
-        broadcastNotification.setType(Notification.NotificationType.SYSTEM_MESSAGE);
-
-        messagingTemplate.convertAndSend("/topic/system-notifications", broadcastNotification);
+        // 发送WebSocket广播（用于实时通知）
+        messageBroadcaster.sendToTopic("/topic/system-notifications", broadcast.toUserNotification(null, false));
     }
 
     /**
-     * 获取用户的所有通知
+     * 获取用户的所有通知（个人通知与广播合并）
      * @param userId 用户ID
      * @return 通知列表
      */
     public List<Notification> getUserNotifications(Long userId) {
-        return notificationRepository.findByUserIdOrderByCreateTimeDesc(userId);
+        BroadcastReadCursor cursor = getBroadcastCursor(userId);
+        List<Notification> broadcasts = broadcastNotificationRepository
+                .findByIdGreaterThanOrderByIdDesc(cursor.getBaselineBroadcastId())
+                .stream()
+                .map(b -> b.toUserNotification(userId, b.getId() <= cursor.getLastReadBroadcastId()))
+                .toList();
+        return merge(notificationRepository.findByUserIdOrderByCreateTimeDesc(userId), broadcasts, FEED_ORDER);
     }
 
     /**
-     * 获取用户的未读通知
+     * 分页获取用户通知（个人通知与广播合并，游标分页）
+     * @param userId 用户ID
+     * @param cursor 上一页返回的游标，为空时获取第一页
+     * @param size 每页条数
+     * @return 通知分页结果
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    public NotificationFeedPage getNotificationFeed(Long userId, String cursor, int size) {
+        FeedCursor before = cursor == null || cursor.isEmpty() ? null : FeedCursor.decode(cursor);
+        BroadcastReadCursor readCursor = getBroadcastCursor(userId);
+        Long baseline = readCursor.getBaselineBroadcastId();
+        // 多取一条用于判断是否还有下一页
+        Pageable limit = PageRequest.of(0, size + 1);
+
+        List<Notification> personal = before == null
+                ? notificationRepository.findByUserIdOrderByCreateTimeDescIdDesc(userId, limit)
+                : notificationRepository.findFeedBefore(userId, before.createTime(), before.id(), limit);
+        List<BroadcastNotification> broadcastRows = before == null
+                ? broadcastNotificationRepository.findFeedFirst(baseline, limit)
+                : broadcastNotificationRepository.findFeedBefore(baseline, before.createTime(), before.id(), limit);
+        List<Notification> broadcasts = broadcastRows.stream()
+                .map(b -> b.toUserNotification(userId, b.getId() <= readCursor.getLastReadBroadcastId()))
+                .toList();
+
+        return toFeedPage(merge(personal, broadcasts, FEED_ORDER), size, cursor);
+    }
+
+    /**
+     * 增量获取游标之后的新通知（按时间正序）
+     * @param userId 用户ID
+     * @param cursor 客户端已持有的最新游标
+     * @param size 最多返回条数
+     * @return 通知分页结果，nextCursor为本次返回的最新一条
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    public NotificationFeedPage getNotificationsSince(Long userId, String cursor, int size) {
+        FeedCursor after = FeedCursor.decode(cursor);
+        BroadcastReadCursor readCursor = getBroadcastCursor(userId);
+        Pageable limit = PageRequest.of(0, size + 1);
+
+        List<Notification> personal = notificationRepository
+                .findFeedAfter(userId, after.createTime(), after.id(), limit);
+        List<Notification> broadcasts = broadcastNotificationRepository
+                .findFeedAfter(readCursor.getBaselineBroadcastId(), after.createTime(), after.id(), limit)
+                .stream()
+                .map(b -> b.toUserNotification(userId, b.getId() <= readCursor.getLastReadBroadcastId()))
+                .toList();
+
+        return toFeedPage(merge(personal, broadcasts, FEED_ORDER.reversed()), size, cursor);
+    }
+
+    /**
+     * 获取用户的未读通知（个人通知与广播合并）
      * @param userId 用户ID
      * @return 未读通知列表
      */
     public List<Notification> getUnreadNotifications(Long userId) {
-        return notificationRepository.findByUserIdAndIsReadFalseOrderByCreateTimeDesc(userId);
+        BroadcastReadCursor cursor = getBroadcastCursor(userId);
+        List<Notification> broadcasts = broadcastNotificationRepository
+                .findByIdGreaterThanOrderByIdDesc(cursor.getLastReadBroadcastId())
+                .stream()
+                .map(b -> b.toUserNotification(userId, false))
+                .toList();
+        return merge(notificationRepository.findByUserIdAndIsReadFalseOrderByCreateTimeDesc(userId), broadcasts, FEED_ORDER);
+    }
+
+    /**
+     * 获取指定ID之后的个人通知，用于SSE断线重连补发
+     * @param userId 用户ID
+     * @param afterId 客户端最后收到的通知ID
+     * @param limit 最多返回条数
+     * @return 通知列表（按ID正序）
+     */
+    public List<Notification> getNotificationsAfterId(Long userId, Long afterId, int limit) {
+        return notificationRepository.findByUserIdAndIdGreaterThanOrderByIdAsc(userId, afterId, PageRequest.of(0, limit));
     }
 
     /**
-     * 获取用户未读通知数量
+     * 获取指定ID之后用户可见的广播，用于SSE断线重连补发
+     * @param userId 用户ID
+     * @param afterId 客户端最后收到的广播ID
+     * @param limit 最多返回条数
+     * @return 广播通知列表（按ID正序）
+     */
+    public List<Notification> getBroadcastsAfterId(Long userId, long afterId, int limit) {
+        BroadcastReadCursor cursor = getBroadcastCursor(userId);
+        return broadcastNotificationRepository
+                .findByIdGreaterThanOrderByIdAsc(Math.max(afterId, cursor.getBaselineBroadcastId()), PageRequest.of(0, limit))
+                .stream()
+                .map(b -> b.toUserNotification(userId, b.getId() <= cursor.getLastReadBroadcastId()))
+                .toList();
+    }
+
+    /**
+     * 获取最新广播ID
+     * @return 最新广播ID，没有广播时为0
+     */
+    public long getLatestBroadcastId() {
+        return broadcastNotificationRepository.findMaxId();
+    }
+
+    /**
+     * 获取用户未读通知数量（个人未读 + 游标之后的广播）
+     * 计数由Redis增量维护，只有缓存缺失时才会访问数据库
      * @param userId 用户ID
      * @return 未读通知数量
      */
     public long getUnreadNotificationCount(Long userId) {
-        return notificationRepository.countByUserIdAndIsReadFalse(userId);
+        return notificationCounterService.getUnreadCount(userId,
+                () -> getBroadcastCursor(userId).getLastReadBroadcastId());
     }
 
     /**
@@ -139,16 +348,15 @@ public class NotificationService {
         if (notificationOpt.isPresent()) {
             Notification notification = notificationOpt.get();
             if (notification.getUserId().equals(userId)) {
-                notification.setIsRead(true);
-                notificationRepository.save(notification);
+                if (!Boolean.TRUE.equals(notification.getIsRead())) {
+                    notification.setIsRead(true);
+                    notificationRepository.save(notification);
+                    notificationCounterService.onNotificationRead(userId);
+                }
 
                 // 发送更新后的未读数量
                 long unreadCount = getUnreadNotificationCount(userId);
-                messagingTemplate.convertAndSendToUser(
-                    userId.toString(),
-                    "/queue/unread-count",
-                    unreadCount
-                );
+                pushCoalescer.enqueueUnreadCount(userId.toString(), unreadCount);
 
                 return true;
             }
@@ -156,6 +364,27 @@ public class NotificationService {
         return false;
     }
 
+    /**
+     * 标记广播通知为已读
+     * 游标只前进不后退，因此该广播之前的广播也会视为已读
+     * @param broadcastId 广播ID
+     * @param userId 用户ID
+     * @return 是否成功
+     */
+    public boolean markBroadcastAsRead(Long broadcastId, Long userId) {
+        BroadcastReadCursor cursor = getOrCreateBroadcastCursor(userId);
+        if (broadcastId <= cursor.getBaselineBroadcastId() || !broadcastNotificationRepository.existsById(broadcastId)) {
+            return false;
+        }
+        broadcastReadCursorRepository.advance(userId, broadcastId);
+        notificationCounterService.onCursorAdvanced(userId, broadcastId);
+
+        // 发送更新后的未读数量
+        long unreadCount = getUnreadNotificationCount(userId);
+        pushCoalescer.enqueueUnreadCount(userId.toString(), unreadCount);
+        return true;
+    }
+
     /**
      * 标记用户所有通知为已读
      * @param userId 用户ID
@@ -163,31 +392,42 @@ public class NotificationService {
     public void markAllAsRead(Long userId) {
         notificationRepository.markAllAsReadByUserId(userId);
 
+        // 广播游标推进到最新一条
+        getOrCreateBroadcastCursor(userId);
+        Long lastBroadcastId = broadcastNotificationRepository.findMaxId();
+        broadcastReadCursorRepository.advance(userId, lastBroadcastId);
+        notificationCounterService.onAllRead(userId, lastBroadcastId);
+
         // 发送更新后的未读数量（应该是0）
-        messagingTemplate.convertAndSendToUser(
-            userId.toString(),
-            "/queue/unread-count",
-            0L
-        );
+        pushCoalescer.enqueueUnreadCount(userId.toString(), 0L);
     }
 
     /**
      * 发送新书到达通知
+     * 只推送给订阅了该分类的用户；开启兼容模式时另向公共目的地推送全部新书
      * @param bookTitle 图书标题
      * @param bookId 图书ID
+     * @param category 图书分类
      */
-    public void sendNewBookNotification(String bookTitle, Long bookId) {
+    public void sendNewBookNotification(String bookTitle, Long bookId, String category) {
         String title = "新书到达";
         String content = String.format("新书《%s》已到达图书馆，欢迎借阅！", bookTitle);
 
-        // 广播给所有用户（实际应用中可能需要根据用户偏好过滤）
         Notification notification = new Notification();
         notification.setTitle(title);
         notification.setContent(content);
         notification.setType(Notification.NotificationType.NEW_BOOK);
         notification.setBookId(bookId);
 
-        messagingTemplate.convertAndSend("/topic/new-books", notification);
+        // 只编码一次，公共目的地与所有订阅用户共享
+        EncodedPayload encoded = messageBroadcaster.encode(notification);
+        if (newBookLegacyTopic) {
+            messageBroadcaster.sendToTopic("/topic/new-books", encoded);
+        }
+
+        BitSet subscribers = categorySubscriptionService.findSubscribers(category);
+        List<String> users = subscribers.stream().mapToObj(Integer::toString).toList();
+        messageBroadcaster.sendToUsers(users, "/queue/new-books", encoded);
     }
 
     /**
@@ -196,13 +436,13 @@ public class NotificationService {
      * @param bookTitle 图书标题
      * @param bookId 图书ID
      * @param daysLeft 剩余天数
+     * @return 是否已发送、已暂存等待汇总或已在去重时间内发送过，false表示发送失败
      */
-    public void sendReturnReminder(Long userId, String bookTitle, Long bookId, int daysLeft) {
+    public boolean sendReturnReminder(Long userId, String bookTitle, Long bookId, int daysLeft) {
         String title = "归还提醒";
         String content = String.format("您借阅的图书《%s》还有%d天到期，请及时归还。", bookTitle, daysLeft);
 
-        createAndSendNotification(userId, title, content,
-            Notification.NotificationType.RETURN_REMINDER, bookId);
+        return sendReminder(new Reminder(userId, title, content, Notification.NotificationType.RETURN_REMINDER, bookId, daysLeft, 0));
     }
 
     /**
@@ -211,12 +451,298 @@ public class NotificationService {
      * @param bookTitle 图书标题
      * @param bookId 图书ID
      * @param overdueDays 逾期天数
+     * @return 是否已发送、已暂存等待汇总或已在去重时间内发送过，false表示发送失败
      */
-    public void sendOverdueReminder(Long userId, String bookTitle, Long bookId, int overdueDays) {
+    public boolean sendOverdueReminder(Long userId, String bookTitle, Long bookId, int overdueDays) {
         String title = "逾期提醒";
         String content = String.format("您借阅的图书《%s》已逾期%d天，请尽快归还！", bookTitle, overdueDays);
 
-        createAndSendNotification(userId, title, content,
-            Notification.NotificationType.OVERDUE_REMINDER, bookId);
+        return sendReminder(new Reminder(userId, title, content, Notification.NotificationType.OVERDUE_REMINDER, bookId, overdueDays, 0));
+    }
+
+    /**
+     * 发送提醒：相同的提醒在去重时间内只发送一次，开启汇总时先暂存
+     * 在调用方事务中发送时异常直接抛出，独立事务发送失败时返回false
+     * @param reminder 提醒
+     * @return 是否已发送、已暂存或无需发送
+     */
+    private boolean sendReminder(Reminder reminder) {
+        if (!acquireDedupKey(reminder)) {
+            return true;
+        }
+        if (!digestEnabled) {
+            List<Reminder> reminders = List.of(reminder);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // 通知提交后才延长去重键，回滚时释放
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == STATUS_COMMITTED) {
+                            confirmDedupKeys(reminders);
+                        } else {
+                            releaseDedupKeys(reminders);
+                        }
+                    }
+                });
+                createAndSendNotification(reminder.userId(), reminder.title(), reminder.content(), reminder.type(), reminder.bookId());
+                return true;
+            }
+            if (!sendInTransaction(reminder.userId(), reminders)) {
+                // 由调用方重试，重试时需要重新占用去重键
+                releaseDedupKeys(reminders);
+                return false;
+            }
+            return true;
+        }
+        // 在compute中修改，保证与汇总线程的remove互斥
+        pendingReminders.compute(reminder.userId(), (key, reminders) -> {
+            List<Reminder> target = reminders != null ? reminders : new ArrayList<>();
+            target.add(reminder);
+            return target;
+        });
+        return true;
+    }
+
+    /**
+     * 占用提醒去重键（类型 + 用户 + 图书 + 天数）
+     * 提醒写入数据库之前只占用略长于汇总窗口的时间，提交后再延长到完整的去重时间
+     * @param reminder 提醒
+     * @return 是否首次发送
+     */
+    private boolean acquireDedupKey(Reminder reminder) {
+        long pendingTtlMs = (digestEnabled ? digestWindowMs * 2 : 0) + DEDUP_PENDING_GRACE_MS;
+        try {
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(dedupKey(reminder), "1", pendingTtlMs, TimeUnit.MILLISECONDS);
+            return !Boolean.FALSE.equals(acquired);
+        } catch (Exception e) {
+            // Redis不可用时不去重
+            log.warn("提醒去重失败: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 重新暂存的提醒，去重键再延长一个暂存期，避免等待重试期间过期
+     * @param reminders 提醒列表
+     */
+    private void extendPendingDedupKeys(List<Reminder> reminders) {
+        try {
+            for (Reminder reminder : reminders) {
+                stringRedisTemplate.expire(dedupKey(reminder), digestWindowMs * 2 + DEDUP_PENDING_GRACE_MS,
+                        TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            log.warn("延长提醒去重键失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 提醒已提交，去重键延长到完整的去重时间
+     * @param reminders 提醒列表
+     */
+    private void confirmDedupKeys(List<Reminder> reminders) {
+        try {
+            for (Reminder reminder : reminders) {
+                stringRedisTemplate.expire(dedupKey(reminder), dedupTtlHours, TimeUnit.HOURS);
+            }
+        } catch (Exception e) {
+            log.warn("延长提醒去重键失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 提醒发送失败，释放去重键以便下次扫描重新发送
+     * @param reminders 提醒列表
+     */
+    private void releaseDedupKeys(List<Reminder> reminders) {
+        try {
+            stringRedisTemplate.delete(reminders.stream().map(NotificationService::dedupKey).toList());
+        } catch (Exception e) {
+            log.warn("释放提醒去重键失败: {}", e.getMessage());
+        }
+    }
+
+    private static String dedupKey(Reminder reminder) {
+        return REMINDER_DEDUP_PREFIX + reminder.type() + ":" + reminder.userId() + ":"
+                + reminder.bookId() + ":" + reminder.days();
+    }
+
+    /**
+     * 发送各用户暂存的提醒：只有一条时按原样发送，多条时合并为一条汇总通知
+     * 在汇总线程上执行，不经过代理，因此每个用户单独开启事务。
+     * 调用方在暂存后已视为发送成功（如已更新提醒时间、挂上下一个提醒），发送失败的提醒重新暂存到下一个窗口
+     */
+    void flushDigests() {
+        for (Long userId : pendingReminders.keySet()) {
+            List<Reminder> reminders = pendingReminders.remove(userId);
+            if (reminders == null || reminders.isEmpty()) {
+                continue;
+            }
+            if (!sendInTransaction(userId, reminders)) {
+                requeue(userId, reminders);
+            }
+        }
+    }
+
+    /**
+     * 重新暂存发送失败的提醒，失败次数过多的放弃并释放去重键
+     * @param userId 用户ID
+     * @param reminders 发送失败的提醒
+     */
+    private void requeue(Long userId, List<Reminder> reminders) {
+        List<Reminder> retained = new ArrayList<>(reminders.size());
+        List<Reminder> dropped = new ArrayList<>();
+        for (Reminder reminder : reminders) {
+            if (reminder.attempts() + 1 < digestMaxAttempts) {
+                retained.add(reminder.retried());
+            } else {
+                dropped.add(reminder);
+            }
+        }
+        if (!dropped.isEmpty()) {
+            log.error("用户{}的{}条提醒连续{}次发送失败，已放弃", userId, dropped.size(), digestMaxAttempts);
+            releaseDedupKeys(dropped);
+        }
+        if (retained.isEmpty()) {
+            return;
+        }
+        extendPendingDedupKeys(retained);
+        pendingReminders.compute(userId, (key, queued) -> {
+            if (queued != null) {
+                retained.addAll(queued);
+            }
+            return retained;
+        });
+    }
+
+    /**
+     * 在独立事务中发送一个用户的提醒，提交后延长去重键
+     * @param userId 用户ID
+     * @param reminders 提醒列表
+     * @return 是否已提交
+     */
+    private boolean sendInTransaction(Long userId, List<Reminder> reminders) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (reminders.size() == 1) {
+                    Reminder reminder = reminders.get(0);
+                    createAndSendNotification(userId, reminder.title(), reminder.content(), reminder.type(), reminder.bookId());
+                    return;
+                }
+                StringBuilder content = new StringBuilder(String.format("您有%d条借阅提醒：", reminders.size()));
+                for (Reminder reminder : reminders) {
+                    content.append("\n").append(reminder.content());
+                }
+                createAndSendNotification(userId, "借阅提醒汇总", content.toString(),
+                    Notification.NotificationType.REMINDER_DIGEST, null);
+            });
+        } catch (Exception e) {
+            log.warn("发送用户{}的提醒失败: {}", userId, e.getMessage());
+            return false;
+        }
+        confirmDedupKeys(reminders);
+        return true;
+    }
+
+    /**
+     * 获取用户的广播阅读游标，不存在时返回以注册时间为起点的默认游标（不写入数据库）
+     * 只读路径使用，用户第一次标记已读时才创建游标记录
+     * @param userId 用户ID
+     * @return 阅读游标
+     */
+    private BroadcastReadCursor getBroadcastCursor(Long userId) {
+        return broadcastReadCursorRepository.findById(userId).orElseGet(() -> defaultBroadcastCursor(userId));
+    }
+
+    /**
+     * 获取用户的广播阅读游标，不存在时创建
+     * 并发请求同时创建时只有一条插入生效，其余忽略后重新读取，不会因主键冲突失败；
+     * 可重复读隔离下可能读不到其它事务刚插入的记录，此时返回的默认游标与其内容相同
+     * @param userId 用户ID
+     * @return 阅读游标
+     */
+    private BroadcastReadCursor getOrCreateBroadcastCursor(Long userId) {
+        Optional<BroadcastReadCursor> existing = broadcastReadCursorRepository.findById(userId);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        BroadcastReadCursor cursor = defaultBroadcastCursor(userId);
+        broadcastReadCursorRepository.insertIfAbsent(userId, cursor.getBaselineBroadcastId());
+        return broadcastReadCursorRepository.findById(userId).orElse(cursor);
+    }
+
+    /**
+     * 以注册时间为起点的默认游标，注册之前的广播对该用户不可见
+     * @param userId 用户ID
+     * @return 阅读游标
+     */
+    private BroadcastReadCursor defaultBroadcastCursor(Long userId) {
+        Date since = userService.getUserById(userId).map(User::getCreateTime).orElseGet(Date::new);
+        Long baseline = broadcastNotificationRepository.findTopByCreateTimeBeforeOrderByIdDesc(since)
+                .map(BroadcastNotification::getId)
+                .orElse(0L);
+
+        BroadcastReadCursor cursor = new BroadcastReadCursor();
+        cursor.setUserId(userId);
+        cursor.setBaselineBroadcastId(baseline);
+        cursor.setLastReadBroadcastId(baseline);
+        return cursor;
+    }
+
+    /**
+     * 截取一页数据并生成下一页游标
+     * @param merged 合并后的有序列表（最多 size + 1 条）
+     * @param size 每页条数
+     * @param currentCursor 当前游标（没有数据时原样返回）
+     * @return 通知分页结果
+     */
+    private static NotificationFeedPage toFeedPage(List<Notification> merged, int size, String currentCursor) {
+        boolean hasMore = merged.size() > size;
+        List<Notification> items = hasMore ? new ArrayList<>(merged.subList(0, size)) : merged;
+        String nextCursor = currentCursor;
+        if (!items.isEmpty()) {
+            Notification last = items.get(items.size() - 1);
+            nextCursor = FeedCursor.of(last.getCreateTime(), last.getId()).encode();
+        }
+        return new NotificationFeedPage(items, nextCursor, hasMore);
+    }
+
+    /**
+     * 合并两个已按相同顺序排序的通知列表
+     * @param personal 个人通知
+     * @param broadcasts 广播通知
+     * @param order 排序规则
+     * @return 合并后的通知列表
+     */
+    private static List<Notification> merge(List<Notification> personal, List<Notification> broadcasts,
+                                            Comparator<Notification> order) {
+        if (broadcasts.isEmpty()) {
+            return personal;
+        }
+        List<Notification> merged = new ArrayList<>(personal.size() + broadcasts.size());
+        int i = 0, j = 0;
+        while (i < personal.size() && j < broadcasts.size()) {
+            if (order.compare(personal.get(i), broadcasts.get(j)) <= 0) {
+                merged.add(personal.get(i++));
+            } else {
+                merged.add(broadcasts.get(j++));
+            }
+        }
+        merged.addAll(personal.subList(i, personal.size()));
+        merged.addAll(broadcasts.subList(j, broadcasts.size()));
+        return merged;
+    }
+
+    /**
+     * 待发送的提醒
+     * @param attempts 汇总发送失败的次数
+     */
+    private record Reminder(Long userId, String title, String content,
+                            Notification.NotificationType type, Long bookId, int days, int attempts) {
+
+        private Reminder retried() {
+            return new Reminder(userId, title, content, type, bookId, days, attempts + 1);
+        }
     }
 }
@@ -0,0 +1,171 @@
+package me.myot233.booksystem.service;
+
+import me.myot233.booksystem.util.NodeIdentity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在线状态服务
+ * 由STOMP连接、断开和心跳驱动，在线用户保存在以最后活跃时间为分数的有序集合中，
+ * 定期按分数区间裁剪超时用户，因此在线人数可以直接用ZCARD获取
+ */
+@Service
+public class PresenceService {
+
+    // 在线用户 zset(userId, score=最后活跃时间)
+    private static final String PRESENCE_KEY = "online_presence";
+    // 用户会话数 hash(userId -> 会话数)
+    private static final String USER_SESSIONS_KEY = "online_user_sessions";
+    // 节点会话数 hash(nodeId -> 会话数)
+    private static final String NODE_SESSIONS_KEY = "online_node_sessions";
+    // 节点最后上报时间 zset(nodeId, score=上报时间)
+    private static final String NODES_KEY = "online_nodes";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private NodeIdentity nodeIdentity;
+
+    // 心跳超时时间（秒），超过该时间没有活动视为离线
+    @Value("${presence.timeout-seconds:90}")
+    private long timeoutSeconds;
+
+    // 裁剪与节点上报间隔（毫秒）
+    @Value("${presence.trim-interval-ms:30000}")
+    private long trimIntervalMs;
+
+    // 本节点当前会话数
+    private final AtomicInteger localSessions = new AtomicInteger();
+
+    /**
+     * 标记用户活跃
+     * @param userId 用户ID
+     */
+    public void touch(String userId) {
+        stringRedisTemplate.opsForZSet().add(PRESENCE_KEY, userId, System.currentTimeMillis());
+    }
+
+    /**
+     * 强制标记用户离线
+     * @param userId 用户ID
+     */
+    public void remove(String userId) {
+        stringRedisTemplate.opsForZSet().remove(PRESENCE_KEY, userId);
+        stringRedisTemplate.opsForHash().delete(USER_SESSIONS_KEY, userId);
+    }
+
+    /**
+     * 获取在线用户数量
+     * @return 在线用户数
+     */
+    public long getOnlineCount() {
+        Long count = stringRedisTemplate.opsForZSet().zCard(PRESENCE_KEY);
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * 判断用户是否在线
+     * @param userId 用户ID
+     * @return 是否在线
+     */
+    public boolean isOnline(String userId) {
+        Double lastSeen = stringRedisTemplate.opsForZSet().score(PRESENCE_KEY, userId);
+        return lastSeen != null && lastSeen >= System.currentTimeMillis() - timeoutSeconds * 1000;
+    }
+
+    /**
+     * 获取各存活节点的会话数
+     * @return 节点ID -> 会话数
+     */
+    public Map<String, Long> getNodeSessionCounts() {
+        long aliveSince = System.currentTimeMillis() - trimIntervalMs * 2;
+        Set<String> nodes = stringRedisTemplate.opsForZSet().rangeByScore(NODES_KEY, aliveSince, Double.POSITIVE_INFINITY);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        if (nodes == null || nodes.isEmpty()) {
+            return counts;
+        }
+        List<Object> fields = new ArrayList<>(nodes);
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(NODE_SESSIONS_KEY, fields);
+        for (int i = 0; i < fields.size(); i++) {
+            Object value = values.get(i);
+            counts.put(fields.get(i).toString(), value != null ? Long.parseLong(value.toString()) : 0L);
+        }
+        return counts;
+    }
+
+    /**
+     * 获取本节点会话数
+     * @return 会话数
+     */
+    public int getLocalSessionCount() {
+        return localSessions.get();
+    }
+
+    /**
+     * STOMP会话建立
+     * @param event 会话连接事件
+     */
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        localSessions.incrementAndGet();
+        Principal user = event.getUser();
+        if (user == null) {
+            return;
+        }
+        stringRedisTemplate.opsForHash().increment(USER_SESSIONS_KEY, user.getName(), 1);
+        touch(user.getName());
+    }
+
+    /**
+     * STOMP会话断开，用户的最后一个会话断开时标记离线
+     * @param event 会话断开事件
+     */
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        localSessions.decrementAndGet();
+        Principal user = event.getUser();
+        if (user == null) {
+            return;
+        }
+        Long remaining = stringRedisTemplate.opsForHash().increment(USER_SESSIONS_KEY, user.getName(), -1);
+        if (remaining == null || remaining <= 0) {
+            remove(user.getName());
+        }
+    }
+
+    /**
+     * 裁剪超时用户并上报本节点会话数
+     */
+    @Scheduled(fixedDelayString = "${presence.trim-interval-ms:30000}")
+    public void trimAndReport() {
+        long now = System.currentTimeMillis();
+        stringRedisTemplate.opsForZSet().removeRangeByScore(PRESENCE_KEY, 0, now - timeoutSeconds * 1000);
+
+        String nodeId = nodeIdentity.getNodeId();
+        stringRedisTemplate.opsForHash().put(NODE_SESSIONS_KEY, nodeId, Integer.toString(localSessions.get()));
+        stringRedisTemplate.opsForZSet().add(NODES_KEY, nodeId, now);
+
+        // 清理长时间未上报的节点
+        long staleBefore = now - trimIntervalMs * 10;
+        Set<String> staleNodes = stringRedisTemplate.opsForZSet().rangeByScore(NODES_KEY, 0, staleBefore);
+        if (staleNodes != null && !staleNodes.isEmpty()) {
+            stringRedisTemplate.opsForHash().delete(NODE_SESSIONS_KEY, staleNodes.toArray());
+            stringRedisTemplate.opsForZSet().removeRangeByScore(NODES_KEY, 0, staleBefore);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package me.myot233.booksystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.util.JwtUtil;
+import me.myot233.booksystem.util.VerifiedToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 刷新token服务
+ * 每次登录创建一个令牌族，Redis中只记录该族当前有效的刷新token标识。
+ * 刷新时原子地校验并替换为新标识，旧的刷新token随即失效；
+ * 已被替换的刷新token再次出现说明可能被盗用，整个令牌族立即吊销，双方都需要重新登录。
+ * 吊销令牌族只需删除一个键
+ */
+@Slf4j
+@Service
+public class RefreshTokenService {
+
+    // Redis键前缀：令牌族 string(当前刷新token的jti)
+    private static final String FAMILY_PREFIX = "refresh_family:";
+
+    /**
+     * 当前标识匹配时替换为新标识并续期，返回1；令牌族不存在返回-1；标识不匹配（重复使用）时删除令牌族，返回0
+     */
+    private static final RedisScript<Long> ROTATE = new DefaultRedisScript<>(
+            "local current = redis.call('GET', KEYS[1]) " +
+            "if not current then return -1 end " +
+            "if current ~= ARGV[1] then redis.call('DEL', KEYS[1]) return 0 end " +
+            "redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) " +
+            "return 1", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 为登录创建新的令牌族并签发刷新token
+     * @param username 用户名
+     * @return 刷新token
+     */
+    public String issue(String username) {
+        String familyId = UUID.randomUUID().toString();
+        String tokenId = UUID.randomUUID().toString();
+        stringRedisTemplate.opsForValue().set(FAMILY_PREFIX + familyId, tokenId,
+                Duration.ofMillis(jwtUtil.getRefreshExpiration()));
+        return jwtUtil.generateRefreshToken(username, familyId, tokenId);
+    }
+
+    /**
+     * 用刷新token换取同一令牌族的新刷新token
+     * @param refreshToken 刷新token
+     * @return 新的刷新token及其用户名
+     * @throws BadCredentialsException token无效、已吊销或被重复使用
+     */
+    public Rotation rotate(String refreshToken) {
+        VerifiedToken verified = verifyRefreshToken(refreshToken);
+        String newTokenId = UUID.randomUUID().toString();
+        Long result = stringRedisTemplate.execute(ROTATE, List.of(FAMILY_PREFIX + verified.family()),
+                verified.id(), newTokenId, Long.toString(jwtUtil.getRefreshExpiration()));
+        if (result == null || result < 0) {
+            count("revoked");
+            throw new BadCredentialsException("刷新token已失效");
+        }
+        if (result == 0) {
+            count("reused");
+            log.warn("检测到刷新token重复使用，已吊销令牌族: 用户{}", verified.subject());
+            throw new BadCredentialsException("刷新token已失效");
+        }
+        count("rotated");
+        return new Rotation(verified.subject(),
+                jwtUtil.generateRefreshToken(verified.subject(), verified.family(), newTokenId));
+    }
+
+    /**
+     * 吊销刷新token所属的整个令牌族
+     * @param refreshToken 刷新token
+     * @throws BadCredentialsException token无效
+     */
+    public void revokeFamily(String refreshToken) {
+        VerifiedToken verified = verifyRefreshToken(refreshToken);
+        stringRedisTemplate.delete(FAMILY_PREFIX + verified.family());
+    }
+
+    private VerifiedToken verifyRefreshToken(String refreshToken) {
+        VerifiedToken verified;
+        try {
+            verified = jwtUtil.verify(refreshToken);
+        } catch (Exception e) {
+            throw new BadCredentialsException("刷新token无效或已过期");
+        }
+        if (!verified.isRefreshToken() || verified.family() == null || verified.id() == null) {
+            throw new BadCredentialsException("不是有效的刷新token");
+        }
+        // 用户被停用或修改凭据后，之前签发的刷新token一并失效
+        if (tokenRevocationService.isRevoked(verified)) {
+            throw new BadCredentialsException("刷新token已失效");
+        }
+        return verified;
+    }
+
+    private void count(String outcome) {
+        Counter.builder("auth.refresh")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 刷新结果
+     * @param username 用户名
+     * @param refreshToken 新的刷新token
+     */
+    public record Rotation(String username, String refreshToken) {
+    }
+}
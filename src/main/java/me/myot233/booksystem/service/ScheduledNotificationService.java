@@ -1,74 +1,134 @@
 package me.myot233.booksystem.service;
 
-import me.myot233.booksystem.entity.Book;
-import me.myot233.booksystem.entity.User;
-import me.myot233.booksystem.repository.UserRepository;
+import me.myot233.booksystem.dto.LoanDueView;
+import me.myot233.booksystem.repository.BorrowRecordRepository;
+import me.myot233.booksystem.service.JobLeaseService.JobLease;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 定时通知服务
+ * 多节点部署时每个任务通过JobLeaseService租约只在一个节点上执行
  */
 @Service
 public class ScheduledNotificationService {
     
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    
     @Autowired
     private NotificationService notificationService;
     
     @Autowired
-    private UserRepository userRepository;
+    private BorrowRecordRepository borrowRecordRepository;
+    
+    @Autowired
+    private JobLeaseService jobLeaseService;
+    
+    // 到期前多少天开始提醒
+    @Value("${library.reminder.days-before-due:3}")
+    private int daysBeforeDue;
+    
+    // 同一笔逾期借阅两次提醒之间的最小间隔（小时）
+    @Value("${library.reminder.overdue-interval-hours:24}")
+    private int overdueIntervalHours;
+    
+    // 每页扫描的借阅记录数
+    @Value("${library.reminder.page-size:500}")
+    private int pageSize;
+    
+    // 提醒引擎：wheel 由 LoanReminderScheduler 按时间轮触发，cron 使用下面的定时扫描
+    @Value("${library.reminder.engine:wheel}")
+    private String reminderEngine;
     
     /**
      * 每天检查借阅到期情况（每天上午9点执行）
+     * 只按到期时间索引扫描即将到期的借阅
      */
     @Scheduled(cron = "0 0 9 * * ?")
     public void checkBorrowingDueDates() {
-        List<User> users = userRepository.findAll();
+        if (!"cron".equals(reminderEngine)) {
+            return;
+        }
+        jobLeaseService.runExclusive("borrowing-due-dates", this::remindDueSoon);
+    }
+    
+    /**
+     * 提醒即将到期的借阅，租约失效时停止
+     * @param lease 任务租约
+     */
+    private void remindDueSoon(JobLease lease) {
+        Date now = new Date();
+        Date until = new Date(now.getTime() + daysBeforeDue * DAY_MILLIS);
         
-        for (User user : users) {
-            List<Book> borrowedBooks = user.getBorrowedBooks();
-            
-            for (Book book : borrowedBooks) {
-                // 这里应该有借阅记录表来记录借阅时间和到期时间
-                // 为了演示，我们假设借阅期限是30天
-                // 实际应用中需要创建BorrowRecord实体来记录详细的借阅信息
-                
-                // 模拟检查逻辑
-                // 如果还有3天到期，发送提醒
-                notificationService.sendReturnReminder(
-                    user.getId(), 
-                    book.getTitle(), 
-                    book.getId(), 
-                    3
-                );
+        // 游标从 (now, 最大ID) 开始，即只取 dueTime > now 的借阅
+        Date afterDue = now;
+        Long afterId = Long.MAX_VALUE;
+        List<LoanDueView> page;
+        do {
+            page = borrowRecordRepository.findOpenDueBefore(until, afterDue, afterId, PageRequest.of(0, pageSize));
+            for (LoanDueView loan : page) {
+                int daysLeft = (int) Math.max(1, Math.ceilDiv(loan.getDueTime().getTime() - now.getTime(), DAY_MILLIS));
+                notificationService.sendReturnReminder(loan.getUserId(), loan.getBookTitle(), loan.getBookId(), daysLeft);
             }
-        }
+            if (!page.isEmpty()) {
+                LoanDueView last = page.get(page.size() - 1);
+                afterDue = last.getDueTime();
+                afterId = last.getRecordId();
+            }
+        } while (page.size() == pageSize && lease.isValid());
     }
     
     /**
      * 每小时检查逾期情况
+     * 每笔逾期借阅按配置的间隔提醒一次，而不是每小时都提醒
      */
     @Scheduled(cron = "0 0 * * * ?")
     public void checkOverdueBooks() {
-        List<User> users = userRepository.findAll();
+        if (!"cron".equals(reminderEngine)) {
+            return;
+        }
+        jobLeaseService.runExclusive("overdue-books", this::remindOverdue);
+    }
+    
+    /**
+     * 提醒逾期借阅，租约失效时停止
+     * @param lease 任务租约
+     */
+    private void remindOverdue(JobLease lease) {
+        Date now = new Date();
+        Date remindBefore = new Date(now.getTime() - TimeUnit.HOURS.toMillis(overdueIntervalHours));
         
-        for (User user : users) {
-            List<Book> borrowedBooks = user.getBorrowedBooks();
-            
-            for (Book book : borrowedBooks) {
-                // 模拟检查逾期逻辑
-                // 如果已逾期1天，发送逾期提醒
-                notificationService.sendOverdueReminder(
-                    user.getId(), 
-                    book.getTitle(), 
-                    book.getId(), 
-                    1
-                );
+        Date afterDue = new Date(0);
+        Long afterId = 0L;
+        List<LoanDueView> page;
+        do {
+            page = borrowRecordRepository.findOverdueToRemind(now, remindBefore, afterDue, afterId,
+                    PageRequest.of(0, pageSize));
+            // 只有发送成功（或已暂存等待汇总）的借阅更新提醒时间，失败的在下次扫描时重新提醒
+            List<Long> ids = new ArrayList<>(page.size());
+            for (LoanDueView loan : page) {
+                int overdueDays = (int) Math.max(1, Math.ceilDiv(now.getTime() - loan.getDueTime().getTime(), DAY_MILLIS));
+                if (notificationService.sendOverdueReminder(loan.getUserId(), loan.getBookTitle(), loan.getBookId(), overdueDays)) {
+                    ids.add(loan.getRecordId());
+                }
             }
-        }
+            if (!page.isEmpty()) {
+                if (!ids.isEmpty() && !jobLeaseService.runFenced(lease, () -> borrowRecordRepository.markReminded(ids, now))) {
+                    return;
+                }
+                LoanDueView last = page.get(page.size() - 1);
+                afterDue = last.getDueTime();
+                afterId = last.getRecordId();
+            }
+        } while (page.size() == pageSize && lease.isValid());
     }
     
     /**
@@ -76,9 +136,10 @@ public class ScheduledNotificationService {
      */
     @Scheduled(cron = "0 0 20 * * SUN")
     public void sendWeeklyMaintenance() {
-        notificationService.broadcastSystemNotification(
-            "系统维护通知",
-            "系统将于本周日晚上22:00-24:00进行例行维护，期间可能影响部分功能使用。"
-        );
+        jobLeaseService.runExclusive("weekly-maintenance", lease ->
+            notificationService.broadcastSystemNotification(
+                "系统维护通知",
+                "系统将于本周日晚上22:00-24:00进行例行维护，期间可能影响部分功能使用。"
+            ));
     }
 }
@@ -5,6 +5,7 @@ import me.myot233.booksystem.repository.BookRepository;
 import me.myot233.booksystem.util.RedisUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
@@ -27,6 +28,12 @@ public class StatisticsService {
     @Autowired
     private BookRepository bookRepository;
 
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
     private static final String STATS_PREFIX = "stats:";
     private static final String DAILY_STATS_PREFIX = "daily_stats:";
     private static final String USER_ACTIVITY_PREFIX = "user_activity:";
@@ -206,6 +213,14 @@ public class StatisticsService {
         redisUtil.expire(categoryStatsKey, 86400 * 7); // 7天过期
     }
 
+    /**
+     * 每天凌晨4点清除过期统计数据
+     */
+    @Scheduled(cron = "0 0 4 * * ?")
+    public void scheduledCleanExpiredStats() {
+        jobLeaseService.runExclusive("clean-expired-stats", lease -> cleanExpiredStats());
+    }
+
     /**
      * 清除过期统计数据
      */
@@ -318,8 +333,15 @@ public class StatisticsService {
      * @return 在线用户数
      */
     public Long getOnlineUserCount() {
-        String onlineUsersKey = "online_users";
-        return redisUtil.sGetSetSize(onlineUsersKey);
+        return presenceService.getOnlineCount();
+    }
+
+    /**
+     * 获取各节点的WebSocket会话数量
+     * @return 节点ID -> 会话数
+     */
+    public Map<String, Long> getNodeSessionCounts() {
+        return presenceService.getNodeSessionCounts();
     }
 
     /**
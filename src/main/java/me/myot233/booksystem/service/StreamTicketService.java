@@ -0,0 +1,76 @@
+package me.myot233.booksystem.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * SSE通知流票据服务
+ * 浏览器的EventSource不能设置请求头，客户端先用访问token换取短时有效的一次性票据，
+ * 再把票据放在通知流的查询参数中，访问token不会出现在URL、代理日志和浏览器历史中。
+ * 票据在Redis中映射到换取它的访问token，使用时原子地取出并删除，认证仍按该访问token校验（过期、吊销）
+ */
+@Service
+public class StreamTicketService {
+
+    // Redis键前缀：票据 string(访问token)
+    private static final String TICKET_PREFIX = "sse_ticket:";
+
+    /**
+     * 取出并删除票据，兼容不支持GETDEL的Redis版本
+     */
+    private static final RedisScript<String> CONSUME = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[1]) " +
+            "if v then redis.call('DEL', KEYS[1]) end " +
+            "return v", String.class);
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 票据有效期（秒），只需覆盖客户端拿到票据到发起连接的时间
+    @Value("${sse.ticket-ttl-seconds:30}")
+    private long ticketTtlSeconds;
+
+    /**
+     * 为访问token签发票据
+     * @param accessToken 访问token
+     * @return 票据
+     */
+    public String issue(String accessToken) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String ticket = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        stringRedisTemplate.opsForValue().set(TICKET_PREFIX + ticket, accessToken, Duration.ofSeconds(ticketTtlSeconds));
+        return ticket;
+    }
+
+    /**
+     * 使用票据，票据只能使用一次
+     * @param ticket 票据
+     * @return 换取票据的访问token，票据不存在、已过期或已使用时返回null
+     */
+    public String consume(String ticket) {
+        if (ticket == null || ticket.isBlank()) {
+            return null;
+        }
+        return stringRedisTemplate.execute(CONSUME, List.of(TICKET_PREFIX + ticket));
+    }
+
+    /**
+     * 获取票据有效期
+     * @return 有效期（秒）
+     */
+    public long getTicketTtlSeconds() {
+        return ticketTtlSeconds;
+    }
+}
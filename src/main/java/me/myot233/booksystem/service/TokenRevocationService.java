@@ -0,0 +1,245 @@
+package me.myot233.booksystem.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.security.PrincipalCache;
+import me.myot233.booksystem.util.BloomFilter;
+import me.myot233.booksystem.util.VerifiedToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * token吊销服务
+ * 吊销记录保存在Redis有序集合中：单个token按jti记录，分值为token过期时间；
+ * 停用、删除或修改了凭据的用户按用户名记录，分值为吊销时间，之前签发的token全部失效。
+ * 每个节点在内存中维护被吊销token的布隆过滤器，绝大多数请求在本地判定未吊销，
+ * 只有布隆过滤器命中时才查询Redis确认；用户吊销数量少，在内存中保存“用户名 -> 吊销时间”，直接在本地比较。
+ * 新的吊销通过Redis频道同步到其它节点，过期的吊销记录定期清理，同时重建布隆过滤器并与用户吊销表对账。
+ * 用户信息变更时也通过同一频道通知所有节点失效缓存的认证主体
+ */
+@Slf4j
+@Service
+public class TokenRevocationService implements MessageListener {
+
+    // Redis键：被吊销的token zset(jti -> 过期时间)
+    private static final String REVOKED_TOKENS_KEY = "auth_revoked_tokens";
+    // Redis键：被吊销的用户 zset(用户名 -> 吊销时间)
+    private static final String REVOKED_USERS_KEY = "auth_revoked_users";
+    // 吊销同步频道，消息内容为“jti:token标识”、“user:吊销时间:用户名”或“principal:用户名”
+    private static final String REVOKED_CHANNEL = "auth_revoked";
+
+    private static final String TOKEN_PREFIX = "jti:";
+    private static final String USER_PREFIX = "user:";
+    private static final String PRINCIPAL_PREFIX = "principal:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    // 布隆过滤器预期元素数
+    @Value("${security.revocation.expected-entries:100000}")
+    private long expectedEntries;
+
+    // 布隆过滤器误判率
+    @Value("${security.revocation.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    // 用户吊销记录的保留时间，与最长的token有效期（刷新token）一致
+    @Value("${jwt.refresh-expiration:604800000}")
+    private long userRevocationRetentionMs;
+
+    private volatile BloomFilter filter;
+
+    // 用户名 -> 吊销时间（毫秒）
+    private final Map<String, Long> revokedUsers = new ConcurrentHashMap<>();
+
+    // 重建期间收到的吊销同时写入正在构建的过滤器
+    private volatile BloomFilter building;
+
+    /**
+     * 订阅吊销频道
+     */
+    @PostConstruct
+    public void init() {
+        filter = new BloomFilter(expectedEntries, falsePositiveRate);
+        listenerContainer.addMessageListener(this, new ChannelTopic(REVOKED_CHANNEL));
+    }
+
+    /**
+     * 吊销单个token
+     * @param token 已校验的token
+     */
+    public void revokeToken(VerifiedToken token) {
+        if (token.id() == null || token.isExpired()) {
+            return;
+        }
+        stringRedisTemplate.opsForZSet().add(REVOKED_TOKENS_KEY, token.id(), token.expiration());
+        publish(TOKEN_PREFIX + token.id());
+    }
+
+    /**
+     * 吊销用户在此之前签发的所有token
+     * @param username 用户名
+     */
+    public void revokeUser(String username) {
+        if (username == null) {
+            return;
+        }
+        long revokedAt = System.currentTimeMillis();
+        stringRedisTemplate.opsForZSet().add(REVOKED_USERS_KEY, username, revokedAt);
+        publish(USER_PREFIX + revokedAt + ":" + username);
+    }
+
+    /**
+     * 在所有节点失效用户缓存的认证主体
+     * @param username 用户名
+     */
+    public void invalidatePrincipal(String username) {
+        if (username == null) {
+            return;
+        }
+        publish(PRINCIPAL_PREFIX + username);
+    }
+
+    /**
+     * 计算新token的签发时间
+     * token的签发时间只精确到秒，与吊销同一秒内签发的token会被判定为吊销前签发，
+     * 因此签发时间至少取吊销时间所在秒的下一秒。以Redis中的记录为准，避免吊销消息尚未同步到本节点
+     * @param username 用户名
+     * @return 签发时间（毫秒）
+     */
+    public long issueTime(String username) {
+        long now = System.currentTimeMillis();
+        long revokedAt = revokedUsers.getOrDefault(username, -1L);
+        try {
+            Double score = stringRedisTemplate.opsForZSet().score(REVOKED_USERS_KEY, username);
+            if (score != null) {
+                revokedAt = Math.max(revokedAt, score.longValue());
+            }
+        } catch (Exception e) {
+            log.warn("查询用户吊销时间失败: {}", e.getMessage());
+        }
+        return revokedAt < 0 ? now : Math.max(now, (revokedAt / 1000 + 1) * 1000);
+    }
+
+    /**
+     * 判断token是否已被吊销
+     * Redis不可用时，布隆过滤器命中的token按已吊销处理
+     * @param token 已校验的token
+     * @return 是否已吊销
+     */
+    public boolean isRevoked(VerifiedToken token) {
+        Long revokedAt = revokedUsers.get(token.subject());
+        // 签发时间只精确到秒，与吊销同一秒内签发的token也按已吊销处理（新token的签发时间见issueTime）
+        if (revokedAt != null && token.issuedAt() <= revokedAt) {
+            return true;
+        }
+        if (token.id() == null || !filter.mightContain(TOKEN_PREFIX + token.id())) {
+            return false;
+        }
+        try {
+            return stringRedisTemplate.opsForZSet().score(REVOKED_TOKENS_KEY, token.id()) != null;
+        } catch (Exception e) {
+            log.warn("查询token吊销状态失败: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 其它节点吊销了token或用户，加入本地布隆过滤器或用户吊销表；用户信息变更时失效本地缓存的认证主体
+     * @param message 消息
+     * @param pattern 订阅模式
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        remember(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 启动时及定期清理过期的吊销记录，按剩余记录重建布隆过滤器并对账用户吊销表
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${security.revocation.rebuild-interval-ms:600000}",
+            initialDelayString = "${security.revocation.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        try {
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().removeRangeByScore(REVOKED_TOKENS_KEY, 0, now);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(REVOKED_USERS_KEY, 0, now - userRevocationRetentionMs);
+
+            Set<ZSetOperations.TypedTuple<String>> users =
+                    stringRedisTemplate.opsForZSet().rangeWithScores(REVOKED_USERS_KEY, 0, -1);
+            if (users != null) {
+                // 取较新的吊销时间，重建期间收到的吊销不会被覆盖
+                users.forEach(user -> revokedUsers.merge(user.getValue(), user.getScore().longValue(), Math::max));
+            }
+            revokedUsers.values().removeIf(revokedAt -> revokedAt < now - userRevocationRetentionMs);
+
+            Long tokenCount = stringRedisTemplate.opsForZSet().zCard(REVOKED_TOKENS_KEY);
+            long total = tokenCount != null ? tokenCount : 0;
+            BloomFilter next = new BloomFilter(Math.max(expectedEntries, total * 2), falsePositiveRate);
+            building = next;
+            Set<String> tokens = stringRedisTemplate.opsForZSet().range(REVOKED_TOKENS_KEY, 0, -1);
+            if (tokens != null) {
+                tokens.forEach(id -> next.put(TOKEN_PREFIX + id));
+            }
+            filter = next;
+            log.debug("token吊销过滤器重建完成: token{} 用户{}", tokenCount, revokedUsers.size());
+        } catch (Exception e) {
+            // 保留原有过滤器，只多不少，不会漏判
+            log.warn("重建token吊销过滤器失败: {}", e.getMessage());
+        } finally {
+            building = null;
+        }
+    }
+
+    private void publish(String key) {
+        remember(key);
+        try {
+            stringRedisTemplate.convertAndSend(REVOKED_CHANNEL, key);
+        } catch (Exception e) {
+            log.warn("发布token吊销失败: {}", e.getMessage());
+        }
+    }
+
+    private void remember(String key) {
+        if (key.startsWith(PRINCIPAL_PREFIX)) {
+            principalCache.invalidate(key.substring(PRINCIPAL_PREFIX.length()));
+            return;
+        }
+        if (key.startsWith(USER_PREFIX)) {
+            int separator = key.indexOf(':', USER_PREFIX.length());
+            if (separator < 0) {
+                return;
+            }
+            long revokedAt = Long.parseLong(key.substring(USER_PREFIX.length(), separator));
+            revokedUsers.merge(key.substring(separator + 1), revokedAt, Math::max);
+            return;
+        }
+        filter.put(key);
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(key);
+        }
+    }
+}
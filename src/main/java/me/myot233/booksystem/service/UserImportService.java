@@ -0,0 +1,222 @@
+package me.myot233.booksystem.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import me.myot233.booksystem.dto.ImportReport;
+import me.myot233.booksystem.repository.UserRepository;
+import me.myot233.booksystem.security.PasswordHashingExecutor;
+import me.myot233.booksystem.util.ImportRecordReader;
+import me.myot233.booksystem.util.ImportRecordReader.ImportRecord;
+import me.myot233.booksystem.util.JdbcBatchUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 用户批量导入服务
+ * 逐行读取CSV或NDJSON，按批处理：先用一次查询排除已存在的用户名，
+ * 再在密码哈希线程池中并行计算哈希（只占用一半线程，保留登录的处理能力），
+ * 最后用JDBC批量插入。单行失败只计入报告，不影响同批其它行
+ */
+@Slf4j
+@Service
+public class UserImportService {
+
+    private static final String INSERT_SQL = "INSERT INTO users (username, password, real_name, email, phone, role, " +
+            "account_non_expired, account_non_locked, credentials_non_expired, enabled, create_time) " +
+            "VALUES (?, ?, ?, ?, ?, ?, TRUE, TRUE, TRUE, TRUE, ?)";
+
+    private static final Set<String> ROLES = Set.of("ROLE_USER", "ROLE_PARTNER", "ROLE_ADMIN");
+
+    // 哈希线程池拒绝时的重试间隔（毫秒）
+    private static final long REJECTED_RETRY_MS = 20;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 每批处理的行数
+    @Value("${import.batch-size:500}")
+    private int batchSize;
+
+    // 报告中最多列出的失败行数
+    @Value("${import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    // 导入占用的哈希线程许可，所有导入共用
+    private Semaphore hashPermits;
+
+    /**
+     * 按哈希线程数创建许可，导入最多占用一半线程，其余留给登录
+     */
+    @PostConstruct
+    public void init() {
+        hashPermits = new Semaphore(Math.max(1, passwordHashingExecutor.getPoolSize() / 2));
+    }
+
+    /**
+     * 导入用户
+     * @param in 请求体
+     * @param format 导入格式
+     * @return 导入报告
+     * @throws IOException 读取请求体失败
+     */
+    public ImportReport importUsers(InputStream in, ImportRecordReader.Format format) throws IOException {
+        long start = System.nanoTime();
+        ImportReport report = new ImportReport(maxReportedErrors);
+        // 本次导入中已出现的用户名
+        Set<String> seen = new HashSet<>();
+        List<PendingUser> batch = new ArrayList<>(batchSize);
+
+        try (ImportRecordReader reader = new ImportRecordReader(in, format, objectMapper)) {
+            ImportRecord record;
+            while ((record = reader.next()) != null) {
+                report.setReceived(report.getReceived() + 1);
+                PendingUser user = validate(record, seen, report);
+                if (user == null) {
+                    continue;
+                }
+                batch.add(user);
+                if (batch.size() >= batchSize) {
+                    writeBatch(batch, report);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch, report);
+        }
+
+        report.finish(start);
+        log.info("用户批量导入完成: 读取{} 新增{} 拒绝{} 耗时{}ms",
+                report.getReceived(), report.getInserted(), report.getRejected(), report.getElapsedMs());
+        return report;
+    }
+
+    /**
+     * 校验一行记录
+     * @return 待导入用户，校验失败返回null
+     */
+    private PendingUser validate(ImportRecord record, Set<String> seen, ImportReport report) {
+        if (record.error() != null) {
+            report.reject(record.line(), null, record.error());
+            return null;
+        }
+        String username = record.get("username");
+        if (username == null) {
+            report.reject(record.line(), null, "用户名不能为空");
+            return null;
+        }
+        if (username.length() > 255) {
+            report.reject(record.line(), username, "用户名过长");
+            return null;
+        }
+        String role = record.get("role");
+        if (role == null) {
+            role = "ROLE_USER";
+        } else if (!role.startsWith("ROLE_")) {
+            role = "ROLE_" + role.toUpperCase();
+        }
+        if (!ROLES.contains(role)) {
+            report.reject(record.line(), username, "不支持的角色: " + role);
+            return null;
+        }
+        if (!seen.add(username)) {
+            report.reject(record.line(), username, "用户名在导入数据中重复");
+            return null;
+        }
+        String password = record.get("password");
+        return new PendingUser(record.line(), username, password != null ? password : UserService.DEFAULT_PASSWORD,
+                record.get("realName"), record.get("email"), record.get("phone"), role);
+    }
+
+    /**
+     * 处理一批用户：排除已存在的用户名、并行计算哈希、批量插入
+     */
+    private void writeBatch(List<PendingUser> batch, ImportReport report) {
+        Set<String> existing = userRepository.findExistingUsernames(batch.stream().map(PendingUser::username).toList());
+        List<PendingUser> rows = new ArrayList<>(batch.size());
+        for (PendingUser user : batch) {
+            if (existing.contains(user.username())) {
+                report.reject(user.line(), user.username(), "用户名已存在");
+            } else {
+                rows.add(user);
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        List<String> hashes = hashAll(rows);
+        List<Object[]> args = new ArrayList<>(rows.size());
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = 0; i < rows.size(); i++) {
+            PendingUser user = rows.get(i);
+            args.add(new Object[]{user.username(), hashes.get(i), user.realName(), user.email(), user.phone(),
+                    user.role(), now});
+        }
+        List<Integer> failed = JdbcBatchUtil.batchUpdate(jdbcTemplate, INSERT_SQL, args);
+        for (int index : failed) {
+            PendingUser user = rows.get(index);
+            report.reject(user.line(), user.username(), "写入失败（用户名重复或数据无效）");
+        }
+        report.setInserted(report.getInserted() + rows.size() - failed.size());
+    }
+
+    /**
+     * 在密码哈希线程池中并行计算哈希，所有导入共用许可，同时最多占用一半线程；
+     * 线程池队列被登录请求占满时等待后重试，不在请求线程中计算
+     */
+    private List<String> hashAll(List<PendingUser> rows) {
+        List<CompletableFuture<String>> futures = new ArrayList<>(rows.size());
+        for (PendingUser user : rows) {
+            hashPermits.acquireUninterruptibly();
+            CompletableFuture<String> future;
+            while (true) {
+                try {
+                    future = passwordHashingExecutor.submit(() -> passwordEncoder.encode(user.password()));
+                    break;
+                } catch (RejectedExecutionException e) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(REJECTED_RETRY_MS));
+                }
+            }
+            future.whenComplete((hash, error) -> hashPermits.release());
+            futures.add(future);
+        }
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    /**
+     * 待导入的用户
+     */
+    private record PendingUser(long line, String username, String password, String realName,
+                               String email, String phone, String role) {
+    }
+}
@@ -1,30 +1,53 @@
 package me.myot233.booksystem.service;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import me.myot233.booksystem.entity.Book;
+import me.myot233.booksystem.dto.BorrowedBookView;
+import me.myot233.booksystem.dto.PageResult;
+import me.myot233.booksystem.dto.UserDTO;
+import me.myot233.booksystem.entity.BorrowRecord;
 import me.myot233.booksystem.entity.User;
+import me.myot233.booksystem.event.LoanClosedEvent;
+import me.myot233.booksystem.event.LoanOpenedEvent;
 import me.myot233.booksystem.repository.BookRepository;
+import me.myot233.booksystem.repository.BorrowRecordRepository;
 import me.myot233.booksystem.repository.UserRepository;
+import me.myot233.booksystem.security.PrincipalCache;
 
 /**
  * 用户服务类
  */
 @Service
-public class UserService implements UserDetailsService {
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
+
+    // 未指定密码时的初始密码
+    public static final String DEFAULT_PASSWORD = "abc123";
+
+    // 用户列表允许的排序字段
+    private static final Set<String> USER_SORT_FIELDS = Set.of("id", "username", "createTime", "lastLoginTime");
 
     private final UserRepository userRepository;
     private final BookRepository bookRepository;
@@ -32,17 +55,32 @@ public class UserService implements UserDetailsService {
     private final AnalyticsService analyticsService;
     private final BookService bookService;
     private final StatisticsService statisticsService;
+    private final BorrowRecordRepository borrowRecordRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationService tokenRevocationService;
+
+    // 借阅期限（天）
+    @Value("${library.loan-days:30}")
+    private int loanDays;
 
     @Autowired
     public UserService(UserRepository userRepository, BookRepository bookRepository,
                       PasswordEncoder passwordEncoder, AnalyticsService analyticsService,
-                      BookService bookService, StatisticsService statisticsService) {
+                      BookService bookService, StatisticsService statisticsService,
+                      BorrowRecordRepository borrowRecordRepository,
+                      ApplicationEventPublisher eventPublisher, PrincipalCache principalCache,
+                      TokenRevocationService tokenRevocationService) {
         this.userRepository = userRepository;
         this.bookRepository = bookRepository;
         this.passwordEncoder = passwordEncoder;
         this.analyticsService = analyticsService;
         this.bookService = bookService;
         this.statisticsService = statisticsService;
+        this.borrowRecordRepository = borrowRecordRepository;
+        this.eventPublisher = eventPublisher;
+        this.principalCache = principalCache;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     /**
@@ -58,11 +96,62 @@ public class UserService implements UserDetailsService {
     }
 
     /**
-     * 获取所有用户
-     * @return 用户列表
+     * 登录成功后将强度低于配置值的密码哈希升级为新哈希
+     * 只替换哈希的存储形式，密码本身未变，不吊销已签发的token
+     * @param user 用户详情
+     * @param newPassword 新的密码哈希
+     * @return 更新后的用户详情
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userRepository.updatePassword(user.getUsername(), newPassword);
+        invalidatePrincipal(user.getUsername());
+        if (user instanceof User entity) {
+            entity.setPassword(newPassword);
+            return entity;
+        }
+        return loadUserByUsername(user.getUsername());
+    }
+
+    /**
+     * 分页查询用户
+     * @param keyword 用户名、姓名或邮箱前缀，为空时不过滤
+     * @param page 页码（从0开始）
+     * @param size 每页条数
+     * @param sort 排序字段，只允许 id、username、createTime、lastLoginTime
+     * @param descending 是否倒序
+     * @param withTotal 是否统计总数，不统计时只判断是否有下一页
+     * @return 用户分页结果
+     * @throws IllegalArgumentException 排序字段不允许
+     */
+    public PageResult<UserDTO> getUsers(String keyword, int page, int size, String sort,
+                                        boolean descending, boolean withTotal) {
+        if (!USER_SORT_FIELDS.contains(sort)) {
+            throw new IllegalArgumentException("不支持的排序字段: " + sort);
+        }
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        // 以ID作为第二排序字段，保证翻页顺序稳定
+        Sort order = "id".equals(sort)
+                ? Sort.by(direction, "id")
+                : Sort.by(direction, sort).and(Sort.by(direction, "id"));
+        Pageable pageable = PageRequest.of(page, size, order);
+
+        if (keyword == null || keyword.isBlank()) {
+            return PageResult.of(withTotal
+                    ? userRepository.findUserPage(pageable)
+                    : userRepository.findUserSlice(pageable));
+        }
+        String pattern = escapeLike(keyword.trim());
+        return PageResult.of(withTotal
+                ? userRepository.searchUserPage(pattern, pageable)
+                : userRepository.searchUserSlice(pattern, pageable));
+    }
+
+    /**
+     * 转义LIKE通配符
      */
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
+    private static String escapeLike(String keyword) {
+        return keyword.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 
     /**
@@ -91,7 +180,7 @@ public class UserService implements UserDetailsService {
     @Transactional
     public User createUser(User user) {
         // 加密密码
-        user.setPassword(passwordEncoder.encode(user.getPassword() == null ? "abc123" : user.getPassword() ));
+        user.setPassword(passwordEncoder.encode(user.getPassword() == null ? DEFAULT_PASSWORD : user.getPassword()));
         // 设置创建时间
         user.setCreateTime(new Date());
         return userRepository.save(user);
@@ -106,10 +195,21 @@ public class UserService implements UserDetailsService {
     public Optional<User> updateUser(User user) {
         return userRepository.findById(user.getId())
                 .map(existingUser -> {
+                    boolean passwordChanged = !existingUser.getPassword().equals(user.getPassword());
                     // 如果密码已更改，则加密新密码
-                    if (!existingUser.getPassword().equals(user.getPassword())) {
+                    if (passwordChanged) {
                         user.setPassword(passwordEncoder.encode(user.getPassword()));
                     }
+                    // 凭据、角色或账户状态变化时吊销已签发的token
+                    if (passwordChanged
+                            || !Objects.equals(existingUser.getUsername(), user.getUsername())
+                            || !Objects.equals(existingUser.getRole(), user.getRole())
+                            || !user.isEnabled() || !user.isAccountNonLocked()) {
+                        revokeTokens(existingUser.getUsername());
+                    }
+                    // 用户名、密码或角色可能变化，失效缓存的认证主体
+                    invalidatePrincipal(existingUser.getUsername());
+                    invalidatePrincipal(user.getUsername());
                     return userRepository.save(user);
                 });
     }
@@ -120,13 +220,17 @@ public class UserService implements UserDetailsService {
      */
     @Transactional
     public void deleteUser(Long id) {
+        userRepository.findById(id).ifPresent(user -> {
+            invalidatePrincipal(user.getUsername());
+            revokeTokens(user.getUsername());
+        });
         userRepository.deleteById(id);
     }
 
     /**
      * 借阅图书
      * @param bookId 图书ID
-     * @return 更新后的用户
+     * @return 借阅的用户
      */
     @Transactional
     public Optional<User> borrowBook(Long bookId) {
@@ -135,39 +239,14 @@ public class UserService implements UserDetailsService {
             return Optional.empty();
         }
 
-        String username = authentication.getName();
-        Optional<User> userOpt = userRepository.findByUsername(username);
-
-        if (userOpt.isPresent()) {
-            User user = userOpt.get();
-
-            // 使用BookService处理图书借阅逻辑，避免并发冲突
-            Optional<Book> borrowedBookOpt = bookService.borrowBook(bookId);
-
-            if (borrowedBookOpt.isPresent()) {
-                Book book = borrowedBookOpt.get();
-
-                // 更新用户借阅信息
-                user.getBorrowedBooks().add(book);
-                User savedUser = userRepository.save(user);
-
-                // 发送借阅事件到分析服务
-                analyticsService.sendBorrowEvent(bookId, user.getId());
-
-                // 更新用户活跃度
-                statisticsService.updateUserActivity(user.getId());
-
-                return Optional.of(savedUser);
-            }
-        }
-
-        return Optional.empty();
+        return userRepository.findByUsername(authentication.getName())
+                .flatMap(user -> borrowBookForUser(user, bookId));
     }
 
     /**
      * 归还图书
      * @param bookId 图书ID
-     * @return 更新后的用户
+     * @return 归还的用户
      */
     @Transactional
     public Optional<User> returnBook(Long bookId) {
@@ -176,129 +255,154 @@ public class UserService implements UserDetailsService {
             return Optional.empty();
         }
 
-        String username = authentication.getName();
-        Optional<User> userOpt = userRepository.findByUsername(username);
-
-        if (userOpt.isPresent()) {
-            User user = userOpt.get();
-
-            // 检查用户是否借阅了该图书
-            if (user.getBorrowedBooks().removeIf(b -> b.getId().equals(bookId))) {
-                // 使用BookService处理图书归还逻辑，避免并发冲突
-                bookService.returnBook(bookId);
-
-                User savedUser = userRepository.save(user);
-
-                // 发送归还事件到分析服务
-                analyticsService.sendReturnEvent(bookId, user.getId());
-
-                // 更新用户活跃度
-                statisticsService.updateUserActivity(user.getId());
-
-                return Optional.of(savedUser);
-            }
-        }
-
-        return Optional.empty();
+        return userRepository.findByUsername(authentication.getName())
+                .flatMap(user -> returnBookForUser(user, bookId));
     }
 
     /**
      * 管理员帮指定用户借阅图书
      * @param userId 用户ID
      * @param bookId 图书ID
-     * @return 更新后的用户
+     * @return 借阅的用户
      */
     @Transactional
     public Optional<User> borrowBookForUser(Long userId, Long bookId) {
-        Optional<User> userOpt = userRepository.findById(userId);
-
-        if (userOpt.isPresent()) {
-            User user = userOpt.get();
-
-            // 使用BookService处理图书借阅逻辑，避免并发冲突
-            Optional<Book> borrowedBookOpt = bookService.borrowBook(bookId);
-
-            if (borrowedBookOpt.isPresent()) {
-                Book book = borrowedBookOpt.get();
-
-                // 更新用户借阅信息
-                user.getBorrowedBooks().add(book);
-                User savedUser = userRepository.save(user);
-
-                // 发送借阅事件到分析服务
-                analyticsService.sendBorrowEvent(bookId, user.getId());
-
-                // 更新用户活跃度
-                statisticsService.updateUserActivity(user.getId());
-
-                return Optional.of(savedUser);
-            }
-        }
-
-        return Optional.empty();
+        return userRepository.findById(userId)
+                .flatMap(user -> borrowBookForUser(user, bookId));
     }
 
     /**
      * 管理员帮指定用户归还图书
      * @param userId 用户ID
      * @param bookId 图书ID
-     * @return 更新后的用户
+     * @return 归还的用户
      */
     @Transactional
     public Optional<User> returnBookForUser(Long userId, Long bookId) {
-        Optional<User> userOpt = userRepository.findById(userId);
+        return userRepository.findById(userId)
+                .flatMap(user -> returnBookForUser(user, bookId));
+    }
+
+    /**
+     * 借阅图书并写入借阅记录
+     * @param user 用户
+     * @param bookId 图书ID
+     * @return 借阅成功时返回用户
+     */
+    private Optional<User> borrowBookForUser(User user, Long bookId) {
+        // 使用BookService处理图书借阅逻辑，避免并发冲突
+        if (bookService.borrowBook(bookId).isEmpty()) {
+            return Optional.empty();
+        }
+        createBorrowRecord(user.getId(), bookId);
 
-        if (userOpt.isPresent()) {
-            User user = userOpt.get();
+        // 发送借阅事件到分析服务
+        analyticsService.sendBorrowEvent(bookId, user.getId());
 
-            // 检查用户是否借阅了该图书
-            if (user.getBorrowedBooks().removeIf(b -> b.getId().equals(bookId))) {
-                // 使用BookService处理图书归还逻辑，避免并发冲突
-                bookService.returnBook(bookId);
+        // 更新用户活跃度
+        statisticsService.updateUserActivity(user.getId());
 
-                User savedUser = userRepository.save(user);
+        return Optional.of(user);
+    }
+
+    /**
+     * 结束借阅记录并归还图书
+     * @param user 用户
+     * @param bookId 图书ID
+     * @return 归还成功时返回用户，用户未借阅该图书时返回空
+     */
+    private Optional<User> returnBookForUser(User user, Long bookId) {
+        // 检查用户是否借阅了该图书
+        if (!closeBorrowRecord(user.getId(), bookId)) {
+            return Optional.empty();
+        }
+        // 使用BookService处理图书归还逻辑，避免并发冲突
+        bookService.returnBook(bookId);
+
+        // 发送归还事件到分析服务
+        analyticsService.sendReturnEvent(bookId, user.getId());
 
-                // 发送归还事件到分析服务
-                analyticsService.sendReturnEvent(bookId, user.getId());
+        // 更新用户活跃度
+        statisticsService.updateUserActivity(user.getId());
 
-                // 更新用户活跃度
-                statisticsService.updateUserActivity(user.getId());
+        return Optional.of(user);
+    }
 
-                return Optional.of(savedUser);
+    /**
+     * 失效缓存的认证主体，事务提交后再通知所有节点失效一次，避免提交前被并发请求重新缓存旧数据
+     * @param username 用户名
+     */
+    private void invalidatePrincipal(String username) {
+        principalCache.invalidate(username);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            tokenRevocationService.invalidatePrincipal(username);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                tokenRevocationService.invalidatePrincipal(username);
             }
+        });
+    }
+
+    /**
+     * 事务提交后吊销用户已签发的token
+     * @param username 用户名
+     */
+    private void revokeTokens(String username) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            tokenRevocationService.revokeUser(username);
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                tokenRevocationService.revokeUser(username);
+            }
+        });
+    }
 
-        return Optional.empty();
+    /**
+     * 创建借阅记录
+     * @param userId 用户ID
+     * @param bookId 图书ID
+     */
+    private void createBorrowRecord(Long userId, Long bookId) {
+        Date now = new Date();
+        BorrowRecord record = new BorrowRecord();
+        record.setUserId(userId);
+        record.setBookId(bookId);
+        record.setBorrowTime(now);
+        record.setDueTime(new Date(now.getTime() + TimeUnit.DAYS.toMillis(loanDays)));
+        borrowRecordRepository.save(record);
+        eventPublisher.publishEvent(new LoanOpenedEvent(record.getId(), record.getDueTime()));
     }
 
     /**
-     * 获取用户借阅的图书
+     * 结束最早的一条未归还借阅记录
+     * 用条件更新结束记录，并发归还同一条记录时只有一个请求成功，其余请求依次尝试下一条未归还记录
      * @param userId 用户ID
-     * @return 图书列表
+     * @param bookId 图书ID
+     * @return 是否结束了一条借阅记录
      */
-    @Transactional(readOnly = true)
-    public List<Book> getBorrowedBooks(Long userId) {
-        return userRepository.findById(userId)
-                .map(user -> {
-                    // 强制初始化懒加载集合
-                    List<Book> borrowedBooks = user.getBorrowedBooks();
-                    // 触发懒加载，确保数据在事务内被加载
-                    borrowedBooks.size();
-                    return new ArrayList<>(borrowedBooks);
-                })
-                .orElse(new ArrayList<>());
+    private boolean closeBorrowRecord(Long userId, Long bookId) {
+        Date now = new Date();
+        for (Long recordId : borrowRecordRepository.findOpenIds(userId, bookId)) {
+            if (borrowRecordRepository.closeIfOpen(recordId, now) == 1) {
+                eventPublisher.publishEvent(new LoanClosedEvent(recordId));
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * 更新最后登录时间
-     * @param username 用户名
+     * 获取用户借阅的图书
+     * @param userId 用户ID
+     * @return 已借图书列表
      */
-    @Transactional
-    public void updateLastLoginTime(String username) {
-        userRepository.findByUsername(username)
-                .ifPresent(user -> {
-                    user.setLastLoginTime(new Date());
-                    userRepository.save(user);
-                });
+    public List<BorrowedBookView> getBorrowedBooks(Long userId) {
+        return borrowRecordRepository.findOpenBooksByUserId(userId);
     }
 }
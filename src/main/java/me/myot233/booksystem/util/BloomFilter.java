@@ -0,0 +1,100 @@
+package me.myot233.booksystem.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 字符串布隆过滤器
+ * 判断为不存在时一定不存在，判断为存在时可能误判，需要再到权威数据源确认。
+ * 位数组使用原子操作，允许并发添加和查询；不支持删除，过期元素需要整体重建
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * 按预期元素数和误判率计算位数组大小与哈希函数个数
+     * @param expectedEntries 预期元素数
+     * @param falsePositiveRate 误判率（0~1）
+     */
+    public BloomFilter(long expectedEntries, double falsePositiveRate) {
+        long entries = Math.max(1, expectedEntries);
+        double rate = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        long size = (long) Math.ceil(-entries * Math.log(rate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (size + 63) >>> 6));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words << 6;
+        this.hashCount = (int) Math.max(1, Math.min(16, Math.round((double) bitCount / entries * Math.log(2))));
+    }
+
+    /**
+     * 添加元素
+     * @param value 元素
+     */
+    public void put(String value) {
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * 判断元素是否可能存在
+     * @param value 元素
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(String value) {
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 位数组大小
+     * @return 位数
+     */
+    long bitCount() {
+        return bitCount;
+    }
+
+    /**
+     * 哈希函数个数
+     * @return 哈希函数个数
+     */
+    int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * 带种子的64位FNV-1a哈希，结果再做一次混合
+     */
+    private static long hash(String value, long seed) {
+        long hash = 0xCBF29CE484222325L ^ seed;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
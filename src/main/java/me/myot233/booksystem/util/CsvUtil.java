@@ -0,0 +1,94 @@
+package me.myot233.booksystem.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV工具类
+ * 按RFC 4180处理双引号包裹的字段和转义的双引号，每条记录占一行
+ */
+public final class CsvUtil {
+
+    private CsvUtil() {
+    }
+
+    /**
+     * 解析一行CSV
+     * @param line 行内容
+     * @return 字段列表
+     * @throws IllegalArgumentException 引号未闭合
+     */
+    public static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+            i++;
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("CSV引号未闭合");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * 转义单个字段，包含逗号、引号或换行时用双引号包裹
+     * @param value 字段值，null输出为空
+     * @return 转义后的字段
+     */
+    public static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        boolean needsQuote = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                needsQuote = true;
+                break;
+            }
+        }
+        if (!needsQuote) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * 拼接一行CSV（不含换行符）
+     * @param values 字段值
+     * @return 行内容
+     */
+    public static String formatLine(Object... values) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(escape(values[i] == null ? null : values[i].toString()));
+        }
+        return line.toString();
+    }
+}
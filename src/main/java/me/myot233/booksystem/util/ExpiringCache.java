@@ -0,0 +1,135 @@
+package me.myot233.booksystem.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有容量上限、条目按各自过期时间失效的并发缓存
+ * 读写直接访问ConcurrentHashMap，不持有全局锁；超出容量时从上次停下的位置继续取少量条目采样，
+ * 淘汰其中已过期或最久未访问的一个（近似LRU）。同一时刻只有一个线程执行淘汰，其它线程不等待
+ * @param <K> 键
+ * @param <V> 值
+ */
+public class ExpiringCache<K, V> {
+
+    // 每次淘汰采样的条目数
+    private static final int SAMPLE_SIZE = 5;
+
+    private final ConcurrentHashMap<K, Node<V>> entries = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // 采样游标，由evictionLock保护
+    private Iterator<Map.Entry<K, Node<V>>> cursor;
+
+    /**
+     * @param maxSize 最大条目数
+     */
+    public ExpiringCache(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * 获取未过期的值
+     * @param key 键
+     * @return 值，不存在或已过期时返回null
+     */
+    public V get(K key) {
+        Node<V> node = entries.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (node.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key, node);
+            return null;
+        }
+        node.lastAccess = System.nanoTime();
+        return node.value;
+    }
+
+    /**
+     * 写入值
+     * @param key 键
+     * @param value 值
+     * @param expiresAt 过期时间（毫秒）
+     */
+    public void put(K key, V value, long expiresAt) {
+        entries.put(key, new Node<>(value, expiresAt, System.nanoTime()));
+        if (entries.size() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * 删除条目
+     * @param key 键
+     */
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * 当前条目数
+     * @return 条目数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 采样淘汰直到不超过容量，已有线程在淘汰时直接返回
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            while (entries.size() > maxSize) {
+                Map.Entry<K, Node<V>> victim = null;
+                for (int i = 0; i < SAMPLE_SIZE; i++) {
+                    if (cursor == null || !cursor.hasNext()) {
+                        cursor = entries.entrySet().iterator();
+                        if (!cursor.hasNext()) {
+                            return;
+                        }
+                    }
+                    Map.Entry<K, Node<V>> sampled = cursor.next();
+                    if (sampled.getValue().expiresAt <= now) {
+                        victim = sampled;
+                        break;
+                    }
+                    if (victim == null || sampled.getValue().lastAccess - victim.getValue().lastAccess < 0) {
+                        victim = sampled;
+                    }
+                }
+                entries.remove(victim.getKey(), victim.getValue());
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Node<V> {
+        private final V value;
+        private final long expiresAt;
+        private volatile long lastAccess;
+
+        private Node(V value, long expiresAt, long lastAccess) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package me.myot233.booksystem.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * 分页游标（创建时间 + ID）
+ * 对客户端以不透明字符串的形式暴露
+ * @param time 创建时间（毫秒）
+ * @param id 记录ID
+ */
+public record FeedCursor(long time, long id) {
+
+    /**
+     * 根据记录创建游标
+     * @param createTime 创建时间
+     * @param id 记录ID
+     * @return 游标
+     */
+    public static FeedCursor of(Date createTime, Long id) {
+        return new FeedCursor(createTime.getTime(), id);
+    }
+
+    /**
+     * 获取创建时间
+     * @return 创建时间
+     */
+    public Date createTime() {
+        return new Date(time);
+    }
+
+    /**
+     * 编码为不透明字符串
+     * @return 游标字符串
+     */
+    public String encode() {
+        String raw = time + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标字符串
+     * @param cursor 游标字符串
+     * @return 游标
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    public static FeedCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            return new FeedCursor(Long.parseLong(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的游标: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package me.myot233.booksystem.util;
+
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮
+ * 每层有 2^wheelBits 个槽，第 n 层每个槽跨度为 tickMs * 2^(wheelBits*n)。
+ * 槽内定时器用双向链表保存，添加与取消都是 O(1)；
+ * 推进时只处理当前刻度的槽，高层槽在低位归零时逐级下沉到低层。
+ * 所有方法都加锁，到期回调在锁内执行，回调中不应做耗时操作。
+ *
+ * @param <T> 定时器携带的数据类型
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelBits;
+    private final int levels;
+    private final long mask;
+    private final Bucket<T>[][] wheels;
+
+    // 最后一次处理过的刻度
+    private long currentTick;
+    private int size;
+
+    /**
+     * 创建时间轮
+     * @param tickMs 刻度（毫秒）
+     * @param wheelBits 每层槽数的位数
+     * @param levels 层数
+     * @param startTimeMs 起始时间（毫秒）
+     */
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimingWheel(long tickMs, int wheelBits, int levels, long startTimeMs) {
+        if (tickMs <= 0 || wheelBits <= 0 || levels <= 0 || (long) wheelBits * levels >= 63) {
+            throw new IllegalArgumentException("时间轮参数无效");
+        }
+        this.tickMs = tickMs;
+        this.wheelBits = wheelBits;
+        this.levels = levels;
+        this.mask = (1L << wheelBits) - 1;
+        this.wheels = new Bucket[levels][1 << wheelBits];
+        for (Bucket<T>[] wheel : wheels) {
+            for (int i = 0; i < wheel.length; i++) {
+                wheel[i] = new Bucket<>();
+            }
+        }
+        this.currentTick = startTimeMs / tickMs;
+    }
+
+    /**
+     * 添加定时器，已过期的时间在下一个刻度触发
+     * @param deadlineMs 触发时间（毫秒）
+     * @param payload 携带数据
+     * @return 定时器，可用于取消
+     */
+    public synchronized Timeout<T> schedule(long deadlineMs, T payload) {
+        Timeout<T> timeout = new Timeout<>(this, Math.max(deadlineMs / tickMs, currentTick + 1), payload);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * 取消定时器
+     * @param timeout 定时器
+     * @return 是否取消成功（已触发或已取消时返回false）
+     */
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout == null || timeout.wheel != this || timeout.bucket == null) {
+            return false;
+        }
+        timeout.bucket.remove(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * 推进到指定时间，触发所有到期的定时器
+     * @param nowMs 当前时间（毫秒）
+     * @param expired 到期回调
+     * @return 本次触发的定时器数量
+     */
+    public synchronized int advance(long nowMs, Consumer<Timeout<T>> expired) {
+        long targetTick = nowMs / tickMs;
+        int fired = 0;
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                // 没有定时器时直接跳到目标刻度
+                currentTick = targetTick;
+                break;
+            }
+            currentTick++;
+            cascade();
+            Bucket<T> bucket = wheels[0][(int) (currentTick & mask)];
+            Timeout<T> timeout;
+            while ((timeout = bucket.head) != null) {
+                bucket.remove(timeout);
+                size--;
+                fired++;
+                expired.accept(timeout);
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * 当前未触发的定时器数量
+     * @return 定时器数量
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 低位归零时把高层对应槽的定时器下沉到低层，先处理高层
+     */
+    private void cascade() {
+        int top = 0;
+        while (top + 1 < levels && (currentTick & ((1L << (wheelBits * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level >= 1; level--) {
+            // 先摘下整条链表，超出范围的定时器可能放回同一个槽
+            Timeout<T> timeout = wheels[level][(int) ((currentTick >>> (wheelBits * level)) & mask)].detach();
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.prev = null;
+                timeout.next = null;
+                place(timeout);
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * 按触发刻度与当前刻度的最高不同位选择层和槽
+     */
+    private void place(Timeout<T> timeout) {
+        long deadline = timeout.deadlineTick;
+        int level = 0;
+        while (level < levels - 1 && (deadline >>> (wheelBits * (level + 1))) != (currentTick >>> (wheelBits * (level + 1)))) {
+            level++;
+        }
+        wheels[level][(int) ((deadline >>> (wheelBits * level)) & mask)].add(timeout);
+    }
+
+    /**
+     * 定时器
+     *
+     * @param <T> 携带数据类型
+     */
+    public static final class Timeout<T> {
+        private final HierarchicalTimingWheel<T> wheel;
+        private final long deadlineTick;
+        private final T payload;
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(HierarchicalTimingWheel<T> wheel, long deadlineTick, T payload) {
+            this.wheel = wheel;
+            this.deadlineTick = deadlineTick;
+            this.payload = payload;
+        }
+
+        /**
+         * 取消该定时器
+         * @return 是否取消成功
+         */
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * 时间槽，保存定时器的双向链表
+     */
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+
+        private void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        private Timeout<T> detach() {
+            Timeout<T> first = head;
+            head = null;
+            return first;
+        }
+
+        private void remove(Timeout<T> timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package me.myot233.booksystem.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量导入记录读取器
+ * 逐行读取CSV（首行为表头）或NDJSON（每行一个JSON对象），不把整个请求体读入内存。
+ * 单行格式错误时返回带错误信息的记录，由调用方计入失败行后继续读取
+ */
+public class ImportRecordReader implements Closeable {
+
+    /**
+     * 导入格式
+     */
+    public enum Format {
+        CSV,
+        NDJSON;
+
+        /**
+         * 根据格式参数或请求内容类型确定导入格式
+         * @param format 格式参数（csv、ndjson），可为空
+         * @param contentType 请求内容类型，可为空
+         * @return 导入格式
+         * @throws IllegalArgumentException 无法确定格式
+         */
+        public static Format resolve(String format, String contentType) {
+            String hint = format != null && !format.isBlank() ? format : contentType;
+            if (hint != null) {
+                String lower = hint.toLowerCase();
+                if (lower.contains("csv")) {
+                    return CSV;
+                }
+                if (lower.contains("ndjson") || lower.contains("jsonl") || lower.contains("json-seq")) {
+                    return NDJSON;
+                }
+            }
+            throw new IllegalArgumentException("仅支持CSV或NDJSON格式");
+        }
+    }
+
+    /**
+     * 一条导入记录
+     * @param line 行号（从1开始）
+     * @param fields 字段名 -> 值
+     * @param error 解析错误，为空表示解析成功
+     */
+    public record ImportRecord(long line, Map<String, String> fields, String error) {
+
+        /**
+         * 获取去掉首尾空白的字段值，空字符串视为null
+         * @param name 字段名
+         * @return 字段值
+         */
+        public String get(String name) {
+            String value = fields.get(name);
+            if (value == null) {
+                return null;
+            }
+            value = value.trim();
+            return value.isEmpty() ? null : value;
+        }
+    }
+
+    private final BufferedReader reader;
+    private final Format format;
+    private final ObjectMapper objectMapper;
+    private List<String> header;
+    private long lineNumber;
+
+    public ImportRecordReader(InputStream in, Format format, ObjectMapper objectMapper) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.format = format;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 读取下一条记录，跳过空行
+     * @return 记录，读完时返回null
+     * @throws IOException 读取失败
+     * @throws IllegalArgumentException CSV表头格式错误
+     */
+    public ImportRecord next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == Format.NDJSON) {
+                return parseJson(line);
+            }
+            if (header == null) {
+                header = CsvUtil.parseLine(line).stream().map(String::trim).toList();
+                continue;
+            }
+            return parseCsv(line);
+        }
+        return null;
+    }
+
+    private ImportRecord parseCsv(String line) {
+        List<String> values;
+        try {
+            values = CsvUtil.parseLine(line);
+        } catch (IllegalArgumentException e) {
+            return new ImportRecord(lineNumber, Map.of(), e.getMessage());
+        }
+        if (values.size() > header.size()) {
+            return new ImportRecord(lineNumber, Map.of(), "字段数多于表头");
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            fields.put(header.get(i), values.get(i));
+        }
+        return new ImportRecord(lineNumber, fields, null);
+    }
+
+    private ImportRecord parseJson(String line) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (IOException e) {
+            return new ImportRecord(lineNumber, Map.of(), "JSON格式错误");
+        }
+        if (node == null || !node.isObject()) {
+            return new ImportRecord(lineNumber, Map.of(), "每行必须是一个JSON对象");
+        }
+        Map<String, String> fields = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> iterator = node.fields();
+        while (iterator.hasNext()) {
+            Map.Entry<String, JsonNode> entry = iterator.next();
+            JsonNode value = entry.getValue();
+            fields.put(entry.getKey(), value.isNull() ? null : value.isValueNode() ? value.asText() : value.toString());
+        }
+        return new ImportRecord(lineNumber, fields, null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,64 @@
+package me.myot233.booksystem.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.BatchUpdateException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JDBC批量写入工具类
+ * 整批提交失败时只重试失败的行（驱动中止后未执行的行也算在内），
+ * 逐行执行以找出真正出错的行，其它行照常写入
+ */
+@Slf4j
+public final class JdbcBatchUtil {
+
+    private JdbcBatchUtil() {
+    }
+
+    /**
+     * 批量执行同一条语句
+     * @param jdbcTemplate JdbcTemplate
+     * @param sql 语句
+     * @param args 每行的参数
+     * @return 写入失败的行下标
+     */
+    public static List<Integer> batchUpdate(JdbcTemplate jdbcTemplate, String sql, List<Object[]> args) {
+        List<Integer> failed = new ArrayList<>();
+        if (args.isEmpty()) {
+            return failed;
+        }
+        try {
+            jdbcTemplate.batchUpdate(sql, args);
+            return failed;
+        } catch (DataAccessException e) {
+            log.debug("批量写入失败，逐行重试失败的行: {}", e.getMessage());
+            int[] counts = updateCounts(e);
+            for (int i = 0; i < args.size(); i++) {
+                boolean executed = counts != null && i < counts.length && counts[i] != Statement.EXECUTE_FAILED;
+                if (executed) {
+                    continue;
+                }
+                try {
+                    jdbcTemplate.update(sql, args.get(i));
+                } catch (DataAccessException rowError) {
+                    failed.add(i);
+                }
+            }
+            return failed;
+        }
+    }
+
+    private static int[] updateCounts(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BatchUpdateException batchError) {
+                return batchError.getUpdateCounts();
+            }
+        }
+        return null;
+    }
+}
@@ -2,18 +2,26 @@ package me.myot233.booksystem.util;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import me.myot233.booksystem.service.TokenRevocationService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.UUID;
 
 /**
  * JWT工具类
+ * 校验结果按token的SHA-256摘要缓存到过期为止，同一token的后续请求不再解析和校验签名；缓存读写不持有全局锁
  */
 @Component
 public class JwtUtil {
@@ -29,26 +37,57 @@ public class JwtUtil {
     @Value("${jwt.refresh-expiration:604800000}")
     private Long refreshExpiration;
 
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    // 已校验token缓存的最大条目数
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private int verifiedCacheMaxSize;
+
+    // token摘要 -> 已校验的声明，到token过期时失效，超出容量时淘汰近似最久未使用的条目
+    private ExpiringCache<String, VerifiedToken> verifiedTokens;
+
     /**
-     * 从token中获取用户名
+     * 创建已校验token缓存
      */
-    public String getUsernameFromToken(String token) {
-        return getClaimFromToken(token, Claims::getSubject);
+    @PostConstruct
+    public void init() {
+        verifiedTokens = new ExpiringCache<>(verifiedCacheMaxSize);
     }
 
     /**
-     * 从token中获取过期时间
+     * 校验token并返回声明，只解析一次
+     * @param token token
+     * @return 已校验的声明
+     * @throws JwtException 签名无效、格式错误或已过期
      */
-    public Date getExpirationDateFromToken(String token) {
-        return getClaimFromToken(token, Claims::getExpiration);
+    public VerifiedToken verify(String token) {
+        if (token == null || token.isEmpty()) {
+            throw new MalformedJwtException("token为空");
+        }
+        String digest = digest(token);
+        VerifiedToken verified = verifiedTokens.get(digest);
+        if (verified != null) {
+            return verified;
+        }
+
+        verified = VerifiedToken.of(getAllClaimsFromToken(token));
+        verifiedTokens.put(digest, verified, verified.expiration());
+        return verified;
+    }
+
+    /**
+     * 从token中获取用户名
+     */
+    public String getUsernameFromToken(String token) {
+        return verify(token).subject();
     }
 
     /**
-     * 从token中获取指定声明
+     * 从token中获取过期时间
      */
-    public <T> T getClaimFromToken(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = getAllClaimsFromToken(token);
-        return claimsResolver.apply(claims);
+    public Date getExpirationDateFromToken(String token) {
+        return new Date(verify(token).expiration());
     }
 
     /**
@@ -63,11 +102,15 @@ public class JwtUtil {
     }
 
     /**
-     * 检查token是否过期
+     * 计算token摘要作为缓存键，不在内存中保留原始token
      */
-    private Boolean isTokenExpired(String token) {
-        final Date expiration = getExpirationDateFromToken(token);
-        return expiration.before(new Date());
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     /**
@@ -80,22 +123,43 @@ public class JwtUtil {
 
     /**
      * 生成刷新token
+     * @param username 用户名
+     * @param familyId 令牌族ID
+     * @param tokenId token唯一标识
      */
-    public String generateRefreshToken(UserDetails userDetails) {
+    public String generateRefreshToken(String username, String familyId, String tokenId) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("type", "refresh");
-        return createToken(claims, userDetails.getUsername(), refreshExpiration);
+        claims.put("fam", familyId);
+        return createToken(claims, username, refreshExpiration, tokenId);
+    }
+
+    /**
+     * 获取刷新token有效期（毫秒）
+     */
+    public long getRefreshExpiration() {
+        return refreshExpiration;
     }
 
     /**
      * 创建token
      */
     private String createToken(Map<String, Object> claims, String subject, Long expiration) {
+        return createToken(claims, subject, expiration, UUID.randomUUID().toString());
+    }
+
+    /**
+     * 创建指定唯一标识的token
+     */
+    private String createToken(Map<String, Object> claims, String subject, Long expiration, String tokenId) {
+        // 签发时间晚于该用户最近一次吊销，吊销后立即重新登录得到的token不会被判定为已吊销
+        long issuedAt = tokenRevocationService.issueTime(subject);
         return Jwts.builder()
                 .claims(claims)
+                .id(tokenId)
                 .subject(subject)
-                .issuedAt(new Date(System.currentTimeMillis()))
-                .expiration(new Date(System.currentTimeMillis() + expiration))
+                .issuedAt(new Date(issuedAt))
+                .expiration(new Date(issuedAt + expiration))
                 .signWith(secretKey)
                 .compact();
     }
@@ -104,8 +168,11 @@ public class JwtUtil {
      * 验证token
      */
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = getUsernameFromToken(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        try {
+            return verify(token).subject().equals(userDetails.getUsername());
+        } catch (JwtException | IllegalArgumentException e) {
+            return false;
+        }
     }
 
     /**
@@ -113,7 +180,8 @@ public class JwtUtil {
      */
     public Boolean validateToken(String token) {
         try {
-            return !isTokenExpired(token);
+            verify(token);
+            return true;
         } catch (JwtException | IllegalArgumentException e) {
             return false;
         }
@@ -123,7 +191,7 @@ public class JwtUtil {
      * 从token中获取用户角色
      */
     public String getRoleFromToken(String token) {
-        return getClaimFromToken(token, claims -> claims.get("role", String.class));
+        return verify(token).role();
     }
 
     /**
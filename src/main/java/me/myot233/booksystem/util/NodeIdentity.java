@@ -0,0 +1,33 @@
+package me.myot233.booksystem.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * 当前节点标识
+ * 多节点部署时用于区分各实例，未配置时每次启动随机生成
+ */
+@Slf4j
+@Component
+public class NodeIdentity {
+
+    private final String nodeId;
+
+    public NodeIdentity(@Value("${cluster.node-id:}") String configuredNodeId) {
+        this.nodeId = configuredNodeId == null || configuredNodeId.isEmpty()
+                ? UUID.randomUUID().toString()
+                : configuredNodeId;
+        log.info("当前节点ID: {}", nodeId);
+    }
+
+    /**
+     * 获取节点ID
+     * @return 节点ID
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,48 @@
+package me.myot233.booksystem.util;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * 已校验签名的token声明
+ * @param id token唯一标识（jti），早期签发的token可能为null
+ * @param subject 用户名
+ * @param role 角色，未携带时为null
+ * @param type token类型，访问token为null，刷新token为refresh
+ * @param family 刷新token所属的令牌族，访问token为null
+ * @param issuedAt 签发时间（毫秒），未携带时为0
+ * @param expiration 过期时间（毫秒）
+ */
+public record VerifiedToken(String id, String subject, String role, String type, String family, long issuedAt, long expiration) {
+
+    /**
+     * 从已校验的声明中提取
+     * @param claims 声明
+     * @return token声明
+     */
+    static VerifiedToken of(Claims claims) {
+        return new VerifiedToken(
+                claims.getId(),
+                claims.getSubject(),
+                claims.get("role", String.class),
+                claims.get("type", String.class),
+                claims.get("fam", String.class),
+                claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() : 0L,
+                claims.getExpiration() != null ? claims.getExpiration().getTime() : Long.MAX_VALUE);
+    }
+
+    /**
+     * 是否已过期
+     * @return 是否过期
+     */
+    public boolean isExpired() {
+        return expiration <= System.currentTimeMillis();
+    }
+
+    /**
+     * 是否为刷新token
+     * @return 是否刷新token
+     */
+    public boolean isRefreshToken() {
+        return "refresh".equals(type);
+    }
+}
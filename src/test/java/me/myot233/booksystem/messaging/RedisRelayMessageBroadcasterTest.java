@@ -0,0 +1,211 @@
+package me.myot233.booksystem.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.myot233.booksystem.event.UserChannelOpenedEvent;
+import me.myot233.booksystem.util.NodeIdentity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 两个节点（各自的监听容器）连接同一个Redis，验证公共目的地和用户目的地的中继
+ * 需要本机Redis（可用redis.host、redis.port系统属性指定），连接不上时跳过
+ */
+class RedisRelayMessageBroadcasterTest {
+
+    private static final String TOPIC = "/topic/system-notifications";
+    private static final String QUEUE = "/queue/notifications";
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redis;
+    private final List<Node> nodes = new ArrayList<>();
+    private final List<String> userKeys = new ArrayList<>();
+
+    /**
+     * 一个中继节点及其本机投递记录
+     */
+    private record Node(String id, RedisRelayMessageBroadcaster broadcaster,
+                        RedisMessageListenerContainer container, List<Message<?>> delivered) {
+
+        List<String> destinations() {
+            return delivered.stream().map(message -> SimpMessageHeaderAccessor.getDestination(message.getHeaders())).toList();
+        }
+    }
+
+    @BeforeEach
+    void connect() {
+        connectionFactory = new LettuceConnectionFactory(System.getProperty("redis.host", "localhost"),
+                Integer.getInteger("redis.port", 6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redis = new StringRedisTemplate(connectionFactory);
+        boolean available;
+        try {
+            available = "PONG".equals(redis.execute(connection -> connection.ping(), true));
+        } catch (Exception e) {
+            available = false;
+        }
+        assumeTrue(available, "Redis不可用，跳过中继测试");
+    }
+
+    @AfterEach
+    void disconnect() {
+        for (Node node : nodes) {
+            node.broadcaster().shutdown();
+            node.container().stop();
+        }
+        if (!userKeys.isEmpty()) {
+            redis.delete(userKeys);
+        }
+        connectionFactory.destroy();
+    }
+
+    private Node startNode() throws Exception {
+        String id = "test-" + UUID.randomUUID();
+        List<Message<?>> delivered = new CopyOnWriteArrayList<>();
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> delivered.add(message));
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.afterPropertiesSet();
+
+        RedisRelayMessageBroadcaster broadcaster = new RedisRelayMessageBroadcaster();
+        ReflectionTestUtils.setField(broadcaster, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(broadcaster, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(broadcaster, "listenerContainer", container);
+        ReflectionTestUtils.setField(broadcaster, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(broadcaster, "nodeIdentity", new NodeIdentity(id));
+        ReflectionTestUtils.setField(broadcaster, "sseNotificationHub", Mockito.mock(SseNotificationHub.class));
+        ReflectionTestUtils.setField(broadcaster, "nodeTimeoutMs", 30_000L);
+        // 先登记频道再启动，启动时完成订阅
+        broadcaster.init();
+        container.start();
+
+        Node node = new Node(id, broadcaster, container, delivered);
+        nodes.add(node);
+        return node;
+    }
+
+    private String newUser() {
+        String user = "relay-test-" + UUID.randomUUID();
+        userKeys.add("ws:user_nodes:" + user);
+        return user;
+    }
+
+    private static void awaitDelivery(Node node, String destination) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!node.destinations().contains(destination) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(node.destinations().contains(destination), "节点" + node.id() + "未收到" + destination);
+    }
+
+    @Test
+    void topicMessageReachesEveryNodeOnce() throws Exception {
+        Node first = startNode();
+        Node second = startNode();
+
+        first.broadcaster().sendToTopic(TOPIC, Map.of("title", "维护通知"));
+
+        awaitDelivery(first, TOPIC);
+        awaitDelivery(second, TOPIC);
+        // 来源节点忽略自己发布的中继消息，不会重复投递
+        Thread.sleep(200);
+        assertEquals(1, first.delivered().size());
+        assertEquals(1, second.delivered().size());
+        String body = new String((byte[]) second.delivered().get(0).getPayload(), StandardCharsets.UTF_8);
+        assertTrue(body.contains("维护通知"));
+    }
+
+    @Test
+    void userMessageOnlyReachesTheNodeHoldingTheSession() throws Exception {
+        Node sender = startNode();
+        Node holder = startNode();
+        String user = newUser();
+        holder.broadcaster().onChannelOpened(new UserChannelOpenedEvent(user));
+
+        sender.broadcaster().sendToUser(user, QUEUE, Map.of("title", "到期提醒"));
+
+        String target = "/user/" + user + QUEUE;
+        awaitDelivery(holder, target);
+        Thread.sleep(200);
+        assertEquals(List.of(target), holder.destinations());
+        assertTrue(sender.delivered().isEmpty());
+    }
+
+    @Test
+    void bulkUserMessageReachesEachHolderOnce() throws Exception {
+        Node sender = startNode();
+        Node holder = startNode();
+        String local = newUser();
+        String first = newUser();
+        String second = newUser();
+        String offline = newUser();
+        String deadNode = "test-dead-" + UUID.randomUUID();
+        sender.broadcaster().onChannelOpened(new UserChannelOpenedEvent(local));
+        holder.broadcaster().onChannelOpened(new UserChannelOpenedEvent(first));
+        holder.broadcaster().onChannelOpened(new UserChannelOpenedEvent(second));
+        redis.opsForHash().put("ws:user_nodes:" + second, deadNode, "1");
+
+        sender.broadcaster().sendToUsers(List.of(local, first, second, offline), QUEUE, Map.of("title", "新书到达"));
+
+        awaitDelivery(holder, "/user/" + first + QUEUE);
+        awaitDelivery(holder, "/user/" + second + QUEUE);
+        Thread.sleep(200);
+        assertEquals(2, holder.delivered().size());
+        assertEquals(List.of("/user/" + local + QUEUE), sender.destinations());
+        assertFalse(redis.opsForHash().hasKey("ws:user_nodes:" + second, deadNode));
+    }
+
+    @Test
+    void sessionsOfDeadNodeAreDroppedOnSend() throws Exception {
+        Node sender = startNode();
+        String user = newUser();
+        String deadNode = "test-dead-" + UUID.randomUUID();
+        redis.opsForHash().put("ws:user_nodes:" + user, deadNode, "1");
+
+        sender.broadcaster().sendToUser(user, QUEUE, Map.of("title", "到期提醒"));
+
+        assertFalse(redis.opsForHash().hasKey("ws:user_nodes:" + user, deadNode));
+        assertTrue(sender.delivered().isEmpty());
+    }
+
+    @Test
+    void heartbeatSweepsSessionsOfTimedOutNode() throws Exception {
+        Node survivor = startNode();
+        String first = newUser();
+        String second = newUser();
+        String deadNode = "test-dead-" + UUID.randomUUID();
+        redis.opsForHash().put("ws:user_nodes:" + first, deadNode, "2");
+        redis.opsForHash().put("ws:user_nodes:" + second, deadNode, "1");
+        redis.opsForHash().put("ws:user_nodes:" + second, survivor.id(), "1");
+        // 最近心跳在超时之前
+        redis.opsForZSet().add("ws:relay:nodes", deadNode, System.currentTimeMillis() - 60_000);
+
+        survivor.broadcaster().heartbeat();
+
+        assertFalse(redis.hasKey("ws:user_nodes:" + first));
+        assertEquals(Map.of(survivor.id(), "1"), redis.opsForHash().entries("ws:user_nodes:" + second));
+        assertEquals(null, redis.opsForZSet().score("ws:relay:nodes", deadNode));
+    }
+}
@@ -0,0 +1,266 @@
+package me.myot233.booksystem.messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketServletAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * SSE连接与STOMP会话的服务端内存占用对比
+ * 服务端在本进程内启动，客户端在子进程中建立空闲连接，避免客户端对象计入堆占用。
+ * 先建立N个连接作为基线（排除类加载和连接池预热），再建立N个，用两次的堆占用之差除以N得到单个连接的占用。
+ * 耗时较长，默认跳过，使用 -Dbenchmark.connections=2000 运行
+ */
+class SseMemoryFootprintTest {
+
+    private static final int CONNECTIONS = Integer.getInteger("benchmark.connections", 0);
+
+    @Test
+    void measurePerConnectionHeap() throws Exception {
+        assumeTrue(CONNECTIONS > 0, "未设置benchmark.connections，跳过内存对比");
+
+        long sse = measure(SseServer.class, "sse", context -> context.getBean(SseNotificationHub.class)::getConnectionCount);
+        long stomp = measure(StompServer.class, "stomp", context -> {
+            SimpUserRegistry registry = context.getBean(SimpUserRegistry.class);
+            // 三个订阅都登记后才算会话建立完成
+            return () -> registry.findSubscriptions(subscription -> true).size() / 3;
+        });
+        System.out.printf("空闲连接的服务端堆占用（N=%d）：SSE %d 字节/连接，STOMP over SockJS %d 字节/会话%n",
+                CONNECTIONS, sse, stomp);
+    }
+
+    private long measure(Class<?> server, String mode,
+                         java.util.function.Function<ConfigurableApplicationContext, IntSupplier> counter) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(server)
+                .web(WebApplicationType.SERVLET)
+                .run("--server.port=0", "--spring.main.banner-mode=off", "--logging.level.root=error")) {
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            IntSupplier count = counter.apply(context);
+
+            Process client = new ProcessBuilder(javaCommand(), "-cp", System.getProperty("java.class.path"),
+                    Clients.class.getName(), mode, String.valueOf(port))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            try (PrintWriter commands = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8);
+                 BufferedReader replies = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8))) {
+                long baseline = openAndMeasure(commands, replies, count, CONNECTIONS);
+                long loaded = openAndMeasure(commands, replies, count, 2 * CONNECTIONS);
+                return (loaded - baseline) / CONNECTIONS;
+            } finally {
+                client.destroy();
+                client.waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private long openAndMeasure(PrintWriter commands, BufferedReader replies, IntSupplier count, int expected)
+            throws Exception {
+        commands.println(CONNECTIONS);
+        assertEquals("OK", replies.readLine(), "客户端建立连接失败");
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (count.getAsInt() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertEquals(expected, count.getAsInt(), "服务端登记的连接数不正确");
+        return usedHeap();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(200);
+            used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    private static String javaCommand() {
+        return ProcessHandle.current().info().command().orElse("java");
+    }
+
+    /**
+     * 只推送SSE的服务端
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ImportAutoConfiguration({ServletWebServerFactoryAutoConfiguration.class, DispatcherServletAutoConfiguration.class,
+            WebMvcAutoConfiguration.class, HttpMessageConvertersAutoConfiguration.class, JacksonAutoConfiguration.class})
+    static class SseServer {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        SseNotificationHub sseNotificationHub() {
+            return new SseNotificationHub();
+        }
+
+        @Bean
+        StreamController streamController(SseNotificationHub hub) {
+            return new StreamController(hub);
+        }
+    }
+
+    /**
+     * 与通知流接口相同的建立方式：先注册连接，再补发（此处为空）和发送未读数量
+     */
+    @RestController
+    static class StreamController {
+
+        private final SseNotificationHub hub;
+
+        StreamController(SseNotificationHub hub) {
+            this.hub = hub;
+        }
+
+        @GetMapping("/stream")
+        SseEmitter stream(@RequestParam String user) {
+            SseNotificationHub.Connection connection = hub.open(user);
+            hub.resume(connection, new SseNotificationHub.Position(0, 0L), List.of(), List.of(), 0);
+            return connection.getEmitter();
+        }
+    }
+
+    /**
+     * 与WebSocketConfig相同的STOMP服务端，CONNECT时用login头设置会话用户
+     */
+    @Configuration(proxyBeanMethods = false)
+    @EnableWebSocketMessageBroker
+    @ImportAutoConfiguration({ServletWebServerFactoryAutoConfiguration.class, DispatcherServletAutoConfiguration.class,
+            WebMvcAutoConfiguration.class, HttpMessageConvertersAutoConfiguration.class, JacksonAutoConfiguration.class,
+            WebSocketServletAutoConfiguration.class})
+    static class StompServer implements WebSocketMessageBrokerConfigurer {
+
+        @Override
+        public void configureMessageBroker(MessageBrokerRegistry config) {
+            config.enableSimpleBroker("/topic", "/queue");
+            config.setApplicationDestinationPrefixes("/app");
+            config.setUserDestinationPrefix("/user");
+        }
+
+        @Override
+        public void registerStompEndpoints(StompEndpointRegistry registry) {
+            registry.addEndpoint("/ws").setAllowedOriginPatterns("*").withSockJS();
+        }
+
+        @Override
+        public void configureClientInboundChannel(ChannelRegistration registration) {
+            registration.interceptors(new ChannelInterceptor() {
+                @Override
+                public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                    StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+                    if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand())) {
+                        String user = accessor.getLogin();
+                        accessor.setUser(() -> user);
+                    }
+                    return message;
+                }
+            });
+        }
+    }
+
+    /**
+     * 客户端子进程：每从标准输入读到一个数字就再建立相应数量的空闲连接，全部建立后输出OK
+     */
+    static class Clients {
+
+        public static void main(String[] args) throws Exception {
+            String mode = args[0];
+            int port = Integer.parseInt(args[1]);
+            HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            WebSocketStompClient stomp = new WebSocketStompClient(
+                    new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+            List<Object> open = new ArrayList<>();
+            BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = commands.readLine()) != null) {
+                int n = Integer.parseInt(line.trim());
+                for (int i = 0; i < n; i++) {
+                    String user = "user-" + open.size();
+                    if ("sse".equals(mode)) {
+                        HttpRequest request = HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + port + "/stream?user=" + user)).build();
+                        // 等到响应头到达即可，事件流保持打开
+                        open.add(http.send(request, HttpResponse.BodyHandlers.ofInputStream()).body());
+                    } else {
+                        StompHeaders connectHeaders = new StompHeaders();
+                        connectHeaders.setLogin(user);
+                        StompSession session = stomp.connectAsync("ws://localhost:" + port + "/ws",
+                                        (org.springframework.web.socket.WebSocketHttpHeaders) null, connectHeaders,
+                                        new StompSessionHandlerAdapter() { })
+                                .get(30, TimeUnit.SECONDS);
+                        StompSessionHandlerAdapter handler = new StompSessionHandlerAdapter() { };
+                        session.subscribe("/user/queue/notifications", handler);
+                        session.subscribe("/user/queue/unread-count", handler);
+                        session.subscribe("/topic/system-notifications", handler);
+                        open.add(session);
+                    }
+                }
+                System.out.println("OK");
+                System.out.flush();
+            }
+            for (Object connection : open) {
+                if (connection instanceof InputStream body) {
+                    body.close();
+                } else {
+                    ((StompSession) connection).disconnect();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package me.myot233.booksystem.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void addedValuesAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("jti:" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("jti:" + i), "已添加的元素被判定为不存在: " + i);
+        }
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(filter.mightContain("jti:" + i));
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() {
+        int entries = 20_000;
+        BloomFilter filter = new BloomFilter(entries, 0.01);
+        for (int i = 0; i < entries; i++) {
+            filter.put("jti:" + i);
+        }
+        int probes = 100_000;
+        int hits = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("other:" + i)) {
+                hits++;
+            }
+        }
+        // 按预期元素数填满时误判率应接近1%，留出统计波动的余量
+        assertTrue(hits < probes * 0.02, "误判率过高: " + (double) hits / probes);
+    }
+
+    @Test
+    void sizesBitArrayAndHashCountFromParameters() {
+        // m = -n·ln(p) / (ln2)^2 ≈ 9.59n，k = m/n·ln2 ≈ 7
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        assertEquals(0, filter.bitCount() % 64, "位数组按64位字对齐");
+        assertTrue(filter.bitCount() >= 958_506 && filter.bitCount() < 958_506 + 64);
+        assertEquals(7, filter.hashCount());
+
+        BloomFilter stricter = new BloomFilter(100_000, 0.001);
+        assertTrue(stricter.bitCount() > filter.bitCount());
+        assertEquals(10, stricter.hashCount());
+    }
+
+    @Test
+    void clampsDegenerateParameters() {
+        BloomFilter tiny = new BloomFilter(0, 0.01);
+        assertEquals(64, tiny.bitCount());
+        assertTrue(tiny.hashCount() >= 1);
+        tiny.put("a");
+        assertTrue(tiny.mightContain("a"));
+
+        // 误判率被限制在1e-9以上，哈希函数最多16个
+        BloomFilter strict = new BloomFilter(10, 0);
+        assertEquals(16, strict.hashCount());
+        // 误判率超过0.5时按0.5计算
+        assertEquals(new BloomFilter(1000, 0.5).bitCount(), new BloomFilter(1000, 0.9).bitCount());
+    }
+
+    @Test
+    void concurrentPutsAreNotLost() throws Exception {
+        BloomFilter filter = new BloomFilter(40_000, 0.01);
+        int threads = 4;
+        int perThread = 10_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            executor.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    filter.put("jti:" + (base + i));
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        for (int i = 0; i < threads * perThread; i++) {
+            assertTrue(filter.mightContain("jti:" + i), "并发添加的元素丢失: " + i);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package me.myot233.booksystem.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CsvUtilTest {
+
+    @Test
+    void splitsPlainFields() {
+        assertEquals(List.of("a", "b", "c"), CsvUtil.parseLine("a,b,c"));
+    }
+
+    @Test
+    void keepsEmptyFields() {
+        assertEquals(List.of("", "b", ""), CsvUtil.parseLine(",b,"));
+        assertEquals(List.of(""), CsvUtil.parseLine(""));
+    }
+
+    @Test
+    void quotedFieldMayContainComma() {
+        assertEquals(List.of("Java编程思想", "Eckel, Bruce", "9787111213826"),
+                CsvUtil.parseLine("Java编程思想,\"Eckel, Bruce\",9787111213826"));
+    }
+
+    @Test
+    void doubledQuoteInsideQuotedFieldIsEscapedQuote() {
+        assertEquals(List.of("他说\"你好\"", "x"), CsvUtil.parseLine("\"他说\"\"你好\"\"\",x"));
+        assertEquals(List.of("\""), CsvUtil.parseLine("\"\"\"\""));
+        assertEquals(List.of("", "y"), CsvUtil.parseLine("\"\",y"));
+    }
+
+    @Test
+    void quoteInsideUnquotedFieldIsLiteral() {
+        assertEquals(List.of("12\"", "b"), CsvUtil.parseLine("12\",b"));
+    }
+
+    @Test
+    void unclosedQuoteIsRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> CsvUtil.parseLine("a,\"b,c"));
+        assertEquals("CSV引号未闭合", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> CsvUtil.parseLine("\"a\"\""));
+    }
+
+    @Test
+    void escapeQuotesOnlyWhenNeeded() {
+        assertEquals("plain", CsvUtil.escape("plain"));
+        assertEquals("", CsvUtil.escape(null));
+        assertEquals("\"a,b\"", CsvUtil.escape("a,b"));
+        assertEquals("\"say \"\"hi\"\"\"", CsvUtil.escape("say \"hi\""));
+        assertEquals("\"line\nbreak\"", CsvUtil.escape("line\nbreak"));
+    }
+
+    @Test
+    void formattedLineParsesBack() {
+        Object[] values = {"Eckel, Bruce", "他说\"你好\"", 42, null, ""};
+        String line = CsvUtil.formatLine(values);
+
+        assertEquals(List.of("Eckel, Bruce", "他说\"你好\"", "42", "", ""), CsvUtil.parseLine(line));
+    }
+}
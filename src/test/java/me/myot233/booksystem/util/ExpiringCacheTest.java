@@ -0,0 +1,72 @@
+package me.myot233.booksystem.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpiringCacheTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @Test
+    void expiredEntriesAreNotReturned() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10);
+        cache.put("expired", "v", System.currentTimeMillis() - 1);
+        cache.put("live", "v", NEVER);
+        assertNull(cache.get("expired"), "已过期的条目不应返回");
+        assertEquals("v", cache.get("live"));
+        assertEquals(1, cache.size(), "读取时应删除已过期的条目");
+    }
+
+    @Test
+    void sizeStaysWithinCapacity() {
+        ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(100);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, i, NEVER);
+        }
+        assertEquals(100, cache.size(), "超出容量的条目应被淘汰");
+    }
+
+    @Test
+    void recentlyReadEntriesSurviveEviction() throws InterruptedException {
+        ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(100);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i, NEVER);
+        }
+        Thread.sleep(1);
+        cache.get(0);
+        for (int i = 100; i < 150; i++) {
+            cache.put(i, i, NEVER);
+        }
+        assertEquals(0, cache.get(0), "最近读取的条目不应被淘汰");
+    }
+
+    @Test
+    void concurrentWritersKeepCapacity() throws InterruptedException {
+        ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(1000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            int offset = t * 100_000;
+            executor.execute(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    cache.put(offset + i, i, NEVER);
+                    cache.get(offset + i / 2);
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        // 正在淘汰时其它线程不等待，容量可能短暂超出，最后一次写入后回到上限附近
+        cache.put(-1, -1, NEVER);
+        assertTrue(cache.size() <= 1000 + 8, "并发写入后条目数超出容量: " + cache.size());
+    }
+}
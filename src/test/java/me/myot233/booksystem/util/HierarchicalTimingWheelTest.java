@@ -0,0 +1,228 @@
+package me.myot233.booksystem.util;
+
+import me.myot233.booksystem.util.HierarchicalTimingWheel.Timeout;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTest {
+
+    // 每层16个槽、3层：第0层覆盖16个刻度，第1层256个，第2层4096个
+    private static final int BITS = 4;
+    private static final int LEVELS = 3;
+
+    /**
+     * 逐个刻度推进，记录每个定时器实际触发的刻度
+     */
+    private static <T> Map<T, Long> runUntil(HierarchicalTimingWheel<T> wheel, long fromTick, long toTick) {
+        Map<T, Long> fired = new HashMap<>();
+        for (long tick = fromTick; tick <= toTick; tick++) {
+            long current = tick;
+            wheel.advance(tick, timeout -> assertEquals(null, fired.put(timeout.getPayload(), current),
+                    "定时器重复触发: " + timeout.getPayload()));
+        }
+        return fired;
+    }
+
+    @Test
+    void firesExactlyAtDeadline() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1, BITS, LEVELS, 0);
+        wheel.schedule(5, "a");
+
+        assertEquals(0, wheel.advance(4, t -> { }));
+        List<String> fired = new ArrayList<>();
+        assertEquals(1, wheel.advance(5, t -> fired.add(t.getPayload())));
+        assertEquals(List.of("a"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cascadesFromHigherLevels() {
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(1, BITS, LEVELS, 0);
+        // 第0层、第1层、第2层，以及恰好落在各层边界上的刻度
+        long[] deadlines = {3, 15, 16, 17, 255, 256, 257, 300, 4095};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline);
+        }
+
+        Map<Long, Long> fired = runUntil(wheel, 1, 4100);
+
+        assertEquals(deadlines.length, fired.size());
+        for (long deadline : deadlines) {
+            assertEquals(deadline, fired.get(deadline), "刻度" + deadline + "的定时器触发时间错误");
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cascadesWhenStartingMidRound() {
+        // 起始刻度不在槽边界上，高层槽的下沉时机与从0开始不同
+        long start = 1000;
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(1, BITS, LEVELS, start);
+        long[] deadlines = {1001, 1007, 1008, 1023, 1024, 1279, 1280, 3000, 5095};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline);
+        }
+
+        Map<Long, Long> fired = runUntil(wheel, start + 1, 5100);
+
+        for (long deadline : deadlines) {
+            assertEquals(deadline, fired.get(deadline), "刻度" + deadline + "的定时器触发时间错误");
+        }
+    }
+
+    @Test
+    void overflowBeyondTopLevelStillFiresOnTime() {
+        // 3层总共覆盖4096个刻度，更远的定时器停留在最高层，每转一圈重新放置一次
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(1, BITS, LEVELS, 0);
+        long[] deadlines = {4096, 4097, 5000, 8191, 8192, 20000};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline);
+        }
+
+        Map<Long, Long> fired = runUntil(wheel, 1, 20001);
+
+        for (long deadline : deadlines) {
+            assertEquals(deadline, fired.get(deadline), "刻度" + deadline + "的定时器触发时间错误");
+        }
+    }
+
+    @Test
+    void pastDeadlineFiresOnNextTick() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, BITS, LEVELS, 10_000);
+        wheel.schedule(0, "past");
+        wheel.schedule(10_500, "current-tick");
+
+        assertEquals(0, wheel.advance(10_999, t -> { }));
+        List<String> fired = new ArrayList<>();
+        wheel.advance(11_000, t -> fired.add(t.getPayload()));
+        assertEquals(2, fired.size());
+        assertTrue(fired.containsAll(List.of("past", "current-tick")));
+    }
+
+    @Test
+    void cancelledTimerDoesNotFire() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1, BITS, LEVELS, 0);
+        Timeout<String> low = wheel.schedule(5, "low");
+        Timeout<String> high = wheel.schedule(1000, "high");
+        Timeout<String> kept = wheel.schedule(1000, "kept");
+
+        assertTrue(low.cancel());
+        assertTrue(high.cancel());
+        assertFalse(high.cancel(), "重复取消应返回false");
+        assertEquals(1, wheel.size());
+
+        Map<String, Long> fired = runUntil(wheel, 1, 1001);
+        assertEquals(Map.of("kept", 1000L), fired);
+        assertFalse(kept.cancel(), "已触发的定时器不能取消");
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelAfterCascadeRemovesFromLowerLevel() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1, BITS, LEVELS, 0);
+        Timeout<String> timeout = wheel.schedule(40, "a");
+        // 推进到32时定时器从第1层下沉到第0层
+        wheel.advance(33, t -> { });
+
+        assertTrue(timeout.cancel());
+        assertEquals(0, wheel.advance(50, t -> { }));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void timeoutFromAnotherWheelIsIgnored() {
+        HierarchicalTimingWheel<String> first = new HierarchicalTimingWheel<>(1, BITS, LEVELS, 0);
+        HierarchicalTimingWheel<String> second = new HierarchicalTimingWheel<>(1, BITS, LEVELS, 0);
+        Timeout<String> timeout = first.schedule(5, "a");
+
+        assertFalse(second.cancel(timeout));
+        assertEquals(1, first.size());
+    }
+
+    @Test
+    void randomDeadlinesFireAtTheirTick() {
+        Random random = new Random(42);
+        long start = 777;
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(1, BITS, LEVELS, start);
+        Map<Integer, Long> expected = new HashMap<>();
+        List<Timeout<Integer>> cancelled = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            long deadline = start - 50 + random.nextInt(10_000);
+            Timeout<Integer> timeout = wheel.schedule(deadline, i);
+            if (random.nextInt(10) == 0) {
+                cancelled.add(timeout);
+            } else {
+                expected.put(i, Math.max(deadline, start + 1));
+            }
+        }
+        cancelled.forEach(Timeout::cancel);
+
+        Map<Integer, Long> fired = runUntil(wheel, start + 1, start + 10_000);
+
+        assertEquals(expected, fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void concurrentScheduleAndCancelKeepCountsConsistent() throws Exception {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(1, BITS, LEVELS, 0);
+        int threads = 4;
+        int perThread = 5000;
+        Map<Integer, Boolean> outcome = new ConcurrentHashMap<>();
+        AtomicInteger cancelled = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            executor.execute(() -> {
+                Random random = new Random(base);
+                for (int i = 0; i < perThread; i++) {
+                    Timeout<Integer> timeout = wheel.schedule(random.nextInt(2000), base + i);
+                    if (random.nextBoolean() && timeout.cancel()) {
+                        assertEquals(null, outcome.put(base + i, false));
+                        cancelled.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        // 推进线程与添加、取消并发执行
+        long tick = 0;
+        while (done.getCount() > 0) {
+            wheel.advance(++tick, timeout -> assertEquals(null, outcome.put(timeout.getPayload(), true)));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        wheel.advance(tick + 5000, timeout -> assertEquals(null, outcome.put(timeout.getPayload(), true)));
+
+        // 每个定时器恰好触发或取消一次
+        assertEquals(threads * perThread, outcome.size());
+        assertEquals(threads * perThread - cancelled.get(),
+                outcome.values().stream().filter(Boolean::booleanValue).count());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void rejectsInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> new HierarchicalTimingWheel<>(0, BITS, LEVELS, 0));
+        assertThrows(IllegalArgumentException.class, () -> new HierarchicalTimingWheel<>(1, 0, LEVELS, 0));
+        assertThrows(IllegalArgumentException.class, () -> new HierarchicalTimingWheel<>(1, 16, 4, 0));
+    }
+}
@@ -0,0 +1,143 @@
+package me.myot233.booksystem.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.myot233.booksystem.util.ImportRecordReader.Format;
+import me.myot233.booksystem.util.ImportRecordReader.ImportRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ImportRecordReaderTest {
+
+    private static List<ImportRecord> readAll(String content, Format format) throws IOException {
+        List<ImportRecord> records = new ArrayList<>();
+        try (ImportRecordReader reader = new ImportRecordReader(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), format, new ObjectMapper())) {
+            ImportRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    void csvMapsFieldsByHeader() throws IOException {
+        List<ImportRecord> records = readAll("isbn, title ,author\n978-1,\"Java, 第4版\",\"Bruce \"\"B\"\" Eckel\"\n", Format.CSV);
+
+        assertEquals(1, records.size());
+        ImportRecord record = records.get(0);
+        assertEquals(2, record.line());
+        assertNull(record.error());
+        assertEquals("978-1", record.get("isbn"));
+        assertEquals("Java, 第4版", record.get("title"), "表头字段名应去掉首尾空白");
+        assertEquals("Bruce \"B\" Eckel", record.get("author"));
+    }
+
+    @Test
+    void csvStripsByteOrderMark() throws IOException {
+        List<ImportRecord> records = readAll("\uFEFFusername,email\nalice,a@example.com\n", Format.CSV);
+
+        assertEquals(1, records.size());
+        assertEquals("alice", records.get(0).get("username"), "BOM不应成为第一个字段名的一部分");
+    }
+
+    @Test
+    void csvSkipsBlankLinesButKeepsLineNumbers() throws IOException {
+        List<ImportRecord> records = readAll("username\n\nalice\n   \nbob\n", Format.CSV);
+
+        assertEquals(2, records.size());
+        assertEquals(3, records.get(0).line());
+        assertEquals(5, records.get(1).line());
+    }
+
+    @Test
+    void csvMissingTrailingFieldsAreNull() throws IOException {
+        List<ImportRecord> records = readAll("username,email,role\nalice\nbob,,\n", Format.CSV);
+
+        assertNull(records.get(0).error());
+        assertEquals("alice", records.get(0).get("username"));
+        assertNull(records.get(0).get("email"));
+        assertNull(records.get(1).get("email"), "空字段视为null");
+        assertNull(records.get(1).get("role"));
+    }
+
+    @Test
+    void csvExtraFieldsRejectOnlyThatRow() throws IOException {
+        List<ImportRecord> records = readAll("username,email\nalice,a@example.com,extra\nbob,b@example.com\n", Format.CSV);
+
+        assertEquals(2, records.size());
+        assertEquals("字段数多于表头", records.get(0).error());
+        assertEquals(Map.of(), records.get(0).fields());
+        assertNull(records.get(1).error());
+        assertEquals("bob", records.get(1).get("username"));
+    }
+
+    @Test
+    void csvUnclosedQuoteRejectsOnlyThatRow() throws IOException {
+        List<ImportRecord> records = readAll("username,email\n\"alice,a@example.com\nbob,b@example.com\n", Format.CSV);
+
+        assertEquals(2, records.size());
+        assertEquals(2, records.get(0).line());
+        assertEquals("CSV引号未闭合", records.get(0).error());
+        assertEquals("bob", records.get(1).get("username"));
+    }
+
+    @Test
+    void csvUnclosedQuoteInHeaderFails() {
+        assertThrows(IllegalArgumentException.class, () -> readAll("\"username,email\nalice,a\n", Format.CSV));
+    }
+
+    @Test
+    void ndjsonReadsOneObjectPerLine() throws IOException {
+        List<ImportRecord> records = readAll(
+                "{\"isbn\":\"978-1\",\"stock\":3,\"tags\":[\"a\"],\"author\":null}\n\n{\"isbn\":\"978-2\"}\n", Format.NDJSON);
+
+        assertEquals(2, records.size());
+        ImportRecord first = records.get(0);
+        assertEquals(1, first.line());
+        assertEquals("978-1", first.get("isbn"));
+        assertEquals("3", first.get("stock"));
+        assertEquals("[\"a\"]", first.get("tags"), "非标量值保留JSON文本");
+        assertNull(first.get("author"));
+        assertEquals(3, records.get(1).line());
+    }
+
+    @Test
+    void ndjsonStripsByteOrderMark() throws IOException {
+        List<ImportRecord> records = readAll("\uFEFF{\"username\":\"alice\"}\n", Format.NDJSON);
+
+        assertNull(records.get(0).error());
+        assertEquals("alice", records.get(0).get("username"));
+    }
+
+    @Test
+    void malformedNdjsonRejectsOnlyThatRow() throws IOException {
+        List<ImportRecord> records = readAll(
+                "{\"username\":\"alice\"\n[1,2]\n\"text\"\n{\"username\":\"bob\"}\n", Format.NDJSON);
+
+        assertEquals(4, records.size());
+        assertEquals("JSON格式错误", records.get(0).error());
+        assertEquals("每行必须是一个JSON对象", records.get(1).error());
+        assertEquals("每行必须是一个JSON对象", records.get(2).error());
+        assertNull(records.get(3).error());
+        assertEquals("bob", records.get(3).get("username"));
+    }
+
+    @Test
+    void resolvesFormatFromParameterOrContentType() {
+        assertEquals(Format.CSV, Format.resolve("CSV", "application/x-ndjson"));
+        assertEquals(Format.NDJSON, Format.resolve(null, "application/x-ndjson"));
+        assertEquals(Format.CSV, Format.resolve("", "text/csv; charset=UTF-8"));
+        assertThrows(IllegalArgumentException.class, () -> Format.resolve(null, "application/json"));
+    }
+}
@@ -0,0 +1,132 @@
+package me.myot233.booksystem.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.BatchUpdateException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JdbcBatchUtilTest {
+
+    private static final String SQL = "INSERT INTO t (v) VALUES (?)";
+
+    /**
+     * 批量执行时抛出指定的异常，逐行执行时值在bad中的行失败
+     */
+    private static final class StubJdbcTemplate extends JdbcTemplate {
+
+        private final RuntimeException batchError;
+        private final Set<Object> bad;
+        private final List<Object> retried = new ArrayList<>();
+        private int batches;
+
+        StubJdbcTemplate(RuntimeException batchError, Set<Object> bad) {
+            this.batchError = batchError;
+            this.bad = bad;
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            batches++;
+            if (batchError != null) {
+                throw batchError;
+            }
+            return new int[batchArgs.size()];
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            retried.add(args[0]);
+            if (bad.contains(args[0])) {
+                throw new DataIntegrityViolationException("bad row " + args[0]);
+            }
+            return 1;
+        }
+    }
+
+    private static List<Object[]> rows(int count) {
+        List<Object[]> args = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            args.add(new Object[]{i});
+        }
+        return args;
+    }
+
+    private static DataIntegrityViolationException batchFailure(int[] counts) {
+        return new DataIntegrityViolationException("batch failed",
+                new BatchUpdateException("Duplicate entry", "23000", 1062, counts));
+    }
+
+    @Test
+    void successfulBatchDoesNotRetry() {
+        StubJdbcTemplate jdbc = new StubJdbcTemplate(null, Set.of());
+        assertEquals(List.of(), JdbcBatchUtil.batchUpdate(jdbc, SQL, rows(5)));
+        assertEquals(1, jdbc.batches);
+        assertEquals(List.of(), jdbc.retried);
+    }
+
+    @Test
+    void emptyBatchIsNotExecuted() {
+        StubJdbcTemplate jdbc = new StubJdbcTemplate(null, Set.of());
+        assertEquals(List.of(), JdbcBatchUtil.batchUpdate(jdbc, SQL, List.of()));
+        assertEquals(0, jdbc.batches);
+    }
+
+    @Test
+    void rewrittenBatchRetriesEveryRowOfTheFailedStatement() {
+        // rewriteBatchedStatements把整批合并为一条多值INSERT，其中一行出错时整条语句的行都标记为失败
+        int[] counts = new int[6];
+        Arrays.fill(counts, Statement.EXECUTE_FAILED);
+        StubJdbcTemplate jdbc = new StubJdbcTemplate(batchFailure(counts), Set.of(3));
+
+        List<Integer> failed = JdbcBatchUtil.batchUpdate(jdbc, SQL, rows(6));
+
+        assertEquals(List.of(3), failed);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), jdbc.retried);
+    }
+
+    @Test
+    void rewrittenBatchSkipsRowsOfStatementsThatSucceeded() {
+        // 行数超过单条语句上限时拆成多条，已成功的语句的行返回SUCCESS_NO_INFO，不再重试
+        int[] counts = {Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO,
+                Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED};
+        StubJdbcTemplate jdbc = new StubJdbcTemplate(batchFailure(counts), Set.of(4));
+
+        List<Integer> failed = JdbcBatchUtil.batchUpdate(jdbc, SQL, rows(6));
+
+        assertEquals(List.of(4), failed);
+        assertEquals(List.of(3, 4, 5), jdbc.retried);
+    }
+
+    @Test
+    void rowsAfterAnAbortedBatchAreRetried() {
+        // 驱动在出错处中止时，更新计数只覆盖已执行的行
+        int[] counts = {1, 1, Statement.EXECUTE_FAILED};
+        StubJdbcTemplate jdbc = new StubJdbcTemplate(batchFailure(counts), Set.of(2));
+
+        List<Integer> failed = JdbcBatchUtil.batchUpdate(jdbc, SQL, rows(5));
+
+        assertEquals(List.of(2), failed);
+        assertEquals(List.of(2, 3, 4), jdbc.retried);
+    }
+
+    @Test
+    void batchFailureWithoutUpdateCountsRetriesAllRows() {
+        StubJdbcTemplate jdbc = new StubJdbcTemplate(
+                new DataIntegrityViolationException("connection reset"), Set.of(0, 4));
+
+        List<Integer> failed = JdbcBatchUtil.batchUpdate(jdbc, SQL, rows(5));
+
+        assertEquals(List.of(0, 4), failed);
+        assertEquals(5, jdbc.retried.size());
+        assertTrue(jdbc.retried.containsAll(List.of(0, 1, 2, 3, 4)));
+    }
+}